@@ -0,0 +1,77 @@
+package com.doodler.protocol;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stroke encoding and parsing in both wire formats, plus the split()-based DRAW parsing the
+ * Message tokenizer replaced, kept as a baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    final String drawLine = "DRAW:123.25:456.75:true:false:#00ff00";
+    final Message msg = new Message();
+    StrokeBatch point, stroke;
+    String strokeLine;
+    ByteBuffer encoded, out = ByteBuffer.allocate(4096);
+
+    @Setup
+    public void setup() {
+        point = StrokeBatch.of(0x00ff00, false, true);
+        point.add(123.25, 456.75);
+        stroke = StrokeBatch.of(0xff0000, false, true);
+        for (int i = 0; i < 16; i++) stroke.add(100 + i * 1.25, 200.5 - i);
+        strokeLine = "STROKE:" + StrokeCodec.toTextStroke(stroke);
+        encoded = ByteBuffer.allocate(StrokeCodec.encodedSize(stroke));
+        StrokeCodec.encode(stroke, encoded);
+        encoded.flip();
+    }
+
+    @Benchmark
+    public String encodeDrawText() { return "DRAW:" + StrokeCodec.toTextPayload(point, 0); }
+
+    @Benchmark
+    public StrokeBatch parseDrawText() {
+        Message m = msg.parse(drawLine);
+        return StrokeCodec.fromTextPayload(drawLine, m.start(1), drawLine.length());
+    }
+
+    /** The startsWith/split/Double.parseDouble path used before the tokenizer. */
+    @Benchmark
+    public StrokeBatch parseDrawTextSplit() {
+        if (!drawLine.startsWith("DRAW:")) return null;
+        String[] f = drawLine.substring(5).split(":");
+        StrokeBatch b = StrokeBatch.of(Integer.parseInt(f[4].substring(1), 16) & 0xFFFFFF,
+                Boolean.parseBoolean(f[3]), Boolean.parseBoolean(f[2]));
+        b.add(Double.parseDouble(f[0]), Double.parseDouble(f[1]));
+        return b;
+    }
+
+    @Benchmark
+    public String encodeStrokeText() { return "STROKE:" + StrokeCodec.toTextStroke(stroke); }
+
+    @Benchmark
+    public StrokeBatch parseStrokeText() {
+        Message m = msg.parse(strokeLine);
+        return StrokeCodec.fromTextStroke(strokeLine, m.start(1), strokeLine.length());
+    }
+
+    @Benchmark
+    public ByteBuffer encodeStrokeBinary() {
+        out.clear();
+        Frames.writeStroke(stroke, out);
+        return out;
+    }
+
+    @Benchmark
+    public StrokeBatch decodeStrokeBinary() {
+        return StrokeCodec.decode(encoded.duplicate());
+    }
+}
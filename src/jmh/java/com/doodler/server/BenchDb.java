@@ -0,0 +1,22 @@
+package com.doodler.server;
+
+import java.sql.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A fresh in-memory H2 database (MySQL mode) with the game schema, for benchmarks. */
+final class BenchDb {
+    private static final AtomicInteger SEQ = new AtomicInteger();
+
+    private BenchDb() {}
+
+    static DBManager create(int poolSize) throws SQLException {
+        String url = "jdbc:h2:mem:bench" + SEQ.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        try (Connection c = DriverManager.getConnection(url, "sa", "");
+             Statement s = c.createStatement()) {
+            s.execute("CREATE TABLE games(id INT AUTO_INCREMENT PRIMARY KEY, code VARCHAR(32), host VARCHAR(64), secret_word VARCHAR(64))");
+            s.execute("CREATE TABLE players(id INT AUTO_INCREMENT PRIMARY KEY, game_id INT, username VARCHAR(64),"
+                    + " is_drawer BOOLEAN, can_guess BOOLEAN, score INT DEFAULT 0)");
+        }
+        return new DBManager(new ConnectionPool(url, "sa", "", poolSize, 5_000, 10, 32).warmUp());
+    }
+}
@@ -0,0 +1,70 @@
+package com.doodler.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A GameSession whose clients are in-memory transports. {@link #drain()} empties every client's
+ * queue the way the engines' writers do (bulk copy into a socket-sized buffer), so queues never
+ * fill up and the copy cost is part of what gets measured.
+ */
+final class BenchRoom implements AutoCloseable {
+    final GameSession session;
+    final List<ClientHandler> clients = new ArrayList<>();
+    private final WriteBehindStore store;
+    // one-hour ticks: round countdowns never fire while a benchmark runs
+    private final TimerWheel timers = new TimerWheel("bench-timers", 1, TimeUnit.HOURS, 8, r -> {});
+    // no loop threads: every command runs on the benchmark thread before the call returns
+    private final SessionLoops loops = new SessionLoops(0);
+    private final ByteBuffer socket = ByteBuffer.allocateDirect(16 * 1024);
+
+    BenchRoom(int size, boolean binary) throws Exception { this(size, binary, null); }
+
+    /** {@code journal}: where the session records itself, or null for no journal. */
+    BenchRoom(int size, boolean binary, GameJournal journal) throws Exception {
+        store = new WriteBehindStore(BenchDb.create(2));
+        session = new GameSession("bench", store, timers, loops, WordBank.builtIn().cursor("en"), journal, s -> {});
+        session.start();
+        for (int i = 0; i < size; i++) {
+            ClientHandler ch = new ClientHandler(new MemoryTransport(), "player" + i, session, binary);
+            session.addClient(ch);
+            clients.add(ch);
+        }
+        drain();
+    }
+
+    void drain() {
+        for (ClientHandler c : clients) {
+            OutboundQueue q = c.transport.outbound();
+            while (q.depth() > 0) {
+                socket.clear();
+                SharedFrame big = q.fill(socket);
+                if (big != null) big.release();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        timers.close();
+        store.close();
+    }
+
+    static final class MemoryTransport implements Transport {
+        private final OutboundQueue out = new OutboundQueue(() -> {}, () -> {});
+
+        @Override public OutboundQueue outbound() { return out; }
+
+        @Override public void switchToFrames() {}
+
+        @Override public void switchToDeflate(int level, int plainBytes) {}
+
+        @Override public void closeGracefully() { out.finish(); }
+
+        @Override public void close() { out.close(); }
+
+        @Override public String remoteAddress() { return "memory"; }
+    }
+}
@@ -0,0 +1,62 @@
+package com.doodler.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DBManager calls against embedded H2, from four threads at once, with a single connection
+ * (the pre-pool behavior) and with a pool. Numbers track our code's overhead and contention, not
+ * MySQL's latency.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class DBManagerBenchmark {
+    @Param({"1", "4"})
+    int poolSize;
+
+    DBManager db;
+    int game;
+    int[] players = new int[16];
+    int[] points = new int[16];
+
+    @Setup
+    public void setup() throws SQLException {
+        db = BenchDb.create(poolSize);
+        game = db.createGame("bench", "host");
+        for (int i = 0; i < players.length; i++) {
+            players[i] = db.addPlayer(game, "player" + i, i == 0);
+            points[i] = 1;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException { db.close(); }
+
+    @Benchmark
+    public void addPoints() throws SQLException {
+        db.addPoints(players[(int) (Thread.currentThread().threadId() & 15)], 1);
+    }
+
+    @Benchmark
+    public void addPointsBatch16() throws SQLException {
+        db.addPoints(players, points);
+    }
+
+    @Benchmark
+    public int addPlayer() throws SQLException {
+        return db.addPlayer(game, "joiner", false);
+    }
+
+    @Benchmark
+    public Map<String, Integer> getScoresForGame() throws SQLException {
+        return db.getScoresForGame(game);
+    }
+}
@@ -0,0 +1,60 @@
+package com.doodler.server;
+
+import com.doodler.protocol.StrokeBatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One message fanned out to a room, including every recipient's queue copy into its socket
+ * buffer. Run with {@code -prof gc} for bytes allocated per message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FanoutBenchmark {
+    @Param({"2", "4", "8", "16", "32", "64"})
+    int roomSize;
+
+    @Param({"bin", "text"})
+    String wire;
+
+    BenchRoom room;
+    ClientHandler drawer;
+    StrokeBatch stroke;
+
+    @Setup
+    public void setup() throws Exception {
+        room = new BenchRoom(roomSize, wire.equals("bin"));
+        drawer = room.clients.get(0);
+        stroke = StrokeBatch.of(0x000000, false, true);
+        for (int i = 0; i < 16; i++) stroke.add(100 + i * 1.25, 200 - i * 0.75);
+    }
+
+    @TearDown
+    public void tearDown() { room.close(); }
+
+    @Benchmark
+    public void handleDraw() {
+        room.session.handleDraw(drawer, stroke);
+        room.drain();
+    }
+
+    /** A single-point stroke, the common case for legacy DRAW clients. */
+    @Benchmark
+    public void handleDrawPoint() {
+        StrokeBatch p = StrokeBatch.of(0x000000, false, true);
+        p.add(123.25, 456.75);
+        room.session.handleDraw(drawer, p);
+        room.drain();
+    }
+
+    @Benchmark
+    public void broadcast() {
+        room.session.broadcast("CHAT:player1:is it a house?");
+        room.drain();
+    }
+}
@@ -0,0 +1,57 @@
+package com.doodler.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * checkGuess for wrong guesses: the match plus the CHAT relay every new miss turns into, and
+ * the repeats that {@link GuessMatcher} drops before any fan-out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GuessBenchmark {
+    @Param({"2", "16"})
+    int roomSize;
+
+    // more distinct misses than a player's repeat window, none of them close to any secret
+    static final String[] MISSES = {"elephant", "giraffe", "monkey", "pencil", "rocket", "guitar", "window", "bridge",
+            "candle", "pillow", "turtle", "spider", "ladder", "anchor", "wallet", "banana"};
+
+    BenchRoom room;
+    ClientHandler guesser;
+    int next;
+
+    @Setup
+    public void setup() throws Exception {
+        room = new BenchRoom(roomSize, true);
+        guesser = room.clients.get(1);
+    }
+
+    @TearDown
+    public void tearDown() { room.close(); }
+
+    @Benchmark
+    public void wrongGuess() {
+        room.session.checkGuess(guesser, MISSES[next++ & (MISSES.length - 1)]);
+        room.drain();
+    }
+
+    /** The same miss again: matched, counted, not relayed. */
+    @Benchmark
+    public void repeatGuess() {
+        room.session.checkGuess(guesser, "  elephant ");
+        room.drain();
+    }
+
+    /** The drawer's guesses are rejected before any matching. */
+    @Benchmark
+    public void drawerGuess() {
+        room.session.checkGuess(room.clients.get(0), "apple");
+        room.drain();
+    }
+}
@@ -0,0 +1,45 @@
+package com.doodler.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GuessMatcher on its own, per guess: folding, the plural forms, the bounded edit distance and
+ * the repeat window, with none of the session or fan-out around it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GuessMatcherBenchmark {
+    static final int PLAYERS = 8;
+
+    GuessMatcher matcher;
+    // each player cycles through more guesses than the repeat window: misses, a near miss, hits
+    String[] guesses;
+    int next;
+
+    @Setup
+    public void setup() {
+        matcher = new GuessMatcher("butterfly");
+        String[] misses = GuessBenchmark.MISSES;
+        guesses = java.util.Arrays.copyOf(misses, misses.length + 2);
+        guesses[misses.length] = "Butterfy";
+        guesses[misses.length + 1] = " Bútterflies ";
+    }
+
+    @Benchmark
+    public GuessMatcher.Result mixed() {
+        int g = next++;
+        return matcher.match(g % PLAYERS, guesses[(g / PLAYERS) % guesses.length]);
+    }
+
+    /** A player sending the same miss over and over. */
+    @Benchmark
+    public GuessMatcher.Result repeat() {
+        return matcher.match(1, "  elephant ");
+    }
+}
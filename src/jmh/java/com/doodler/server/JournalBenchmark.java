@@ -0,0 +1,72 @@
+package com.doodler.server;
+
+import com.doodler.protocol.Frames;
+import com.doodler.protocol.StrokeBatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What journalling adds to a 16-point stroke: the draw path of an 8-player room with and
+ * without a journal, and the append alone. The writer thread flushes to a mapped file in a
+ * temporary directory meanwhile, as it would in a server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JournalBenchmark {
+    @Param({"off", "on"})
+    String journal;
+
+    Path dir;
+    JournalWriter writer;
+    GameJournal target;
+    int appended;
+    BenchRoom room;
+    ClientHandler drawer;
+    StrokeBatch stroke;
+    ByteBuffer frame;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("journal");
+        writer = new JournalWriter(dir);
+        // not the writer's: append() empties it itself, so it measures encoding rather than drops
+        target = new GameJournal("bench-append", dir.resolve("append.journal"), JournalWriter.MAX_STAGED_BYTES);
+        room = new BenchRoom(8, true, journal.equals("on") ? writer.open("bench") : null);
+        drawer = room.clients.get(0);
+        stroke = StrokeBatch.of(0x000000, false, true);
+        for (int i = 0; i < 16; i++) stroke.add(100 + i * 1.25, 200 - i * 0.75);
+        frame = Frames.stroke(stroke);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        room.close();
+        writer.close();
+        try (var files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    @Benchmark
+    public void handleDraw() {
+        room.session.handleDraw(drawer, stroke);
+        room.drain();
+    }
+
+    /** Copying one stroke's fanned-out frame into the staging buffer, as the session loop does. */
+    @Benchmark
+    public void append() {
+        target.draw(frame);
+        if ((++appended & 4095) == 0) target.takeStaged();
+    }
+}
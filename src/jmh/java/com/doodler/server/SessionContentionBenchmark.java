@@ -0,0 +1,157 @@
+package com.doodler.server;
+
+import com.doodler.protocol.StrokeBatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Eight threads feeding draws and chat into rooms of eight players, as the connection readers
+ * do. {@code actor}: sessions on event loops; {@code callerRuns}: the same mailboxes drained by
+ * the submitting threads; {@code locked}: the fan-out under the stroke log's monitor, as before
+ * the loops. One room puts every thread on the same session, 64 spreads them out. Queues are
+ * emptied by whichever thread fills them, the way a writer would be woken.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class SessionContentionBenchmark {
+    static final int PLAYERS = 8, OPS = 100;
+
+    @Param({"1", "64"})
+    int rooms;
+
+    @Param({"actor", "callerRuns", "locked"})
+    String mode;
+
+    private SessionLoops loops;
+    private TimerWheel timers;
+    private WriteBehindStore store;
+    final List<GameSession> sessions = new ArrayList<>();
+    final List<LockedRoom> locked = new ArrayList<>();
+    final List<ClientHandler> drawers = new ArrayList<>();
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Feeder {
+        int room = -1;
+        int op;
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        loops = new SessionLoops(mode.equals("actor") ? SessionLoops.LOOPS : 0);
+        timers = new TimerWheel("bench-timers", 1, TimeUnit.HOURS, 8, r -> {});
+        store = new WriteBehindStore(BenchDb.create(2));
+        for (int r = 0; r < rooms; r++) {
+            if (mode.equals("locked")) {
+                LockedRoom room = new LockedRoom();
+                for (int i = 0; i < PLAYERS; i++) room.clients.add(new ClientHandler(new DrainingTransport(), "player" + i, null, true));
+                locked.add(room);
+                drawers.add(room.clients.get(0));
+            } else {
+                GameSession s = new GameSession("room" + r, store, timers, loops, WordBank.builtIn().cursor("en"), null, x -> {});
+                s.start();
+                for (int i = 0; i < PLAYERS; i++) {
+                    ClientHandler ch = new ClientHandler(new DrainingTransport(), "player" + i, s, true);
+                    s.addClient(ch);
+                    if (i == 0) drawers.add(ch);
+                }
+                sessions.add(s);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        loops.close();
+        timers.close();
+        store.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void drawAndChat(Feeder f) throws IOException {
+        if (f.room < 0) f.room = nextThread.getAndIncrement() % rooms;
+        ClientHandler drawer = drawers.get(f.room);
+        for (int i = 0; i < OPS; i++) {
+            StrokeBatch stroke = StrokeBatch.of(0x000000, false, true);
+            for (int p = 0; p < 8; p++) stroke.add(100 + p * 1.25, 200 - p * 0.75);
+            boolean chat = (f.op++ & 7) == 7;
+            if (mode.equals("locked")) {
+                LockedRoom room = locked.get(f.room);
+                if (chat) room.broadcast("CHAT:player1:is it a house?"); else room.handleDraw(drawer, stroke);
+            } else {
+                GameSession s = sessions.get(f.room);
+                if (chat) s.broadcast("CHAT:player1:is it a house?"); else s.handleDraw(drawer, stroke);
+            }
+        }
+        // everything told so far has reached the queues before the invocation counts as done
+        if (!mode.equals("locked")) sessions.get(f.room).await();
+    }
+
+    /** GameSession's draw and broadcast paths as they were before the event loops. */
+    static final class LockedRoom {
+        final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
+        private final StrokeLog strokeLog = new StrokeLog();
+
+        void handleDraw(ClientHandler from, StrokeBatch stroke) {
+            stroke.playerId = from.playerId;
+            Fanout f = Fanout.stroke(stroke, from.wireName);
+            synchronized (strokeLog) {
+                strokeLog.append(stroke);
+                for (ClientHandler c : clients) {
+                    if (c != from) {
+                        try { c.send(f); } catch (IOException ignored) {}
+                    }
+                }
+            }
+            f.release();
+        }
+
+        void broadcast(String msg) {
+            Fanout f = Fanout.text(msg);
+            for (ClientHandler c : clients) {
+                try { c.send(f); } catch (IOException ignored) {}
+            }
+            f.release();
+        }
+    }
+
+    /** Emptied into a socket-sized buffer by the thread that made it non-empty. */
+    static final class DrainingTransport implements Transport {
+        private static final ThreadLocal<ByteBuffer> SOCKET = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(16 * 1024));
+        private final OutboundQueue out = new OutboundQueue(this::drain, () -> {});
+
+        @Override public OutboundQueue outbound() { return out; }
+
+        @Override public void switchToFrames() {}
+
+        @Override public void switchToDeflate(int level, int plainBytes) {}
+
+        @Override public void closeGracefully() { out.finish(); }
+
+        @Override public void close() { out.close(); }
+
+        @Override public String remoteAddress() { return "memory"; }
+
+        private void drain() {
+            ByteBuffer socket = SOCKET.get();
+            while (out.depth() > 0) {
+                socket.clear();
+                SharedFrame big = out.fill(socket);
+                if (big != null) big.release();
+            }
+        }
+    }
+}
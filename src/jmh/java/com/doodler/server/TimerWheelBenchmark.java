@@ -0,0 +1,31 @@
+package com.doodler.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Schedule and cancel against a wheel already holding 10k live round countdowns. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimerWheelBenchmark {
+    TimerWheel wheel;
+
+    @Setup
+    public void setup() {
+        wheel = new TimerWheel("bench-wheel", 10, TimeUnit.MILLISECONDS, 1024, Runnable::run);
+        for (int i = 0; i < 10_000; i++) wheel.scheduleAtFixedRate(() -> {}, 1000 + i % 1000, 1000, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown
+    public void tearDown() { wheel.close(); }
+
+    @Benchmark
+    @Threads(4)
+    public boolean rescheduleCountdown() {
+        return wheel.scheduleAtFixedRate(() -> {}, 1, 1, TimeUnit.SECONDS).cancel();
+    }
+}
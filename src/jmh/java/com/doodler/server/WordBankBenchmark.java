@@ -0,0 +1,72 @@
+package com.doodler.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WordBank on a generated dictionary of {@code words} entries (4 languages, 8 categories each):
+ * loading it from disk, and drawing a room's next secret. Run with -prof gc to see the load's
+ * allocation next to {@link WordBank#bytes()}, which is what stays on the heap.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WordBankBenchmark {
+    @Param({"100000", "400000"})
+    int words;
+
+    Path dir;
+    WordBank.Cursor cursor;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("words");
+        Random r = new Random(42);
+        int perList = words / 32;
+        for (String lang : new String[] {"en", "de", "fr", "es"}) {
+            Files.createDirectories(dir.resolve(lang));
+            for (int c = 0; c < 8; c++) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < perList; i++) {
+                    for (int k = 4 + r.nextInt(9); k > 0; k--) sb.append((char) ('a' + r.nextInt(26)));
+                    sb.append('\n');
+                }
+                Files.writeString(dir.resolve(lang).resolve("category" + c + ".txt"), sb, StandardCharsets.UTF_8);
+            }
+        }
+        WordBank bank = WordBank.load(dir);
+        // what the bank keeps, to read next to the load's allocation rate
+        System.out.println(bank.size() + " words held in " + bank.bytes() + " bytes");
+        cursor = bank.cursor("en");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 10, batchSize = 1)
+    public WordBank load() throws IOException {
+        return WordBank.load(dir);
+    }
+
+    /** One round's secret: the permutation step plus decoding the word. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String next() {
+        return cursor.next();
+    }
+}
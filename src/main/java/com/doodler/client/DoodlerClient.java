@@ -1,10 +1,13 @@
 package com.doodler.client;
 
 import com.doodler.client.controllers.GameController;
+import com.doodler.protocol.Message;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.canvas.*;
 import javafx.scene.control.*;
@@ -14,22 +17,26 @@ import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 import java.io.*;
-import java.net.Socket;
-import java.util.concurrent.Executors;
 
 public class DoodlerClient extends Application {
-    private Socket socket;
-    private BufferedReader in;
-    private BufferedWriter out;
+    private ServerConnection conn;
+    private StrokeBatcher batcher;
     String username;
     Label timeLabel = new Label("Time: --");
     TextArea chatArea = new TextArea();
     TextField chatInput = new TextField();
     Canvas canvas = new Canvas(700, 450);
     GraphicsContext gc;
+    RemoteCanvas remote;
+    // FX thread only
+    private final Message msg = new Message();
+    private final RoundClock clock = new RoundClock();
+    private int shownSeconds = -1;
+    Label overlay = new Label();
     boolean amDrawer = false;
     ColorPicker colorPicker = new ColorPicker(Color.BLACK);
     ToggleButton eraserBtn = new ToggleButton("Eraser");
+    Button clearBtn = new Button("Clear");
     TextField codeField = new TextField();
     TextField ipField = new TextField("localhost");
 
@@ -62,12 +69,10 @@ public class DoodlerClient extends Application {
 
     private void connectAndShow(Stage stage, String ip, String code) {
         try {
-            socket = new Socket(ip, 55555);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-            out.write("JOIN:" + code + ":" + username + "\n"); out.flush();
-            Executors.newSingleThreadExecutor().submit(new NetworkListener(in, this));
+            conn = ServerConnection.connect(ip, code, username);
+            batcher = new StrokeBatcher(conn::sendStrokes);
             buildGameUI(stage);
+            conn.start(new NetworkListener(this));
         } catch (Exception ex) {
             ex.printStackTrace();
             showAlert("Could not connect: " + ex.getMessage());
@@ -77,9 +82,14 @@ public class DoodlerClient extends Application {
     private void buildGameUI(Stage stage) {
         BorderPane root = new BorderPane();
         gc = canvas.getGraphicsContext2D();
+        remote = new RemoteCanvas(gc);
         clearCanvas();
+        overlay.setMouseTransparent(true);
+        overlay.setVisible(RemoteCanvas.OVERLAY);
+        StackPane board = new StackPane(canvas, overlay);
+        StackPane.setAlignment(overlay, Pos.TOP_LEFT);
 
-        VBox left = new VBox(8, canvas, new HBox(8, new Label("Color"), colorPicker, eraserBtn), timeLabel);
+        VBox left = new VBox(8, board, new HBox(8, new Label("Color"), colorPicker, eraserBtn, clearBtn), timeLabel);
         left.setPadding(new Insets(8));
 
         chatArea.setEditable(false);
@@ -114,69 +124,73 @@ public class DoodlerClient extends Application {
             gc.stroke();
             sendDraw(e.getX(), e.getY(), true);
         });
+        canvas.addEventHandler(MouseEvent.MOUSE_RELEASED, e -> { if (amDrawer) batcher.flush(); });
+        clearBtn.setOnAction(e -> {
+            if (!amDrawer) return;
+            batcher.flush();
+            clearCanvas();
+            try { conn.sendLine("CLEAR"); } catch (IOException ex) { ex.printStackTrace(); }
+        });
+        // once per frame: pending points go out, queued remote strokes are drawn
+        new AnimationTimer() {
+            @Override public void handle(long now) {
+                batcher.pulse(now);
+                remote.pulse(now);
+                if (RemoteCanvas.OVERLAY) overlay.setText(remote.overlayText());
+                int left = clock.secondsLeft(now);
+                if (left >= 0 && left != shownSeconds) {
+                    shownSeconds = left;
+                    timeLabel.setText("Time: " + left);
+                }
+            }
+        }.start();
     }
 
     void handleServerMessage(String line) {
-        if (line.startsWith("INFO:")) appendChat("[INFO] " + line.substring(5) + "\n");
-        else if (line.startsWith("CHAT:")) {
-            String[] p = line.split(":",3);
-            appendChat(p[1] + ": " + p[2] + "\n");
-        } else if (line.startsWith("DRAW:")) {
-            // DRAW:username:payload (payload = x:y:isDrag:isEraser:color)
-            String[] p = line.split(":",3);
-            if (p.length < 3) return;
-            String payload = p[2];
-            String[] f = payload.split(":");
-            try {
-                double x = Double.parseDouble(f[0]);
-                double y = Double.parseDouble(f[1]);
-                boolean drag = Boolean.parseBoolean(f[2]);
-                boolean isEraser = Boolean.parseBoolean(f[3]);
-                Color col = Color.web(f[4]);
-                drawRemote(x,y,drag,isEraser,col);
-            } catch (Exception ignored) {}
-        } else if (line.startsWith("ROLE:")) {
-            String r = line.substring(5);
-            amDrawer = r.equalsIgnoreCase("DRAWER");
-            appendChat("[SYSTEM] Role: " + r + "\n");
-        } else if (line.startsWith("SECRET:")) {
-            appendChat("[SECRET] " + line.substring(7) + "\n");
-        } else if (line.startsWith("TIME:")) {
-            timeLabel.setText("Time: " + line.substring(5));
-        } else if (line.startsWith("CORRECT:")) {
-            // CORRECT:user:word:points
-            String[] p = line.split(":",4);
-            appendChat("[ROUND] " + p[1] + " guessed correctly! Word: " + p[2] + " Points: " + p[3] + "\n");
-        } else if (line.startsWith("DISABLE:")) {
-            String who = line.substring(8);
-            if (who.equals(username)) {
-                // disable this client's guess input
-                chatInput.setDisable(true);
-                appendChat("[SYSTEM] Your guess box has been disabled (you guessed correctly).\n");
+        Message m = msg.parse(line);
+        try {
+            switch (m.op()) {
+                case INFO -> appendChat("[INFO] " + m.rest(1) + "\n");
+                case CHAT -> appendChat(m.str(1) + ": " + m.rest(2) + "\n");
+                case ROLE -> {
+                    amDrawer = m.rest(1).equalsIgnoreCase("DRAWER");
+                    appendChat("[SYSTEM] Role: " + m.rest(1) + "\n");
+                }
+                case SECRET -> appendChat("[SECRET] " + m.rest(1) + "\n");
+                // the label itself is updated by the frame timer
+                case DEADLINE, CLOCK -> clock.sync(m, System.nanoTime());
+                // servers from before DEADLINE still tick every second
+                case TIME -> timeLabel.setText("Time: " + m.intField(1));
+                case ROUND_END -> {
+                    clock.stop();
+                    appendChat("[ROUND END] " + m.rest(1) + "\n");
+                }
+                // CORRECT:user:word:points
+                case CORRECT -> appendChat("[ROUND] " + m.str(1) + " guessed correctly! Word: " + m.str(2)
+                        + " Points: " + m.intField(3) + "\n");
+                case DISABLE -> {
+                    if (m.str(1).equals(username)) {
+                        // disable this client's guess input
+                        chatInput.setDisable(true);
+                        appendChat("[SYSTEM] Your guess box has been disabled (you guessed correctly).\n");
+                    }
+                }
+                case SCORES -> appendChat("[SCORES]\n" + Message.unescape(m.rest(1).replace(";;", "\n")) + "\n");
+                case PLAYERS -> appendChat("[PLAYERS] " + Message.unescape(m.rest(1)) + "\n");
+                case CLEAR -> { } // the canvas itself is cleared by RemoteCanvas, in order with the strokes
+                case ROUND_START -> {
+                    appendChat("[ROUND] Round started!\n");
+                    chatInput.setDisable(false);
+                }
+                default -> appendChat("[RAW] " + line + "\n");
             }
-        } else if (line.startsWith("SCORES:")) {
-            appendChat("[SCORES]\n" + line.substring(7).replace(";;","\n") + "\n");
-        } else if (line.startsWith("PLAYERS:")) {
-            appendChat("[PLAYERS] " + line.substring(8) + "\n");
-        } else if (line.startsWith("ROUND_START")) {
-            appendChat("[ROUND] Round started!\n");
-            clearCanvas();
-            chatInput.setDisable(false);
-        } else appendChat("[RAW] " + line + "\n");
+        } catch (IllegalArgumentException e) {
+            appendChat("[RAW] " + line + "\n");
+        }
     }
 
     private void sendDraw(double x, double y, boolean isDrag) {
-        String colorHex = toHex(colorPicker.getValue());
-        boolean isEraser = eraserBtn.isSelected();
-        String payload = x + ":" + y + ":" + isDrag + ":" + isEraser + ":" + colorHex;
-        try { out.write("DRAW:" + payload + "\n"); out.flush(); } catch (Exception e) { e.printStackTrace(); }
-    }
-
-    private void drawRemote(double x, double y, boolean drag, boolean isEraser, Color color) {
-        gc.setStroke(isEraser ? Color.WHITE : color);
-        if (!drag) {
-            gc.beginPath(); gc.moveTo(x,y); gc.stroke();
-        } else { gc.lineTo(x,y); gc.stroke(); }
+        batcher.add(x, y, isDrag, toRgb(colorPicker.getValue()), eraserBtn.isSelected());
     }
 
     private void sendChatOrGuess() {
@@ -184,11 +198,10 @@ public class DoodlerClient extends Application {
         if (txt.isEmpty()) return;
         try {
             if (txt.startsWith("/chat ")) {
-                out.write("CHAT:" + txt.substring(6) + "\n");
+                conn.sendLine("CHAT:" + txt.substring(6));
             } else {
-                out.write("GUESS:" + txt + "\n");
+                conn.sendLine("GUESS:" + txt);
             }
-            out.flush();
             chatInput.clear();
         } catch (Exception e) { e.printStackTrace(); }
     }
@@ -199,15 +212,16 @@ public class DoodlerClient extends Application {
 
     private void showAlert(String msg) { new Alert(Alert.AlertType.ERROR, msg, ButtonType.OK).showAndWait(); }
 
-    private static String toHex(Color c) {
+    public static int toRgb(Color c) {
         int r = (int)(c.getRed()*255), g=(int)(c.getGreen()*255), b=(int)(c.getBlue()*255);
-        return String.format("#%02x%02x%02x", r,g,b);
+        return r << 16 | g << 8 | b;
     }
 
+    public static Color fromRgb(int rgb) { return Color.rgb((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF); }
+
     @Override
     public void stop() throws Exception {
         super.stop();
-        if (out!=null) { try { out.write("LEAVE\n"); out.flush(); } catch (IOException ignored) {} }
-        if (socket!=null && !socket.isClosed()) socket.close();
+        if (conn!=null) { try { conn.close(); } catch (IOException ignored) {} }
     }
 }
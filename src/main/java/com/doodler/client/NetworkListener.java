@@ -1,24 +1,27 @@
 package com.doodler.client;
 
+import com.doodler.protocol.StrokeBatch;
 import javafx.application.Platform;
-import java.io.BufferedReader;
 
-public class NetworkListener implements Runnable {
-    private final BufferedReader in;
+public class NetworkListener implements ServerConnection.Listener {
     private final DoodlerClient app;
 
-    public NetworkListener(BufferedReader in, DoodlerClient app) { this.in = in; this.app = app; }
+    public NetworkListener(DoodlerClient app) { this.app = app; }
 
     @Override
-    public void run() {
-        try {
-            String line;
-            while ((line = in.readLine()) != null) {
-                String msg = line;
-                Platform.runLater(() -> app.handleServerMessage(msg));
-            }
-        } catch (Exception e) {
-            Platform.runLater(() -> app.appendChat("[Disconnected from server]\n"));
-        }
+    public void onLine(String line) {
+        if (RemoteCanvas.clearsCanvas(line)) app.remote.submitClear();
+        Platform.runLater(() -> app.handleServerMessage(line));
+    }
+
+    @Override
+    public void onStroke(StrokeBatch stroke) {
+        // drawn on the next pulse, batched with whatever else arrived
+        app.remote.submit(stroke);
+    }
+
+    @Override
+    public void onDisconnect() {
+        Platform.runLater(() -> app.appendChat("[Disconnected from server]\n"));
     }
 }
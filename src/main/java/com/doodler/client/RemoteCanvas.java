@@ -0,0 +1,144 @@
+package com.doodler.client;
+
+import com.doodler.protocol.StrokeBatch;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws other players' strokes. The connection's reader thread {@link #submit}s strokes (and
+ * clears, so they stay in order with the strokes around them) into a buffer; the FX thread
+ * drains it once per {@link #pulse} and strokes each run of same-colored segments as one path,
+ * instead of one {@code Platform.runLater} and one {@code stroke()} per point.
+ * <p>
+ * Drawers thin their strokes before sending (see {@link StrokeBatcher}), so points can be far
+ * apart on curves; unless -Ddoodler.draw.smooth=false they are joined with quadratic curves
+ * through the midpoints between them rather than straight lines.
+ * <p>
+ * With -Ddoodler.overlay=true, {@link #overlayText()} reports frames per second and how long
+ * strokes waited in the buffer before being drawn.
+ */
+public class RemoteCanvas {
+    public static final boolean OVERLAY = Boolean.getBoolean("doodler.overlay");
+    public static final boolean SMOOTH = !"false".equals(System.getProperty("doodler.draw.smooth"));
+    private static final StrokeBatch CLEAR = new StrokeBatch(0);
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final GraphicsContext gc;
+    // guarded by this; swapped with drained on each pulse
+    private List<StrokeBatch> incoming = new ArrayList<>();
+    private long[] queuedAt = new long[64];
+    private List<StrokeBatch> drained = new ArrayList<>();
+    private long[] drainedAt = new long[64];
+
+    // FX thread only: where each player's path ended, for strokes that continue it
+    private int[] lastX = new int[8], lastY = new int[8];
+    private boolean[] hasLast = new boolean[8];
+
+    private long windowStart, frames, strokes, waitSum, waitMax;
+    private String overlay = "";
+
+    public RemoteCanvas(GraphicsContext gc) { this.gc = gc; }
+
+    /** Lines after which the canvas starts blank: handled here so queued strokes are not drawn on top. */
+    public static boolean clearsCanvas(String line) {
+        return line.equals("CLEAR") || line.startsWith("ROUND_START");
+    }
+
+    /** Any thread. */
+    public void submit(StrokeBatch s) { enqueue(s, System.nanoTime()); }
+
+    /** Any thread; clears the canvas at this point in the stroke order. */
+    public void submitClear() { enqueue(CLEAR, System.nanoTime()); }
+
+    private synchronized void enqueue(StrokeBatch s, long now) {
+        int n = incoming.size();
+        if (n == queuedAt.length) queuedAt = Arrays.copyOf(queuedAt, n * 2);
+        queuedAt[n] = now;
+        incoming.add(s);
+    }
+
+    /** FX thread, once per frame: draws everything queued since the last pulse. */
+    public void pulse(long now) {
+        synchronized (this) {
+            List<StrokeBatch> l = drained; drained = incoming; incoming = l;
+            long[] t = drainedAt; drainedAt = queuedAt; queuedAt = t;
+        }
+        int n = drained.size();
+        if (n > 0) render(drained);
+        if (OVERLAY) sample(n, now);
+        drained.clear();
+    }
+
+    private void render(List<StrokeBatch> list) {
+        int runKey = -1;
+        for (int k = 0; k < list.size(); k++) {
+            StrokeBatch s = list.get(k);
+            if (s == CLEAR) {
+                if (runKey != -1) { gc.stroke(); runKey = -1; }
+                gc.clearRect(0, 0, gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
+                Arrays.fill(hasLast, false);
+                continue;
+            }
+            if (s.isEmpty()) continue;
+            int key = s.eraser ? 0x1000000 : s.rgb;
+            if (key != runKey) {
+                if (runKey != -1) gc.stroke();
+                gc.setStroke(s.eraser ? Color.WHITE : DoodlerClient.fromRgb(s.rgb));
+                gc.beginPath();
+                runKey = key;
+            }
+            trace(s);
+        }
+        if (runKey != -1) gc.stroke();
+    }
+
+    /** Adds one stroke to the open path, joined to where that player's path last ended. */
+    private void trace(StrokeBatch s) {
+        int p = s.playerId;
+        if (p >= hasLast.length) {
+            int len = Math.max(p + 1, hasLast.length * 2);
+            lastX = Arrays.copyOf(lastX, len); lastY = Arrays.copyOf(lastY, len); hasLast = Arrays.copyOf(hasLast, len);
+        }
+        int last = s.size() - 1;
+        boolean joined = s.continues && hasLast[p];
+        double px = joined ? StrokeBatch.unquantize(lastX[p]) : s.x(0), py = joined ? StrokeBatch.unquantize(lastY[p]) : s.y(0);
+        gc.moveTo(px, py);
+        if (!SMOOTH) {
+            if (joined) gc.lineTo(s.x(0), s.y(0));
+            for (int i = 1; i <= last; i++) gc.lineTo(s.x(i), s.y(i));
+        } else {
+            // each point is the control point of a curve between the midpoints around it
+            int i = joined ? 0 : 1;
+            for (; i < last; i++) {
+                gc.quadraticCurveTo(s.x(i), s.y(i), (s.x(i) + s.x(i + 1)) / 2, (s.y(i) + s.y(i + 1)) / 2);
+            }
+            if (joined || last > 0) gc.lineTo(s.x(last), s.y(last));
+        }
+        lastX[p] = s.qx(last); lastY[p] = s.qy(last); hasLast[p] = true;
+    }
+
+    private void sample(int n, long now) {
+        frames++;
+        for (int i = 0; i < n; i++) {
+            long w = now - drainedAt[i];
+            waitSum += w;
+            if (w > waitMax) waitMax = w;
+        }
+        strokes += n;
+        if (windowStart == 0) windowStart = now;
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW_NANOS) return;
+        overlay = String.format("%.0f fps | %d strokes/s | queue avg %.1f ms, max %.1f ms",
+                frames * 1e9 / elapsed, strokes * WINDOW_NANOS / elapsed,
+                strokes == 0 ? 0.0 : waitSum / 1e6 / strokes, waitMax / 1e6);
+        windowStart = now;
+        frames = strokes = waitSum = waitMax = 0;
+    }
+
+    /** FPS and queue latency over the last second; empty unless the overlay is enabled. */
+    public String overlayText() { return overlay; }
+}
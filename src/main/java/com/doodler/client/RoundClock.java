@@ -0,0 +1,34 @@
+package com.doodler.client;
+
+import com.doodler.protocol.Message;
+
+/**
+ * Local countdown for the current round. The server sends the deadline once at round start
+ * (DEADLINE) and re-anchors it every few seconds (CLOCK), both as
+ * {@code op:endsAtMillis:serverNowMillis}. Only the difference is used, so the two clocks need
+ * not agree; the error is the one-way delay of the last message. The UIs render the seconds left
+ * from their frame timer; the server still decides when the round ends (ROUND_END).
+ */
+public final class RoundClock {
+    private static final long NONE = Long.MIN_VALUE;
+    // local System.nanoTime() at which the round ends; NONE while no round is running
+    private volatile long deadlineNanos = NONE;
+
+    /** Applies a DEADLINE or CLOCK line; call with the time it was received. */
+    public void sync(Message m, long receivedNanos) {
+        long remainingMillis = m.longField(1) - m.longField(2);
+        deadlineNanos = receivedNanos + Math.max(0, remainingMillis) * 1_000_000;
+    }
+
+    public void stop() { deadlineNanos = NONE; }
+
+    public boolean isRunning() { return deadlineNanos != NONE; }
+
+    /** Whole seconds left, rounded up as the old TIME ticks were; -1 when no round is running. */
+    public int secondsLeft(long nowNanos) {
+        long d = deadlineNanos;
+        if (d == NONE) return -1;
+        long left = Math.max(0, d - nowNanos);
+        return (int) ((left + 999_999_999) / 1_000_000_000);
+    }
+}
@@ -0,0 +1,356 @@
+package com.doodler.client;
+
+import com.doodler.protocol.Compression;
+import com.doodler.protocol.Frames;
+import com.doodler.protocol.Message;
+import com.doodler.protocol.StrokeBatch;
+import com.doodler.protocol.StrokeCodec;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Client end of the game protocol, shared by {@link DoodlerClient} and the FXML GameController.
+ * Offers the binary stroke protocol at JOIN and falls back to text lines if the server does not
+ * accept it (or if -Ddoodler.protocol=text). Along with binary frames it offers deflate, which
+ * the server may take (-Ddoodler.compression=off to not offer it). If the connection drops it reconnects with RESUME
+ * for as long as the server holds the player's seat, and the listener never notices. A server
+ * that is one node of a cluster may answer REDIRECT:host:port instead, at JOIN or when the room
+ * moves; the connection then joins the room again there.
+ */
+public class ServerConnection implements Closeable {
+    public static final int PORT = 55555;
+    // how long to keep trying to resume; matches the server's doodler.resume.graceSec
+    static final int RESUME_GRACE_SECONDS = Integer.getInteger("doodler.resume.graceSec", 30);
+    private static final long MAX_BACKOFF_MILLIS = 4000;
+    // a JOIN redirected more often than this is given up on: the nodes disagree about the room
+    private static final int MAX_REDIRECTS = 3;
+    static final boolean OFFER_DEFLATE = !"off".equals(System.getProperty("doodler.compression"));
+    // strokes are small and frequent: cheap levels compress them about as well
+    static final int DEFLATE_LEVEL = Integer.getInteger("doodler.compression.level", 6);
+
+    /** Callbacks run on the connection's reader thread. */
+    public interface Listener {
+        void onLine(String line);
+
+        /** Strokes from either wire format, including canvas replays. */
+        void onStroke(StrokeBatch stroke);
+
+        void onDisconnect();
+    }
+
+    // host[:port] of the server this connection is on; changes when the room moves
+    private volatile String address;
+    private final String code;
+    private final String username;
+    // replaced under this lock when a dropped connection is resumed or redirected
+    private Socket socket;
+    private volatile InputStream in;
+    private OutputStream out;
+    private volatile boolean frames;
+    private volatile boolean deflate;
+    private final String firstLine;
+    // from the server's TOKEN line; null until then, or if the server does not offer resuming
+    private volatile String token;
+    // from a REDIRECT line: where to join once this connection ends
+    private volatile String redirectTo;
+    private volatile boolean closing;
+    // reader thread only
+    private final Message msg = new Message();
+    // frames (or lines) read so far: the server numbers what it sends the same way
+    private long received;
+
+    private ServerConnection(String address, String code, String username, Socket socket, InputStream in, OutputStream out,
+                             boolean frames, boolean deflate, String firstLine) {
+        this.address = address; this.code = code; this.username = username;
+        this.socket = socket; this.in = in; this.out = out; this.frames = frames; this.deflate = deflate;
+        this.firstLine = firstLine;
+    }
+
+    /** {@code host} may carry a port (host:port); without one the default port is used. */
+    public static ServerConnection connect(String host, String code, String username) throws IOException {
+        String address = host;
+        for (int hops = 0; ; hops++) {
+            ServerConnection c = open(address, code, username);
+            String moved = c.firstLine != null && c.firstLine.startsWith("REDIRECT:") ? c.firstLine.substring(9) : null;
+            if (moved == null) return c;
+            c.socket.close();
+            if (hops == MAX_REDIRECTS) throw new IOException("Too many redirects joining " + code);
+            address = moved;
+        }
+    }
+
+    private static ServerConnection open(String address, String code, String username) throws IOException {
+        Socket socket = socket(address);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        boolean offerBinary = !"text".equals(System.getProperty("doodler.protocol"));
+        if (offerBinary) writeLine(out, capsLine());
+        writeLine(out, "JOIN:" + Message.escape(code) + ":" + Message.escape(username));
+        out.flush();
+        if (!offerBinary) return new ServerConnection(address, code, username, socket, in, out, false, false, null);
+        // the server answers CAPS with PROTO before anything else; any other line means text
+        String first = Frames.readLine(in);
+        boolean frames = accepted(first, Frames.BINARY_V1);
+        boolean deflate = frames && accepted(first, Compression.DEFLATE);
+        if (deflate) { in = inflating(in); out = deflating(out); }
+        return new ServerConnection(address, code, username, socket, in, out, frames, deflate, frames ? null : first);
+    }
+
+    private static Socket socket(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        Socket s = colon < 0 ? new Socket(address, PORT)
+                : new Socket(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        s.setTcpNoDelay(true);
+        return s;
+    }
+
+    private static String capsLine() {
+        return Frames.CAPS_PREFIX + Frames.BINARY_V1 + (OFFER_DEFLATE ? "," + Compression.DEFLATE : "");
+    }
+
+    /** Whether {@code proto}, the server's first line, is a PROTO line that lists {@code cap}. */
+    private static boolean accepted(String proto, String cap) {
+        return proto != null && proto.startsWith(Frames.PROTO_PREFIX)
+                && Frames.hasCap(proto.substring(Frames.PROTO_PREFIX.length()), cap);
+    }
+
+    // everything after PROTO is deflated, in both directions
+    private static InputStream inflating(InputStream in) {
+        return new BufferedInputStream(new InflaterInputStream(in, Compression.inflater(), 4096));
+    }
+
+    private static OutputStream deflating(OutputStream out) {
+        // syncFlush: each flush() ends at a frame boundary the server can decode up to
+        return new BufferedOutputStream(new DeflaterOutputStream(out, Compression.deflater(DEFLATE_LEVEL), 4096, true));
+    }
+
+    public boolean isBinary() { return frames; }
+
+    public boolean isCompressed() { return deflate; }
+
+    /** Starts the reader on a daemon thread. */
+    public void start(Listener l) {
+        start(l, r -> {
+            Thread t = new Thread(r, "server-reader");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Starts the reader on a thread from {@code threads}, e.g. virtual threads for many connections. */
+    public void start(Listener l, ThreadFactory threads) {
+        threads.newThread(() -> readLoop(l)).start();
+    }
+
+    private void readLoop(Listener l) {
+        if (firstLine != null) {
+            onLine(firstLine, l);
+            received++;
+        }
+        Frames.Handler h = new Frames.Handler() {
+            @Override public void onText(String line) { onLine(line, l); }
+
+            @Override public void onStroke(StrokeBatch stroke) { l.onStroke(stroke); }
+        };
+        do {
+            try {
+                if (frames) {
+                    while (Frames.read(in, h)) received++;
+                } else {
+                    String line;
+                    while ((line = Frames.readLine(in)) != null) {
+                        if (!textStroke(line, l)) onLine(line, l);
+                        received++;
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        } while (rejoin(l) || resume(l));
+        l.onDisconnect();
+    }
+
+    private void onLine(String line, Listener l) {
+        // connection bookkeeping, not for the UI
+        if (line.startsWith("TOKEN:")) token = line.substring(6);
+        else if (line.startsWith("REDIRECT:")) redirectTo = line.substring(9);
+        else l.onLine(line);
+    }
+
+    /**
+     * Reconnects after the connection dropped, with backoff, for as long as the server holds the
+     * player's seat. Returns true once reading can go on from the new socket: either with the
+     * frames missed in between, or from a full resync the server sends (CLEAR, canvas, players,
+     * role, scores). Returns false if the player left, or the server refused or never came back.
+     */
+    private boolean resume(Listener l) {
+        if (token == null || closing) return false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RESUME_GRACE_SECONDS);
+        long backoff = 250;
+        while (!closing && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            Socket s = null;
+            try {
+                s = socket(address);
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                OutputStream out = new BufferedOutputStream(s.getOutputStream());
+                if (frames) writeLine(out, capsLine());
+                writeLine(out, "RESUME:" + Message.escape(code) + ":" + token + ":" + received);
+                out.flush();
+                String reply;
+                if (!frames) {
+                    reply = Frames.readLine(in);
+                } else {
+                    String proto = Frames.readLine(in);
+                    if (!accepted(proto, Frames.BINARY_V1)) {
+                        s.close();
+                        if (proto == null || !proto.startsWith("REDIRECT:")) return false;
+                        redirectTo = proto.substring(9);
+                        return rejoin(l);
+                    }
+                    // deflate is per connection: the new one may or may not have it
+                    deflate = accepted(proto, Compression.DEFLATE);
+                    if (deflate) { in = inflating(in); out = deflating(out); }
+                    reply = textFrame(in);
+                }
+                // the server answered: the seat is gone, trying again will not help
+                if (reply == null || !reply.startsWith("RESUMED:")) {
+                    s.close();
+                    // unless the room went on elsewhere without the player's seat
+                    if (reply == null || !reply.startsWith("REDIRECT:")) return false;
+                    redirectTo = reply.substring(9);
+                    return rejoin(l);
+                }
+                synchronized (this) {
+                    socket.close();
+                    socket = s; this.in = in; this.out = out;
+                }
+                // a full resync numbers the new stream from scratch, starting with RESUMED
+                received = reply.equals("RESUMED:full") ? 1 : received + 1;
+                l.onLine("INFO:Reconnected");
+                return true;
+            } catch (IOException e) {
+                if (s != null) try { s.close(); } catch (IOException ignored) {}
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Joins the room again on the node a REDIRECT named, as a new player: the room moved there,
+     * or this node was not the one to ask. Returns false if there was no REDIRECT or the join failed.
+     */
+    private boolean rejoin(Listener l) {
+        String target = redirectTo;
+        if (target == null || closing) return false;
+        redirectTo = null;
+        ServerConnection next;
+        try {
+            next = connect(target, code, username);
+        } catch (IOException e) {
+            return false;
+        }
+        synchronized (this) {
+            try { socket.close(); } catch (IOException ignored) {}
+            socket = next.socket; in = next.in; out = next.out;
+            frames = next.frames; deflate = next.deflate; address = next.address;
+        }
+        // a new player on a new stream: the old token and frame count mean nothing there
+        token = null;
+        received = 0;
+        l.onLine("INFO:Moved to " + address);
+        if (next.firstLine != null) {
+            onLine(next.firstLine, l);
+            received++;
+        }
+        return true;
+    }
+
+    /** The next frame's text (RESUMED:delta|full on a resumed connection), or null at EOF. */
+    private static String textFrame(InputStream in) throws IOException {
+        String[] reply = {null};
+        Frames.Handler h = new Frames.Handler() {
+            @Override public void onText(String line) { reply[0] = line; }
+
+            @Override public void onStroke(StrokeBatch stroke) { }
+        };
+        return Frames.read(in, h) ? reply[0] : null;
+    }
+
+    /**
+     * Hands text-protocol strokes (DRAW:user:..., STROKE:user:..., REPLAY:...) to
+     * {@link Listener#onStroke} like binary ones; returns false for any other line.
+     */
+    private boolean textStroke(String line, Listener l) {
+        Message m = msg.parse(line);
+        try {
+            switch (m.op()) {
+                case REPLAY -> {
+                    for (StrokeBatch s : StrokeCodec.fromTextReplay(line, m.start(1), line.length())) l.onStroke(s);
+                }
+                // DRAW:user:x:y:... and STROKE:user:continues:...
+                case DRAW -> l.onStroke(StrokeCodec.fromTextPayload(line, m.start(2), line.length()));
+                case STROKE -> l.onStroke(StrokeCodec.fromTextStroke(line, m.start(2), line.length()));
+                default -> { return false; }
+            }
+        } catch (IllegalArgumentException ignored) {
+            // a malformed stroke is dropped, as the UIs always did
+        }
+        return true;
+    }
+
+    public synchronized void sendLine(String line) throws IOException {
+        if (frames) writeFrame(Frames.text(line)); else writeLine(out, line);
+        out.flush();
+    }
+
+    public synchronized void sendStroke(StrokeBatch stroke) throws IOException {
+        writeStroke(stroke);
+        out.flush();
+    }
+
+    /** Writes every segment, then flushes once. */
+    public synchronized void sendStrokes(List<StrokeBatch> segments) throws IOException {
+        for (StrokeBatch s : segments) writeStroke(s);
+        out.flush();
+    }
+
+    private void writeStroke(StrokeBatch stroke) throws IOException {
+        if (frames) {
+            writeFrame(Frames.stroke(stroke));
+        } else if (stroke.size() == 1) {
+            writeLine(out, "DRAW:" + StrokeCodec.toTextPayload(stroke, 0));
+        } else {
+            writeLine(out, "STROKE:" + StrokeCodec.toTextStroke(stroke));
+        }
+    }
+
+    private void writeFrame(ByteBuffer b) throws IOException {
+        out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+
+    /** Sends LEAVE and closes the socket. */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        try { sendLine("LEAVE"); } catch (IOException ignored) {}
+        synchronized (this) { socket.close(); }
+    }
+}
@@ -0,0 +1,189 @@
+package com.doodler.client;
+
+import com.doodler.protocol.StrokeBatch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the drawer's pointer samples into stroke segments and hands them to the connection
+ * in one write per flush instead of one write per mouse event. A flush happens on the first
+ * {@link #pulse} after the oldest pending point is {@code latencyBudget} old (0 = every pulse),
+ * as soon as {@code maxPoints} are pending, and on {@link #flush()} (e.g. mouse release).
+ * <p>
+ * Points are thinned before they are queued. A drag sample closer than
+ * -Ddoodler.draw.minDistance px to the previous one is dropped, and of a run of samples that
+ * stays within -Ddoodler.draw.tolerance px of the line from the last kept point to the newest
+ * one, only that newest one is kept (a streaming Ramer-Douglas-Peucker). That newest sample is
+ * held back until the path turns, the stroke ends, or it is -Ddoodler.draw.holdMs old.
+ * Not thread-safe: call it from the thread that handles input (the FX thread in the clients).
+ */
+public class StrokeBatcher {
+    public static final long LATENCY_BUDGET_MS = Long.getLong("doodler.draw.flushMs", 16);
+    public static final int MAX_POINTS = Integer.getInteger("doodler.draw.maxPoints", 64);
+    // 0 keeps every sample
+    public static final double TOLERANCE_PX = Double.parseDouble(System.getProperty("doodler.draw.tolerance", "0.5"));
+    public static final double MIN_DISTANCE_PX = Double.parseDouble(System.getProperty("doodler.draw.minDistance", "1"));
+    public static final long HOLD_MS = Long.getLong("doodler.draw.holdMs", 50);
+
+    public interface Sink {
+        void send(List<StrokeBatch> segments) throws IOException;
+    }
+
+    private final Sink sink;
+    private final long budgetNanos;
+    private final int maxPoints;
+    // in quantized units, squared where compared against squared distances
+    private final long toleranceSq, minDistanceSq;
+    private final long holdNanos;
+    private final StrokeTrace.Recorder recorder = StrokeTrace.recorder();
+    private final List<StrokeBatch> pending = new ArrayList<>();
+    // the segment being filled; null after a send until the path goes on
+    private StrokeBatch current;
+    private boolean inPath, runEraser;
+    private int runRgb;
+    private int points;
+    private long oldestAt;
+
+    // the last queued point of the current path, and the samples after it; the newest is the candidate
+    private int anchorX, anchorY;
+    private int[] window = new int[32];
+    private int windowSize;
+    private long windowAt;
+
+    private long pointsIn, pointsOut;
+
+    public StrokeBatcher(Sink sink) {
+        this(sink, LATENCY_BUDGET_MS * 1_000_000L, MAX_POINTS);
+    }
+
+    public StrokeBatcher(Sink sink, long budgetNanos, int maxPoints) {
+        this(sink, budgetNanos, maxPoints, TOLERANCE_PX, MIN_DISTANCE_PX, HOLD_MS * 1_000_000L);
+    }
+
+    public StrokeBatcher(Sink sink, long budgetNanos, int maxPoints, double tolerancePx, double minDistancePx, long holdNanos) {
+        this.sink = sink; this.budgetNanos = budgetNanos; this.maxPoints = maxPoints; this.holdNanos = holdNanos;
+        long tol = Math.round(tolerancePx * StrokeBatch.SCALE), min = Math.round(minDistancePx * StrokeBatch.SCALE);
+        this.toleranceSq = tol * tol;
+        this.minDistanceSq = min * min;
+    }
+
+    public void add(double x, double y, boolean isDrag, int rgb, boolean eraser) {
+        add(x, y, isDrag, rgb, eraser, System.nanoTime());
+    }
+
+    public void add(double x, double y, boolean isDrag, int rgb, boolean eraser, long nowNanos) {
+        if (recorder != null) recorder.point(x, y, isDrag, nowNanos);
+        pointsIn++;
+        int qx = StrokeBatch.quantize(x), qy = StrokeBatch.quantize(y);
+        if (!inPath || !isDrag || runRgb != rgb || runEraser != eraser) {
+            // the path so far ends where the pointer was, not where it was last queued
+            releaseCandidate();
+            // a drag that changes color still continues the same path, as before batching
+            current = StrokeBatch.of(rgb, eraser, isDrag);
+            pending.add(current);
+            inPath = true; runRgb = rgb; runEraser = eraser;
+            queue(qx, qy, nowNanos);
+            return;
+        }
+        int lastX = windowSize > 0 ? window[windowSize * 2 - 2] : anchorX;
+        int lastY = windowSize > 0 ? window[windowSize * 2 - 1] : anchorY;
+        if (distanceSq(qx, qy, lastX, lastY) < minDistanceSq) return;
+        if (windowSize * 2 == window.length) window = Arrays.copyOf(window, window.length * 2);
+        window[windowSize * 2] = qx;
+        window[windowSize * 2 + 1] = qy;
+        if (windowSize++ == 0) windowAt = nowNanos;
+        if (!withinTolerance()) {
+            // the previous candidate was the last point the straight line could stand in for
+            long at = windowAt;
+            int cx = window[windowSize * 2 - 4], cy = window[windowSize * 2 - 3];
+            windowSize = 0;
+            queue(cx, cy, at);
+            window[0] = qx; window[1] = qy;
+            windowSize = 1;
+            windowAt = nowNanos;
+        }
+        if (windowSize >= maxPoints) releaseCandidate();
+    }
+
+    /** Whether every sample in the window lies within the tolerance of anchor -> candidate. */
+    private boolean withinTolerance() {
+        int n = windowSize - 1;
+        int cx = window[n * 2], cy = window[n * 2 + 1];
+        for (int i = 0; i < n; i++) {
+            if (!withinTolerance(window[i * 2], window[i * 2 + 1], anchorX, anchorY, cx, cy)) return false;
+        }
+        return true;
+    }
+
+    /** Queues the held candidate, if any, so the path reaches the newest sample. */
+    private void releaseCandidate() {
+        if (windowSize == 0) return;
+        int n = windowSize - 1;
+        windowSize = 0;
+        queue(window[n * 2], window[n * 2 + 1], windowAt);
+    }
+
+    /** {@code since}: when the oldest sample this point stands for was taken. */
+    private void queue(int qx, int qy, long since) {
+        if (current == null) {
+            current = StrokeBatch.of(runRgb, runEraser, true);
+            pending.add(current);
+        }
+        current.addQuantized(qx, qy);
+        anchorX = qx; anchorY = qy;
+        pointsOut++;
+        if (points++ == 0) oldestAt = since;
+        if (points >= maxPoints) send();
+    }
+
+    /** Called once per render pulse / frame. */
+    public void pulse(long nowNanos) {
+        if (windowSize > 0 && nowNanos - windowAt >= holdNanos) releaseCandidate();
+        if (points > 0 && nowNanos - oldestAt >= budgetNanos) send();
+    }
+
+    /** Sends everything, the held candidate included; the stroke may go on afterwards. */
+    public void flush() {
+        releaseCandidate();
+        send();
+    }
+
+    private void send() {
+        if (points == 0) return;
+        List<StrokeBatch> out = new ArrayList<>(pending);
+        pending.clear();
+        // whatever the path queues next goes in a new segment that continues this one
+        current = null;
+        points = 0;
+        try { sink.send(out); } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    /** Points not sent yet, the held candidate included. */
+    public int pendingPoints() { return points + (windowSize > 0 ? 1 : 0); }
+
+    /** Samples added so far. */
+    public long pointsIn() { return pointsIn; }
+
+    /** Points queued for sending so far, after thinning. */
+    public long pointsOut() { return pointsOut; }
+
+    private static long distanceSq(int ax, int ay, int bx, int by) {
+        long dx = ax - bx, dy = ay - by;
+        return dx * dx + dy * dy;
+    }
+
+    /** Whether p is within the tolerance of the segment a-b. */
+    private boolean withinTolerance(int px, int py, int ax, int ay, int bx, int by) {
+        long dx = bx - ax, dy = by - ay;
+        long len = dx * dx + dy * dy;
+        long t = (px - ax) * dx + (py - ay) * dy;
+        if (len == 0 || t <= 0) return distanceSq(px, py, ax, ay) <= toleranceSq;
+        if (t >= len) return distanceSq(px, py, bx, by) <= toleranceSq;
+        // perpendicular distance^2 = cross^2 / len, compared without dividing
+        long cross = (px - ax) * dy - (py - ay) * dx;
+        return cross * cross <= toleranceSq * len;
+    }
+}
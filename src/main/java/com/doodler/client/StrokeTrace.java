@@ -0,0 +1,162 @@
+package com.doodler.client;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A recorded drawing: pointer samples with the time they were taken, as one text line each
+ * ({@code millis x y drag}, drag 0 or 1; '#' starts a comment). Clients record one with
+ * -Ddoodler.draw.record=file and the load generator replays it.
+ * <p>
+ * {@code java com.doodler.client.StrokeTrace [file...]} reports how many points
+ * {@link StrokeBatcher} keeps of each trace (of a synthetic one without files) at a few
+ * tolerances, with the other -Ddoodler.draw.* settings as given.
+ */
+public final class StrokeTrace {
+    private long[] millis;
+    private double[] xs, ys;
+    private boolean[] drags;
+    private int size;
+
+    private StrokeTrace(int capacity) {
+        millis = new long[capacity]; xs = new double[capacity]; ys = new double[capacity]; drags = new boolean[capacity];
+    }
+
+    private void add(long ms, double x, double y, boolean drag) {
+        if (size == millis.length) {
+            int n = size * 2;
+            millis = Arrays.copyOf(millis, n); xs = Arrays.copyOf(xs, n); ys = Arrays.copyOf(ys, n); drags = Arrays.copyOf(drags, n);
+        }
+        millis[size] = ms; xs[size] = x; ys[size] = y; drags[size] = drag;
+        size++;
+    }
+
+    public static StrokeTrace load(Path file) throws IOException {
+        StrokeTrace t = new StrokeTrace(1024);
+        int lineNo = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNo++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] f = line.split("\\s+");
+            if (f.length < 4) throw new IOException(file + ":" + lineNo + ": expected 'millis x y drag'");
+            try {
+                t.add(Long.parseLong(f[0]), Double.parseDouble(f[1]), Double.parseDouble(f[2]), !"0".equals(f[3]));
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ":" + lineNo + ": " + e.getMessage());
+            }
+        }
+        if (t.size == 0) throw new IOException(file + " has no points");
+        return t;
+    }
+
+    /**
+     * A stand-in for a recorded drawing: {@code strokes} wobbly strokes of 20-80 points sampled
+     * at 60 Hz with short pen-up pauses, inside a 700x400 canvas.
+     */
+    public static StrokeTrace synthetic(long seed, int strokes) {
+        Random r = new Random(seed);
+        StrokeTrace t = new StrokeTrace(strokes * 50);
+        long ms = 0;
+        for (int s = 0; s < strokes; s++) {
+            double x = 50 + r.nextDouble() * 600, y = 50 + r.nextDouble() * 300;
+            double heading = r.nextDouble() * Math.PI * 2;
+            int n = 20 + r.nextInt(61);
+            for (int i = 0; i < n; i++) {
+                t.add(ms, x, y, i > 0);
+                heading += (r.nextDouble() - 0.5) * 0.6;
+                x = Math.clamp(x + Math.cos(heading) * 4, 0, 700);
+                y = Math.clamp(y + Math.sin(heading) * 4, 0, 400);
+                ms += 16;
+            }
+            ms += 150 + r.nextInt(300);
+        }
+        return t;
+    }
+
+    public int size() { return size; }
+
+    /** Time of point {@code i} relative to the first point. */
+    public long millis(int i) { return millis[i] - millis[0]; }
+
+    public double x(int i) { return xs[i]; }
+
+    public double y(int i) { return ys[i]; }
+
+    public boolean isDrag(int i) { return drags[i]; }
+
+    /** Length of one pass over the trace, plus a pause before it loops. */
+    public long durationMillis() { return millis(size - 1) + 500; }
+
+    public static void main(String[] args) throws IOException {
+        double[] tolerances = {0, 0.25, 0.5, 1, 2};
+        System.out.printf("%-24s %8s", "trace", "samples");
+        for (double t : tolerances) System.out.printf(" %13s", "tol " + t + "px");
+        System.out.println();
+        if (args.length == 0) report("synthetic", synthetic(42, 40), tolerances);
+        for (String a : args) report(Path.of(a).getFileName().toString(), load(Path.of(a)), tolerances);
+    }
+
+    private static void report(String name, StrokeTrace t, double[] tolerances) {
+        System.out.printf("%-24s %8d", name, t.size());
+        for (double tol : tolerances) {
+            long[] sent = {0};
+            StrokeBatcher b = new StrokeBatcher(segments -> { for (var s : segments) sent[0] += s.size(); },
+                    StrokeBatcher.LATENCY_BUDGET_MS * 1_000_000L, StrokeBatcher.MAX_POINTS,
+                    tol, StrokeBatcher.MIN_DISTANCE_PX, StrokeBatcher.HOLD_MS * 1_000_000L);
+            // samples at their recorded times, with a render pulse every 16 ms in between
+            long frame = 0;
+            for (int i = 0; i < t.size(); i++) {
+                long at = t.millis(i) * 1_000_000;
+                for (; frame <= at; frame += 16_000_000) b.pulse(frame);
+                b.add(t.x(i), t.y(i), t.isDrag(i), 0, false, at);
+            }
+            b.flush();
+            System.out.printf(" %6d %5.1f%%", sent[0], 100.0 * (t.size() - sent[0]) / t.size());
+        }
+        System.out.println();
+    }
+
+    /** Appends pointer samples to a trace file; one per process, see {@link #recorder()}. */
+    public static final class Recorder {
+        private final Writer out;
+        private final long start = System.nanoTime();
+
+        private Recorder(Path file) throws IOException {
+            out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            out.write("# doodler stroke trace: millis x y drag\n");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try { out.close(); } catch (IOException ignored) {}
+            }));
+        }
+
+        public synchronized void point(double x, double y, boolean drag, long nowNanos) {
+            try {
+                out.write((nowNanos - start) / 1_000_000 + " " + x + " " + y + " " + (drag ? 1 : 0) + "\n");
+            } catch (IOException e) {
+                System.err.println("Stroke trace not recorded: " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class RecorderHolder {
+        static final Recorder INSTANCE = open(System.getProperty("doodler.draw.record"));
+
+        private static Recorder open(String file) {
+            if (file == null || file.isEmpty()) return null;
+            try {
+                return new Recorder(Path.of(file));
+            } catch (IOException e) {
+                System.err.println("Cannot record strokes to " + file + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /** The recorder named by -Ddoodler.draw.record, or null when not recording. */
+    public static Recorder recorder() { return RecorderHolder.INSTANCE; }
+}
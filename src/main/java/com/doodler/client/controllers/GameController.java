@@ -1,5 +1,12 @@
 package com.doodler.client.controllers;
 
+import com.doodler.client.RemoteCanvas;
+import com.doodler.client.RoundClock;
+import com.doodler.client.ServerConnection;
+import com.doodler.client.StrokeBatcher;
+import com.doodler.protocol.Message;
+import com.doodler.protocol.StrokeBatch;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.canvas.Canvas;
@@ -8,21 +15,23 @@ import javafx.scene.control.*;
 import javafx.scene.paint.Color;
 
 import java.io.*;
-import java.net.Socket;
-import java.util.concurrent.Executors;
 
 public class GameController {
 
     @FXML private Canvas canvas;
     @FXML private TextArea chatArea;
     @FXML private TextField guessField;
-    @FXML private Label timerLabel, wordLabel;
+    @FXML private Label timerLabel, wordLabel, overlayLabel;
 
     private GraphicsContext gc;
+    private RemoteCanvas remote;
+    // FX thread only
+    private final Message msg = new Message();
+    private final RoundClock clock = new RoundClock();
+    private int shownSeconds = -1;
 
-    private Socket socket;
-    private BufferedReader in;
-    private BufferedWriter out;
+    private ServerConnection conn;
+    private StrokeBatcher batcher;
 
     private boolean amDrawer = false;
     private String username;
@@ -46,6 +55,8 @@ public class GameController {
         gc = canvas.getGraphicsContext2D();
         gc.setLineWidth(3);
         gc.setStroke(Color.BLACK);
+        remote = new RemoteCanvas(gc);
+        overlayLabel.setVisible(RemoteCanvas.OVERLAY);
     }
 
     private void setupCanvas() {
@@ -62,77 +73,80 @@ public class GameController {
             gc.stroke();
             sendDraw(e.getX(), e.getY(), true);
         });
+        canvas.setOnMouseReleased(e -> { if (amDrawer && batcher != null) batcher.flush(); });
+        // once per frame: pending points go out, queued remote strokes are drawn
+        new AnimationTimer() {
+            @Override public void handle(long now) {
+                if (batcher != null) batcher.pulse(now);
+                remote.pulse(now);
+                if (RemoteCanvas.OVERLAY) overlayLabel.setText(remote.overlayText());
+                int left = clock.secondsLeft(now);
+                if (left >= 0 && left != shownSeconds) {
+                    shownSeconds = left;
+                    timerLabel.setText("Time: " + left + "s");
+                }
+            }
+        }.start();
     }
 
     private void connectToServer() {
         try {
-            socket = new Socket(hostIP, 55555);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-            out.write("JOIN:" + gameCode + ":" + username + "\n");
-            out.flush();
-
-            Executors.newSingleThreadExecutor().submit(this::listenServer);
-            appendChat("[INFO] Connected to server.\n");
+            conn = ServerConnection.connect(hostIP, gameCode, username);
+            batcher = new StrokeBatcher(conn::sendStrokes);
+            conn.start(new ServerConnection.Listener() {
+                @Override public void onLine(String line) {
+                    if (RemoteCanvas.clearsCanvas(line)) remote.submitClear();
+                    Platform.runLater(() -> handleServerMessage(line));
+                }
+
+                @Override public void onStroke(StrokeBatch stroke) { remote.submit(stroke); }
+
+                @Override public void onDisconnect() { Platform.runLater(() -> appendChat("[Disconnected]\n")); }
+            });
+            appendChat("[INFO] Connected to server" + (conn.isCompressed() ? " (binary strokes, deflate).\n"
+                    : conn.isBinary() ? " (binary strokes).\n" : ".\n"));
         } catch (IOException e) {
             appendChat("[ERROR] Could not connect to server.\n");
             e.printStackTrace();
         }
     }
 
-    private void listenServer() {
-        try {
-            String line;
-            while ((line = in.readLine()) != null) {
-                String msg = line;
-                Platform.runLater(() -> handleServerMessage(msg));
-            }
-        } catch (IOException e) {
-            Platform.runLater(() -> appendChat("[Disconnected]\n"));
-        }
-    }
-
     // ------------------ Message Handling ------------------
     private void handleServerMessage(String line) {
-        if (line.startsWith("INFO:")) {
-            appendChat("[INFO] " + line.substring(5) + "\n");
-        } else if (line.startsWith("CHAT:")) {
-            String[] p = line.split(":", 3);
-            appendChat(p[1] + ": " + p[2] + "\n");
-        } else if (line.startsWith("DRAW:")) {
-            // DRAW:username:x:y:isDrag:isEraser:color
-            String[] p = line.split(":", 3);
-            if (p.length < 3) return;
-            String[] parts = p[2].split(":");
-            try {
-                double x = Double.parseDouble(parts[0]);
-                double y = Double.parseDouble(parts[1]);
-                boolean drag = Boolean.parseBoolean(parts[2]);
-                boolean isEraser = Boolean.parseBoolean(parts[3]);
-                Color color = Color.web(parts[4]);
-                drawRemote(x, y, drag, isEraser, color);
-            } catch (Exception ignored) {}
-        } else if (line.startsWith("ROLE:")) {
-            amDrawer = line.substring(5).equalsIgnoreCase("DRAWER");
-            appendChat("[SYSTEM] Role: " + (amDrawer ? "Drawer" : "Guesser") + "\n");
-        } else if (line.startsWith("SECRET:")) {
-            String s = line.substring(7);
-            wordLabel.setText(s.replaceAll(".", "_ "));
-            appendChat("[SECRET] Word to draw: " + s + "\n");
-        } else if (line.startsWith("TIME:")) {
-            timerLabel.setText("Time: " + line.substring(5) + "s");
-        } else if (line.startsWith("CORRECT:")) {
-            String[] p = line.split(":", 4);
-            appendChat("[ROUND] " + p[1] + " guessed correctly! (" + p[2] + ")\n");
-            guessField.setDisable(true);
-        } else if (line.startsWith("DISABLE:")) {
-            String who = line.substring(8);
-            if (who.equals(username)) guessField.setDisable(true);
-        } else if (line.startsWith("ROUND_END:")) {
-            appendChat("[ROUND END] " + line + "\n");
-        } else if (line.startsWith("SCORES:")) {
-            appendChat("[SCORES]\n" + line.substring(7).replace(";;", "\n") + "\n");
-        } else {
+        Message m = msg.parse(line);
+        try {
+            switch (m.op()) {
+                case INFO -> appendChat("[INFO] " + m.rest(1) + "\n");
+                case CHAT -> appendChat(m.str(1) + ": " + m.rest(2) + "\n");
+                case ROLE -> {
+                    amDrawer = m.rest(1).equalsIgnoreCase("DRAWER");
+                    appendChat("[SYSTEM] Role: " + (amDrawer ? "Drawer" : "Guesser") + "\n");
+                }
+                case SECRET -> {
+                    String s = m.rest(1);
+                    wordLabel.setText(s.replaceAll(".", "_ "));
+                    appendChat("[SECRET] Word to draw: " + s + "\n");
+                }
+                // the label itself is updated by the frame timer
+                case DEADLINE, CLOCK -> clock.sync(m, System.nanoTime());
+                // servers from before DEADLINE still tick every second
+                case TIME -> timerLabel.setText("Time: " + m.intField(1) + "s");
+                case CORRECT -> {
+                    appendChat("[ROUND] " + m.str(1) + " guessed correctly! (" + m.str(2) + ")\n");
+                    guessField.setDisable(true);
+                }
+                case DISABLE -> {
+                    if (m.str(1).equals(username)) guessField.setDisable(true);
+                }
+                case CLEAR -> { } // the canvas itself is cleared by RemoteCanvas, in order with the strokes
+                case ROUND_END -> {
+                    clock.stop();
+                    appendChat("[ROUND END] " + line + "\n");
+                }
+                case SCORES -> appendChat("[SCORES]\n" + Message.unescape(m.rest(1).replace(";;", "\n")) + "\n");
+                default -> appendChat("[RAW] " + line + "\n");
+            }
+        } catch (IllegalArgumentException e) {
             appendChat("[RAW] " + line + "\n");
         }
     }
@@ -144,8 +158,7 @@ public class GameController {
         String txt = guessField.getText().trim();
         if (txt.isEmpty()) return;
         try {
-            out.write("GUESS:" + txt + "\n");
-            out.flush();
+            conn.sendLine("GUESS:" + txt);
             guessField.clear();
         } catch (IOException e) {
             e.printStackTrace();
@@ -154,11 +167,12 @@ public class GameController {
 
     @FXML
     public void onClearCanvas() {
+        if (amDrawer && batcher != null) batcher.flush();
         gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
         if (amDrawer) {
             try {
-                out.write("CHAT:[SYSTEM] Drawer cleared the canvas\n");
-                out.flush();
+                conn.sendLine("CLEAR");
+                conn.sendLine("CHAT:[SYSTEM] Drawer cleared the canvas");
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -166,25 +180,7 @@ public class GameController {
     }
 
     private void sendDraw(double x, double y, boolean isDrag) {
-        try {
-            String payload = x + ":" + y + ":" + isDrag + ":" + false + ":#000000";
-            out.write("DRAW:" + payload + "\n");
-            out.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private void drawRemote(double x, double y, boolean drag, boolean isEraser, Color color) {
-        gc.setStroke(isEraser ? Color.WHITE : color);
-        if (!drag) {
-            gc.beginPath();
-            gc.moveTo(x, y);
-            gc.stroke();
-        } else {
-            gc.lineTo(x, y);
-            gc.stroke();
-        }
+        if (batcher != null) batcher.add(x, y, isDrag, 0x000000, false);
     }
 
     private void appendChat(String msg) {
@@ -194,11 +190,7 @@ public class GameController {
     @FXML
     private void onExit() {
         try {
-            if (out != null) {
-                out.write("LEAVE\n");
-                out.flush();
-            }
-            if (socket != null) socket.close();
+            if (conn != null) conn.close();
         } catch (IOException ignored) {}
     }
 }
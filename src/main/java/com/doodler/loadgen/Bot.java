@@ -0,0 +1,179 @@
+package com.doodler.loadgen;
+
+import com.doodler.client.ServerConnection;
+import com.doodler.client.StrokeBatcher;
+import com.doodler.client.StrokeTrace;
+import com.doodler.protocol.Message;
+import com.doodler.protocol.StrokeBatch;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One headless player. It draws by replaying the trace while the server says it is the drawer,
+ * and otherwise guesses (and chats) at the configured pace. Input arrives on the connection's
+ * reader thread; {@link #tick} runs on the generator's scheduler, never concurrently with itself.
+ */
+final class Bot implements ServerConnection.Listener {
+    private static final String[] WRONG = {"sun", "boat", "hat", "fish", "bird", "cake", "key", "moon", "shoe", "star"};
+
+    private final LoadGenerator.Options opt;
+    private final Room room;
+    private final String name;
+    private final LoadStats stats;
+    private final StrokeTrace trace;
+    private final Random rnd;
+    private final StrokeBatcher batcher;
+    // reader thread only
+    private final Message msg = new Message();
+    private ServerConnection conn;
+
+    private volatile boolean drawer, roundActive, closed;
+    // strokes sent before this are the canvas replay, not live latency
+    private volatile long joinedAt;
+
+    // tick thread only
+    private boolean drawing;
+    private int cursor, seq;
+    private long passStart, nextGuessAt, nextChatAt;
+
+    Bot(LoadGenerator.Options opt, Room room, String name, LoadStats stats, StrokeTrace trace, long seed) {
+        this.opt = opt; this.room = room; this.name = name; this.stats = stats; this.trace = trace;
+        this.rnd = new Random(seed);
+        this.batcher = new StrokeBatcher(this::flushed, opt.flushMs * 1_000_000L, StrokeBatcher.MAX_POINTS);
+    }
+
+    void connect(ThreadFactory readers) throws IOException {
+        joinedAt = System.nanoTime();
+        conn = ServerConnection.connect(opt.host, room.code, name);
+        stats.connected.increment();
+        stats.sent.increment();
+        conn.start(this, readers);
+    }
+
+    void tick(long now) {
+        if (closed) return;
+        if (drawer && roundActive) {
+            if (!drawing) {
+                drawing = true;
+                cursor = 0;
+                passStart = now;
+            }
+            draw(now);
+            batcher.pulse(now);
+        } else {
+            if (drawing) {
+                drawing = false;
+                batcher.flush();
+            }
+            if (!drawer && roundActive) guessOrChat(now);
+        }
+    }
+
+    /** Adds every trace point that is due, looping the trace; the clock runs {@code speed} times real time. */
+    private void draw(long now) {
+        long elapsedMs = (long) ((now - passStart) / 1_000_000 * opt.speed);
+        while (cursor < trace.size() && trace.millis(cursor) <= elapsedMs) {
+            if (batcher.pendingPoints() == 0) seq = room.nextSeq();
+            batcher.add(trace.x(cursor), trace.y(cursor), trace.isDrag(cursor), seq, false, now);
+            stats.pointsDrawn.increment();
+            cursor++;
+        }
+        if (cursor == trace.size() && elapsedMs >= trace.durationMillis()) {
+            cursor = 0;
+            passStart = now;
+        }
+    }
+
+    private void flushed(List<StrokeBatch> segments) {
+        // noted before the write so a fast reply can never beat it
+        room.sent(segments.get(0).rgb, System.nanoTime());
+        try {
+            conn.sendStrokes(segments);
+            stats.sent.add(segments.size());
+            stats.strokesSent.add(segments.size());
+            for (StrokeBatch s : segments) stats.pointsSent.add(s.size());
+        } catch (IOException e) {
+            stats.sendErrors.increment();
+        }
+    }
+
+    private void guessOrChat(long now) {
+        if (opt.guessEveryMs > 0 && now >= nextGuessAt) {
+            if (nextGuessAt != 0) {
+                String secret = room.secret;
+                String word = secret != null && rnd.nextDouble() < opt.hitRate ? secret : WRONG[rnd.nextInt(WRONG.length)];
+                send("GUESS:" + word);
+                stats.guesses.increment();
+            }
+            nextGuessAt = now + jitter(opt.guessEveryMs);
+        }
+        if (opt.chatEveryMs > 0 && now >= nextChatAt) {
+            if (nextChatAt != 0) send("CHAT:load test " + rnd.nextInt(1000));
+            nextChatAt = now + jitter(opt.chatEveryMs);
+        }
+    }
+
+    /** {@code ms} +/- 50%, so bots that joined together do not fire in lockstep. */
+    private long jitter(long ms) {
+        return (long) (ms * (0.5 + rnd.nextDouble())) * 1_000_000;
+    }
+
+    private void send(String line) {
+        try {
+            conn.sendLine(line);
+            stats.sent.increment();
+        } catch (IOException e) {
+            stats.sendErrors.increment();
+        }
+    }
+
+    @Override
+    public void onLine(String line) {
+        stats.received.increment();
+        Message m = msg.parse(line);
+        switch (m.op()) {
+            case ROLE -> {
+                drawer = m.fields() > 1 && m.is(1, "DRAWER");
+            }
+            case SECRET -> {
+                room.secret = m.rest(1);
+                stats.rounds.increment();
+            }
+            case ROUND_START -> roundActive = true;
+            // late joiners never saw ROUND_START; the deadline tells them a round is on
+            case DEADLINE, CLOCK -> roundActive = m.fields() > 2 && m.longField(1) > m.longField(2);
+            case ROUND_END -> roundActive = false;
+            case CORRECT -> {
+                if (m.fields() > 1 && name.equals(m.str(1))) stats.correct.increment();
+            }
+            case ERROR -> stats.serverErrors.increment();
+            default -> { }
+        }
+    }
+
+    @Override
+    public void onStroke(StrokeBatch stroke) {
+        long now = System.nanoTime();
+        stats.received.increment();
+        stats.strokesReceived.increment();
+        long at = room.sentAt(stroke.rgb);
+        if (at < 0) stats.unmatched.increment();
+        else if (at >= joinedAt) stats.interval.record((now - at) / 1_000);
+    }
+
+    @Override
+    public void onDisconnect() {
+        if (!closed) stats.disconnects.increment();
+        closed = true;
+    }
+
+    void close() {
+        if (closed || conn == null) return;
+        closed = true;
+        try { conn.close(); } catch (IOException ignored) {}
+    }
+}
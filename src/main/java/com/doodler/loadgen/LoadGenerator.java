@@ -0,0 +1,240 @@
+package com.doodler.loadgen;
+
+import com.doodler.client.StrokeTrace;
+import com.doodler.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+/**
+ * Headless load generator: opens {@code rooms x players} bot connections against a running
+ * ServerMain and plays the game with them, then reports DRAW latency percentiles (drawer's
+ * write to each guesser's read), message rates and errors.
+ *
+ * <pre>
+ * java -cp ... com.doodler.loadgen.LoadGenerator --rooms=1000 --players=4 --duration=120 \
+ *     --trace=drawing.trace --speed=1.0 --guess-every=3000 --hit-rate=0.02
+ * </pre>
+ *
+ * With --idle=true the bots only connect and JOIN, then read what the server sends and
+ * never draw, guess or chat: a soak of idle connections.
+ *
+ * The wire format follows -Ddoodler.protocol like the UI clients (binary unless "text").
+ */
+public final class LoadGenerator {
+
+    static final class Options {
+        String host = "localhost";
+        int rooms = 10;
+        int players = 4;
+        int durationSec = 60;
+        int reportSec = 5;
+        // 0: connect everyone as fast as the parallelism allows
+        int rampSec = 0;
+        int connectParallelism = 64;
+        String trace;
+        double speed = 1.0;
+        long flushMs = 16;
+        long guessEveryMs = 3_000;
+        double hitRate = 0.02;
+        long chatEveryMs = 0;
+        int tickMs = 16;
+        int tickThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        String roomPrefix = "load";
+        String json;
+        // connect and JOIN, then only read: for counting what an idle connection costs the server
+        boolean idle;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (String a : args) {
+                int eq = a.indexOf('=');
+                if (!a.startsWith("--") || eq < 0) throw new IllegalArgumentException("Expected --name=value: " + a);
+                String k = a.substring(2, eq), v = a.substring(eq + 1);
+                switch (k) {
+                    case "host" -> o.host = v;
+                    case "rooms" -> o.rooms = Integer.parseInt(v);
+                    case "players" -> o.players = Integer.parseInt(v);
+                    case "duration" -> o.durationSec = Integer.parseInt(v);
+                    case "report" -> o.reportSec = Integer.parseInt(v);
+                    case "ramp" -> o.rampSec = Integer.parseInt(v);
+                    case "connect-parallelism" -> o.connectParallelism = Integer.parseInt(v);
+                    case "trace" -> o.trace = v;
+                    case "speed" -> o.speed = Double.parseDouble(v);
+                    case "flush-ms" -> o.flushMs = Long.parseLong(v);
+                    case "guess-every" -> o.guessEveryMs = Long.parseLong(v);
+                    case "hit-rate" -> o.hitRate = Double.parseDouble(v);
+                    case "chat-every" -> o.chatEveryMs = Long.parseLong(v);
+                    case "tick-ms" -> o.tickMs = Integer.parseInt(v);
+                    case "tick-threads" -> o.tickThreads = Integer.parseInt(v);
+                    case "room-prefix" -> o.roomPrefix = v;
+                    case "json" -> o.json = v;
+                    case "idle" -> o.idle = Boolean.parseBoolean(v);
+                    default -> throw new IllegalArgumentException("Unknown option --" + k);
+                }
+            }
+            if (o.rooms < 1 || o.players < 2) throw new IllegalArgumentException("Need at least 1 room of 2 players");
+            return o;
+        }
+    }
+
+    private final Options opt;
+    private final LoadStats stats = new LoadStats();
+    private final List<Bot> bots = new ArrayList<>();
+
+    LoadGenerator(Options opt) { this.opt = opt; }
+
+    public static void main(String[] args) throws Exception {
+        Options opt;
+        try {
+            opt = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Options: --host --rooms --players --duration --report --ramp --connect-parallelism"
+                    + " --trace --speed --flush-ms --guess-every --hit-rate --chat-every --tick-ms --tick-threads"
+                    + " --room-prefix --json --idle");
+            System.exit(2);
+            return;
+        }
+        new LoadGenerator(opt).run();
+    }
+
+    void run() throws IOException, InterruptedException {
+        StrokeTrace trace = opt.trace != null ? StrokeTrace.load(Path.of(opt.trace)) : StrokeTrace.synthetic(42, 40);
+        System.out.printf("Load: %d rooms x %d players against %s, trace %s (%d points), speed %.2f%s%n",
+                opt.rooms, opt.players, opt.host, opt.trace != null ? opt.trace : "synthetic", trace.size(), opt.speed,
+                opt.idle ? ", idle" : "");
+
+        for (int r = 0; r < opt.rooms; r++) {
+            Room room = new Room(opt.roomPrefix + "-" + r);
+            for (int p = 0; p < opt.players; p++) {
+                bots.add(new Bot(opt, room, "bot" + r + "_" + p, stats, trace, (long) r * 1_000 + p));
+            }
+        }
+
+        ScheduledThreadPoolExecutor ticks = new ScheduledThreadPoolExecutor(opt.tickThreads, r -> {
+            Thread t = new Thread(r, "load-tick");
+            t.setDaemon(true);
+            return t;
+        });
+        ThreadFactory readers = Thread.ofVirtual().name("load-reader-", 0).factory();
+        long start = System.nanoTime();
+        connectAll(ticks, readers, start);
+
+        long interval = TimeUnit.SECONDS.toNanos(Math.max(1, opt.reportSec));
+        long end = start + TimeUnit.SECONDS.toNanos(opt.durationSec);
+        Snapshot last = new Snapshot(stats, start);
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.max(1, Math.min(interval, end - System.nanoTime()) / 1_000_000));
+            Snapshot now = new Snapshot(stats, System.nanoTime());
+            LatencyHistogram window = new LatencyHistogram();
+            stats.interval.drainTo(window);
+            System.out.println(line(now, last, start, window));
+            window.drainTo(stats.total);
+            last = now;
+        }
+
+        ticks.shutdownNow();
+        for (Bot b : bots) b.close();
+        stats.interval.drainTo(stats.total);
+        Snapshot fin = new Snapshot(stats, System.nanoTime());
+        System.out.println("---");
+        System.out.println(line(fin, new Snapshot(start), start, stats.total));
+        System.out.println("draw latency " + stats.total.summary(1_000.0, "ms"));
+        long drawn = stats.pointsDrawn.sum(), kept = stats.pointsSent.sum();
+        if (drawn > 0) {
+            System.out.printf("points: drawn=%d sent=%d (%.1f%% removed by stroke thinning)%n", drawn, kept, 100.0 * (drawn - kept) / drawn);
+        }
+        System.out.println("errors: connect=" + stats.connectErrors.sum() + " send=" + stats.sendErrors.sum()
+                + " disconnect=" + stats.disconnects.sum() + " server=" + stats.serverErrors.sum()
+                + " unmatchedStrokes=" + stats.unmatched.sum());
+        if (opt.json != null) Files.writeString(Path.of(opt.json), json(fin, start));
+    }
+
+    /**
+     * Connects every bot, optionally spread over the ramp; each bot's tick starts once it is in.
+     * Players of a room may arrive at the same instant: the server seats them one at a time on
+     * the room's loop, so the first in becomes the drawer.
+     */
+    private void connectAll(ScheduledExecutorService ticks, ThreadFactory readers, long start) throws InterruptedException {
+        Semaphore slots = new Semaphore(opt.connectParallelism);
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long ramp = TimeUnit.SECONDS.toNanos(opt.rampSec);
+        try (ExecutorService connectors = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < bots.size(); i++) {
+                Bot b = bots.get(i);
+                if (ramp > 0) {
+                    long wait = start + ramp * i / bots.size() - System.nanoTime();
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                slots.acquire();
+                long phase = rnd.nextLong(opt.tickMs);
+                connectors.execute(() -> {
+                    try {
+                        b.connect(readers);
+                        if (!opt.idle) ticks.scheduleAtFixedRate(() -> b.tick(System.nanoTime()), phase, opt.tickMs, TimeUnit.MILLISECONDS);
+                    } catch (IOException e) {
+                        stats.connectErrors.increment();
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        }
+        System.out.printf("Connected %d/%d bots in %.1fs%n", stats.connected.sum(), bots.size(),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    private static String line(Snapshot now, Snapshot prev, long start, LatencyHistogram h) {
+        double secs = Math.max(1e-9, (now.at - prev.at) / 1e9);
+        return String.format(Locale.ROOT,
+                "t=%5.1fs conns=%d sent/s=%.0f recv/s=%.0f strokes sent/s=%.0f recv/s=%.0f guesses/s=%.1f rounds=%d errors=%d"
+                        + " | draw ms p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f n=%d",
+                (now.at - start) / 1e9, now.connected - now.disconnects,
+                (now.sent - prev.sent) / secs, (now.received - prev.received) / secs,
+                (now.strokesSent - prev.strokesSent) / secs, (now.strokesReceived - prev.strokesReceived) / secs,
+                (now.guesses - prev.guesses) / secs, now.rounds, now.errors,
+                h.percentile(50) / 1e3, h.percentile(90) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3,
+                h.max() / 1e3, h.count());
+    }
+
+    private String json(Snapshot fin, long start) {
+        LatencyHistogram h = stats.total;
+        double secs = (fin.at - start) / 1e9;
+        return String.format(Locale.ROOT, """
+                {"rooms":%d,"players":%d,"seconds":%.1f,"connected":%d,
+                 "sentPerSec":%.1f,"receivedPerSec":%.1f,"strokesSent":%d,"strokesReceived":%d,
+                 "guesses":%d,"correct":%d,"rounds":%d,
+                 "drawLatencyMs":{"p50":%.3f,"p90":%.3f,"p99":%.3f,"p999":%.3f,"max":%.3f,"count":%d},
+                 "errors":{"connect":%d,"send":%d,"disconnect":%d,"server":%d,"unmatched":%d}}
+                """,
+                opt.rooms, opt.players, secs, fin.connected, fin.sent / secs, fin.received / secs,
+                fin.strokesSent, fin.strokesReceived, fin.guesses, stats.correct.sum(), fin.rounds,
+                h.percentile(50) / 1e3, h.percentile(90) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3,
+                h.max() / 1e3, h.count(), stats.connectErrors.sum(), stats.sendErrors.sum(), stats.disconnects.sum(),
+                stats.serverErrors.sum(), stats.unmatched.sum());
+    }
+
+    /** Counter values at one instant, for per-interval rates. */
+    private static final class Snapshot {
+        final long at, sent, received, strokesSent, strokesReceived, guesses, rounds, connected, disconnects, errors;
+
+        Snapshot(long at) {
+            this.at = at;
+            sent = received = strokesSent = strokesReceived = guesses = rounds = connected = disconnects = errors = 0;
+        }
+
+        Snapshot(LoadStats s, long at) {
+            this.at = at;
+            sent = s.sent.sum(); received = s.received.sum();
+            strokesSent = s.strokesSent.sum(); strokesReceived = s.strokesReceived.sum();
+            guesses = s.guesses.sum(); rounds = s.rounds.sum();
+            connected = s.connected.sum(); disconnects = s.disconnects.sum(); errors = s.errors();
+        }
+    }
+}
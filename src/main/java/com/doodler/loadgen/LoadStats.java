@@ -0,0 +1,35 @@
+package com.doodler.loadgen;
+
+import com.doodler.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counters shared by every bot; read by the reporter. */
+final class LoadStats {
+    // DRAW latency in microseconds, drawer's write to guesser's read; interval drains into total
+    final LatencyHistogram interval = new LatencyHistogram();
+    final LatencyHistogram total = new LatencyHistogram();
+
+    final LongAdder sent = new LongAdder();
+    final LongAdder received = new LongAdder();
+    final LongAdder strokesSent = new LongAdder();
+    final LongAdder strokesReceived = new LongAdder();
+    final LongAdder guesses = new LongAdder();
+    final LongAdder correct = new LongAdder();
+    final LongAdder rounds = new LongAdder();
+    // trace samples given to the drawers' batchers, and the points left after thinning
+    final LongAdder pointsDrawn = new LongAdder();
+    final LongAdder pointsSent = new LongAdder();
+
+    final LongAdder connected = new LongAdder();
+    final LongAdder connectErrors = new LongAdder();
+    final LongAdder sendErrors = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final LongAdder serverErrors = new LongAdder();
+    // strokes whose send time was no longer in the room's ring (or was never ours)
+    final LongAdder unmatched = new LongAdder();
+
+    long errors() {
+        return connectErrors.sum() + sendErrors.sum() + disconnects.sum() + serverErrors.sum();
+    }
+}
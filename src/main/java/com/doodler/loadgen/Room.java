@@ -0,0 +1,38 @@
+package com.doodler.loadgen;
+
+/**
+ * What the bots of one room share. The drawing bot tags every flush with a sequence number,
+ * sent as the stroke color, and notes when it wrote it; guessers look the color up on receipt.
+ * Everything runs in one JVM, so both ends read the same {@link System#nanoTime} clock.
+ */
+final class Room {
+    private static final int RING = 4096;
+    // 24 bits: what survives the trip as an RGB color in both wire formats
+    private static final int SEQ_MASK = 0xFFFFFF;
+
+    final String code;
+    // learned by whichever bot is drawing; guessers use it for their planned hits
+    volatile String secret;
+    private final long[] sentAt = new long[RING];
+    private final int[] sentSeq = new int[RING];
+    private int nextSeq;
+
+    Room(String code) { this.code = code; }
+
+    /** Next tag for the drawer's pending points. */
+    synchronized int nextSeq() {
+        nextSeq = (nextSeq + 1) & SEQ_MASK;
+        return nextSeq;
+    }
+
+    synchronized void sent(int seq, long nanos) {
+        int i = seq & (RING - 1);
+        sentSeq[i] = seq; sentAt[i] = nanos;
+    }
+
+    /** When {@code seq} was written, or -1 if it was never ours or has been overwritten. */
+    synchronized long sentAt(int seq) {
+        int i = seq & (RING - 1);
+        return sentSeq[i] == seq && sentAt[i] != 0 ? sentAt[i] : -1;
+    }
+}
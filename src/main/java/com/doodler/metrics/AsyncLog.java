@@ -0,0 +1,60 @@
+package com.doodler.metrics;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Console logging off the calling thread: lines go into a bounded queue that one daemon thread
+ * prints, and are dropped (and counted) when the queue is full rather than blocking a game
+ * thread on stdout. For per-message logging, guard the call with {@link #sample(int)} so the
+ * line is only built for a fraction of messages.
+ */
+public final class AsyncLog {
+    private static final int CAPACITY = Integer.getInteger("doodler.log.queue", 8_192);
+
+    private record Entry(PrintStream to, String line) {}
+
+    private static final AsyncLog INSTANCE = new AsyncLog(CAPACITY);
+
+    private final BlockingQueue<Entry> queue;
+    private final LongAdder dropped = new LongAdder();
+
+    private AsyncLog(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+        Thread t = new Thread(this::run, "async-log");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public static AsyncLog get() { return INSTANCE; }
+
+    /** True for about one call in {@code oneIn}; never for 0 or less, always for 1. */
+    public static boolean sample(int oneIn) {
+        return oneIn > 0 && (oneIn == 1 || ThreadLocalRandom.current().nextInt(oneIn) == 0);
+    }
+
+    public void info(String line) { offer(new Entry(System.out, line)); }
+
+    public void error(String line) { offer(new Entry(System.err, line)); }
+
+    private void offer(Entry e) {
+        if (!queue.offer(e)) dropped.increment();
+    }
+
+    public long dropped() { return dropped.sum(); }
+
+    public int queued() { return queue.size(); }
+
+    private void run() {
+        while (true) {
+            try {
+                Entry e = queue.take();
+                e.to.println(e.line);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
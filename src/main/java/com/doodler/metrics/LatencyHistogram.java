@@ -0,0 +1,81 @@
+package com.doodler.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of non-negative values (e.g. microseconds). Values below 64 are
+ * exact; above that each power of two is split into 32 buckets, so any reported percentile is
+ * within ~3% of the true value. Fixed size (~15 KB) whatever the range recorded.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 6, SUB = 1 << SUB_BITS, HALF = SUB / 2;
+    private static final int BUCKETS = SUB + (64 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private final LongAdder sum = new LongAdder();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(index(value));
+        max.accumulate(value);
+        sum.add(value);
+    }
+
+    static int index(long v) {
+        int bits = 64 - Long.numberOfLeadingZeros(v);
+        if (bits <= SUB_BITS) return (int) v;
+        int shift = bits - SUB_BITS;
+        return SUB + (shift - 1) * HALF + (int) (v >>> shift) - HALF;
+    }
+
+    /** Midpoint of a bucket's range. */
+    static long valueAt(int index) {
+        if (index < SUB) return index;
+        int k = index - SUB, shift = k / HALF + 1;
+        long low = (long) (k % HALF + HALF) << shift;
+        return low + (1L << shift) / 2;
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+        return n;
+    }
+
+    public long max() { return max.get(); }
+
+    /** Total of every recorded value, e.g. for a Prometheus summary's _sum. */
+    public long sum() { return sum.sum(); }
+
+    /** The value at percentile {@code p} (0-100); 0 if nothing was recorded. */
+    public long percentile(double p) {
+        long total = count();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * total)), seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(valueAt(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** Moves everything recorded here into {@code into} and starts this one over (interval reports). */
+    public void drainTo(LatencyHistogram into) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = counts.getAndSet(i, 0);
+            if (n != 0) into.counts.addAndGet(i, n);
+        }
+        into.max.accumulate(max.getThenReset());
+        into.sum.add(sum.sumThenReset());
+    }
+
+    /** p50/p90/p99/p99.9/max, scaled by {@code divisor} (e.g. 1000 for micros shown as ms). */
+    public String summary(double divisor, String unit) {
+        return String.format("p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f %s (n=%d)",
+                percentile(50) / divisor, percentile(90) / divisor, percentile(99) / divisor,
+                percentile(99.9) / divisor, max() / divisor, unit, count());
+    }
+}
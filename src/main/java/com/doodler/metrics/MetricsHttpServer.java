@@ -0,0 +1,75 @@
+package com.doodler.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/** Serves a {@link MetricsRegistry} as Prometheus text on {@code /metrics}, one request at a time. */
+public final class MetricsHttpServer implements AutoCloseable {
+    private final HttpServer http;
+
+    private MetricsHttpServer(HttpServer http) { this.http = http; }
+
+    public static MetricsHttpServer start(MetricsRegistry registry, InetSocketAddress address) throws IOException {
+        HttpServer http = HttpServer.create(address, 0);
+        http.createContext("/metrics", ex -> {
+            try (ex) {
+                if (!"GET".equals(ex.getRequestMethod())) {
+                    ex.sendResponseHeaders(405, -1);
+                    return;
+                }
+                StringBuilder sb = new StringBuilder(8192);
+                registry.writePrometheus(sb);
+                byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+                ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                ex.sendResponseHeaders(200, body.length);
+                try (OutputStream out = ex.getResponseBody()) { out.write(body); }
+            }
+        });
+        http.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        http.start();
+        return new MetricsHttpServer(http);
+    }
+
+    /** Serves {@code body} as plain text on {@code path}, e.g. a status page next to /metrics. */
+    public void addText(String path, Supplier<String> body) {
+        http.createContext(path, ex -> {
+            try (ex) {
+                byte[] b = body.get().getBytes(StandardCharsets.UTF_8);
+                ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                ex.sendResponseHeaders(200, b.length);
+                try (OutputStream out = ex.getResponseBody()) { out.write(b); }
+            }
+        });
+    }
+
+    /** Runs {@code action} on POST to {@code path} and answers with its text; anything else is 405. */
+    public void addAction(String path, Supplier<String> action) {
+        http.createContext(path, ex -> {
+            try (ex) {
+                if (!"POST".equals(ex.getRequestMethod())) {
+                    ex.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] b = action.get().getBytes(StandardCharsets.UTF_8);
+                ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                ex.sendResponseHeaders(200, b.length);
+                try (OutputStream out = ex.getResponseBody()) { out.write(b); }
+            }
+        });
+    }
+
+    public InetSocketAddress address() { return http.getAddress(); }
+
+    @Override
+    public void close() { http.stop(0); }
+}
@@ -0,0 +1,63 @@
+package com.doodler.metrics;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Publishes a {@link MetricsRegistry} as one read-only MBean whose attributes are the registry's
+ * flattened series. The attribute list is rebuilt on every {@code getMBeanInfo}, so series
+ * registered later (new sessions, new DB calls) show up without re-registering.
+ */
+public final class MetricsJmx implements DynamicMBean {
+    private final MetricsRegistry registry;
+
+    private MetricsJmx(MetricsRegistry registry) { this.registry = registry; }
+
+    /** Registers the registry under {@code name}, e.g. "com.doodler:type=Metrics". */
+    public static void register(MetricsRegistry registry, String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsJmx(registry), new ObjectName(name));
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number v = registry.snapshot().get(attribute);
+        if (v == null) throw new AttributeNotFoundException(attribute);
+        return v;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> snap = registry.snapshot();
+        AttributeList list = new AttributeList();
+        for (String a : attributes) {
+            Number v = snap.get(a);
+            if (v != null) list.add(new Attribute(a, v));
+        }
+        return list;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Number> snap = registry.snapshot();
+        MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[snap.size()];
+        int i = 0;
+        for (Map.Entry<String, Number> e : snap.entrySet()) {
+            attrs[i++] = new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(), e.getKey(), true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "Doodler server metrics", attrs, null, null, null);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) { return new AttributeList(); }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+        throw new MBeanException(new UnsupportedOperationException(actionName));
+    }
+}
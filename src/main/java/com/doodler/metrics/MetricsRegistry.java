@@ -0,0 +1,149 @@
+package com.doodler.metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Named counters, gauges and latency histograms, each optionally labelled ({@code "op", "DRAW"}).
+ * Recording is a {@link LongAdder} or {@link LatencyHistogram} update with no registry lookup:
+ * callers look an instrument up once and keep it. Gauges are only evaluated when scraped.
+ * Histograms hold microseconds and are exported in seconds.
+ */
+public final class MetricsRegistry {
+    private enum Type { COUNTER, GAUGE, SUMMARY }
+
+    private record Series(String labels, Object instrument) {}
+
+    private static final class Family {
+        final String name, help;
+        final Type type;
+        final Map<String, Series> series = new ConcurrentHashMap<>();
+
+        Family(String name, String help, Type type) { this.name = name; this.help = help; this.type = type; }
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // registration order is exposition order
+    private final Map<String, Family> families = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) register(name, help, Type.COUNTER, labels, LongAdder::new);
+    }
+
+    /**
+     * A count the caller already keeps (a {@link LongAdder} of its own, say), read on every scrape
+     * and exported as a counter, so it must never go down. Registering the same series again
+     * replaces it.
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        String l = labelString(labels);
+        family(name, help, Type.COUNTER).series.put(l, new Series(l, value));
+    }
+
+    /** A value computed on every scrape; registering the same series again replaces it. */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        String l = labelString(labels);
+        family(name, help, Type.GAUGE).series.put(l, new Series(l, value));
+    }
+
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) register(name, help, Type.SUMMARY, labels, LatencyHistogram::new);
+    }
+
+    private Object register(String name, String help, Type type, String[] labels, Supplier<Object> make) {
+        String l = labelString(labels);
+        return family(name, help, type).series.computeIfAbsent(l, k -> new Series(k, make.get())).instrument();
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family f = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (f.type != type) throw new IllegalArgumentException(name + " is already a " + f.type);
+        return f;
+    }
+
+    private static String labelString(String[] labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels come in name/value pairs");
+        if (labels.length == 0) return "";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"");
+            String v = labels[i + 1];
+            for (int j = 0; j < v.length(); j++) {
+                char c = v.charAt(j);
+                if (c == '\\' || c == '"') sb.append('\\').append(c);
+                else if (c == '\n') sb.append("\\n");
+                else sb.append(c);
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    private List<Family> families() {
+        synchronized (families) { return new ArrayList<>(families.values()); }
+    }
+
+    /** Prometheus text exposition format, version 0.0.4. */
+    public void writePrometheus(StringBuilder out) {
+        for (Family f : families()) {
+            out.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            out.append("# TYPE ").append(f.name).append(' ').append(f.type.name().toLowerCase(Locale.ROOT)).append('\n');
+            for (Series s : f.series.values()) {
+                switch (f.type) {
+                    case COUNTER, GAUGE -> sample(out, f.name, s.labels, null, value(s.instrument));
+                    case SUMMARY -> {
+                        LatencyHistogram h = (LatencyHistogram) s.instrument;
+                        for (double q : QUANTILES) sample(out, f.name, s.labels, "quantile=\"" + q + "\"", h.percentile(q * 100) / 1e6);
+                        sample(out, f.name + "_sum", s.labels, null, h.sum() / 1e6);
+                        sample(out, f.name + "_count", s.labels, null, h.count());
+                    }
+                }
+            }
+        }
+    }
+
+    /** A counter's or gauge's current value: its own adder, or the supplier it was registered with. */
+    private static long value(Object instrument) {
+        return instrument instanceof LongAdder a ? a.sum() : ((LongSupplier) instrument).getAsLong();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extra, Number value) {
+        out.append(name);
+        if (!labels.isEmpty() || extra != null) {
+            out.append('{').append(labels);
+            if (extra != null) out.append(labels.isEmpty() ? "" : ",").append(extra);
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Every series as one flat value, for JMX: counters and gauges as is, histograms as
+     * {@code .p50} ... {@code .max} (seconds) and {@code .count}.
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> m = new LinkedHashMap<>();
+        for (Family f : families()) {
+            for (Series s : f.series.values()) {
+                String key = s.labels.isEmpty() ? f.name : f.name + "{" + s.labels.replace("\"", "") + "}";
+                switch (f.type) {
+                    case COUNTER, GAUGE -> m.put(key, value(s.instrument));
+                    case SUMMARY -> {
+                        LatencyHistogram h = (LatencyHistogram) s.instrument;
+                        m.put(key + ".p50", h.percentile(50) / 1e6);
+                        m.put(key + ".p99", h.percentile(99) / 1e6);
+                        m.put(key + ".p99.9", h.percentile(99.9) / 1e6);
+                        m.put(key + ".max", h.max() / 1e6);
+                        m.put(key + ".count", h.count());
+                    }
+                }
+            }
+        }
+        return m;
+    }
+}
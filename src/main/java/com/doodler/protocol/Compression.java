@@ -0,0 +1,51 @@
+package com.doodler.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional stream compression, negotiated alongside binary frames:
+ * <pre>
+ * C: CAPS:bin1,deflate
+ * C: JOIN:code:user
+ * S: PROTO:bin1,deflate
+ * </pre>
+ * Everything after the PROTO line (server to client) and after the JOIN line (client to server)
+ * is then one raw deflate stream per direction, primed with {@link #DICTIONARY} and sync-flushed
+ * whenever the writer has sent all the frames it had, so the reader never waits for more input
+ * to finish a frame. A server that does not list deflate in PROTO leaves the stream as it was.
+ */
+public final class Compression {
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * Preset dictionary: text that frames are likely to repeat before the stream has any history
+     * of its own. Deflate finds matches cheapest near the end, so the most frequent go last.
+     */
+    static final byte[] DICTIONARY = String.join("",
+            "PROTO:bin1,deflate", "RESUMED:delta", "RESUMED:full", "TOKEN:", "ERROR:",
+            "INFO:Welcome ", "INFO:You are the drawer. Secret will be sent to you.", "INFO:Wait for drawer to draw.",
+            " joined the game.", " left.", "INFO:Drawer left. Ending round.", "ROUND_START", "ROUND_END:TimeUp:",
+            "ROUND_END:Finished", "SECRET:", "ROLE:GUESser",
+            "ROLE:DRAWER", "PLAYERS:", "SCORES:", ";;", "DISABLE:", "CORRECT:", "DEADLINE:", "CLOCK:",
+            "GUESS:", "CLEAR", "CHAT:[SYSTEM] ", "CHAT:", "REPLAY:", "STROKE:", "DRAW:", ":true:false:#000000",
+            ":false:false:#000000", ":true:false:#"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private Compression() {}
+
+    /** A compressor for one direction of one connection; the caller must {@link Deflater#end} it. */
+    public static Deflater deflater(int level) {
+        Deflater d = new Deflater(level, true);
+        d.setDictionary(DICTIONARY);
+        return d;
+    }
+
+    /** The matching decompressor; the caller must {@link Inflater#end} it. */
+    public static Inflater inflater() {
+        Inflater i = new Inflater(true);
+        i.setDictionary(DICTIONARY);
+        return i;
+    }
+}
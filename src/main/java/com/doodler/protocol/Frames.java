@@ -0,0 +1,202 @@
+package com.doodler.protocol;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire framing. Every connection starts in line mode:
+ * <pre>
+ * C: CAPS:bin1          (optional, before JOIN)
+ * C: JOIN:code:user
+ * S: PROTO:bin1         (only if the server accepts; first thing it sends)
+ * </pre>
+ * After PROTO both directions switch to length-prefixed frames
+ * {@code varint length | type | body}, where length counts the type byte. TEXT frames carry one
+ * protocol line (UTF-8, no newline); STROKE frames carry a {@link StrokeCodec} body; REPLAY
+ * frames carry {@code varint count} then that many stroke bodies (canvas sync on join). A client
+ * that sends no CAPS line, or gets any other first line back, stays on the text protocol.
+ */
+public final class Frames {
+    public static final String BINARY_V1 = "bin1";
+    public static final String CAPS_PREFIX = "CAPS:";
+    public static final String PROTO_PREFIX = "PROTO:";
+    public static final int MAX_FRAME = 64 * 1024;
+
+    public static final byte TEXT = 0;
+    public static final byte STROKE = 1;
+    public static final byte REPLAY = 2;
+
+    private Frames() {}
+
+    public static boolean hasCap(String caps, String cap) {
+        if (caps == null) return false;
+        for (String c : caps.split(",")) if (c.trim().equals(cap)) return true;
+        return false;
+    }
+
+    public static ByteBuffer text(String line) {
+        ByteBuffer b = ByteBuffer.allocate(textSize(line));
+        writeText(line, b);
+        return b.flip();
+    }
+
+    public static ByteBuffer stroke(StrokeBatch s) {
+        ByteBuffer b = ByteBuffer.allocate(strokeSize(s));
+        writeStroke(s, b);
+        return b.flip();
+    }
+
+    /** Exact encoded size of a TEXT frame, length prefix included. */
+    public static int textSize(CharSequence line) {
+        int body = Utf8.length(line) + 1;
+        return Varint.size(body) + body;
+    }
+
+    public static void writeText(CharSequence line, ByteBuffer out) {
+        Varint.write(out, Utf8.length(line) + 1);
+        out.put(TEXT);
+        Utf8.encode(line, out);
+    }
+
+    /** Exact encoded size of a STROKE frame, length prefix included. */
+    public static int strokeSize(StrokeBatch s) {
+        int body = StrokeCodec.encodedSize(s) + 1;
+        return Varint.size(body) + body;
+    }
+
+    public static void writeStroke(StrokeBatch s, ByteBuffer out) {
+        Varint.write(out, StrokeCodec.encodedSize(s) + 1);
+        out.put(STROKE);
+        StrokeCodec.encode(s, out);
+    }
+
+    /** Exact encoded size of a REPLAY frame, length prefix included. */
+    public static int replaySize(List<StrokeBatch> strokes) {
+        int body = 1 + Varint.size(strokes.size());
+        for (StrokeBatch s : strokes) body += StrokeCodec.encodedSize(s);
+        return Varint.size(body) + body;
+    }
+
+    public static void writeReplay(List<StrokeBatch> strokes, ByteBuffer out) {
+        int body = 1 + Varint.size(strokes.size());
+        for (StrokeBatch s : strokes) body += StrokeCodec.encodedSize(s);
+        Varint.write(out, body);
+        out.put(REPLAY);
+        Varint.write(out, strokes.size());
+        for (StrokeBatch s : strokes) StrokeCodec.encode(s, out);
+    }
+
+    /** Receives decoded frames. */
+    public interface Handler {
+        void onText(String line);
+
+        void onStroke(StrokeBatch stroke);
+
+        /** A canvas replay, oldest stroke first. */
+        default void onReplay(List<StrokeBatch> strokes) {
+            for (StrokeBatch s : strokes) onStroke(s);
+        }
+    }
+
+    /** Reads one frame from a blocking stream; returns false at end of stream. */
+    public static boolean read(InputStream in, Handler h) throws IOException {
+        int len = 0;
+        for (int shift = 0; ; shift += 7) {
+            int x = in.read();
+            if (x < 0) {
+                if (shift == 0) return false;
+                throw new EOFException();
+            }
+            if (shift == 28 && (x & 0xF0) != 0) throw new IOException("Bad frame length");
+            len |= (x & 0x7F) << shift;
+            if ((x & 0x80) == 0) break;
+        }
+        if (len < 1 || len > MAX_FRAME) throw new IOException("Bad frame length " + len);
+        byte[] buf = in.readNBytes(len);
+        if (buf.length < len) throw new EOFException();
+        dispatch(ByteBuffer.wrap(buf), h);
+        return true;
+    }
+
+    static void dispatch(ByteBuffer frame, Handler h) throws IOException {
+        byte type = frame.get();
+        try {
+            if (type == TEXT) {
+                h.onText(new String(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(), StandardCharsets.UTF_8));
+            } else if (type == STROKE) {
+                h.onStroke(StrokeCodec.decode(frame));
+            } else if (type == REPLAY) {
+                int n = Varint.read(frame);
+                if (n < 0 || n > frame.remaining()) throw new IllegalArgumentException("Bad stroke count " + n);
+                List<StrokeBatch> strokes = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) strokes.add(StrokeCodec.decode(frame));
+                h.onReplay(strokes);
+            }
+            // unknown frame types are skipped so newer peers can add some
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed frame type " + type, e);
+        }
+    }
+
+    /**
+     * Reads a '\n'-terminated UTF-8 line byte by byte, so nothing past the line is consumed
+     * from {@code in} (the stream may switch to frames right after). Returns null at EOF.
+     */
+    public static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            if (line.size() == MAX_FRAME) throw new IOException("Line too long");
+            line.write(b);
+        }
+        byte[] bytes = line.toByteArray();
+        int len = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Incremental frame decoder for non-blocking reads. Partial frames are kept between calls.
+     */
+    public static final class Decoder {
+        private byte[] acc = new byte[0];
+        private int len;
+
+        public void feed(ByteBuffer in, Handler h) throws IOException {
+            while (in.hasRemaining()) {
+                if (len == acc.length) acc = java.util.Arrays.copyOf(acc, Math.max(256, len * 2));
+                int n = Math.min(in.remaining(), acc.length - len);
+                in.get(acc, len, n);
+                len += n;
+                int pos = 0;
+                while (true) {
+                    int frameLen = 0, shift = 0, p = pos;
+                    boolean complete = false;
+                    while (p < len) {
+                        int x = acc[p++];
+                        frameLen |= (x & 0x7F) << shift;
+                        if (x >= 0) { complete = true; break; }
+                        if ((shift += 7) > 28) throw new IOException("Bad frame length");
+                    }
+                    if (!complete) break;
+                    if (frameLen < 1 || frameLen > MAX_FRAME) throw new IOException("Bad frame length " + frameLen);
+                    if (len - p < frameLen) {
+                        if (acc.length < p - pos + frameLen) acc = java.util.Arrays.copyOf(acc, p - pos + frameLen + len);
+                        break;
+                    }
+                    dispatch(ByteBuffer.wrap(acc, p, frameLen).slice(), h);
+                    pos = p + frameLen;
+                }
+                if (pos > 0) {
+                    System.arraycopy(acc, pos, acc, 0, len - pos);
+                    len -= pos;
+                }
+            }
+            // idle connections hold no buffer
+            if (len == 0 && acc.length > 256) acc = new byte[0];
+        }
+    }
+}
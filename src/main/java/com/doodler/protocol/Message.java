@@ -0,0 +1,205 @@
+package com.doodler.protocol;
+
+import java.util.Arrays;
+
+/**
+ * A text protocol line split into ':'-separated fields in one pass. Field 0 is the opcode;
+ * fields are kept as offsets into the line, so numbers, booleans and colors are parsed in place
+ * and only fields the caller asks for as strings are copied. Free text (chat, guesses) is always
+ * the last field, read with {@link #rest}, so it may contain ':'. Names that share a line with
+ * other fields are {@link #escape}d on the wire ({@code %3A} for ':', likewise '%' ',' ';' '|').
+ * <p>
+ * Reusable: {@link #parse} overwrites the previous line. Not thread-safe; keep one per reader.
+ */
+public final class Message {
+    private CharSequence line = "";
+    private Op op = Op.UNKNOWN;
+    private int[] start = new int[8], end = new int[8];
+    private int count;
+
+    public Message parse(CharSequence line) {
+        this.line = line;
+        count = 0;
+        int n = line.length(), from = 0;
+        for (int i = 0; i < n; i++) {
+            if (line.charAt(i) == ':') {
+                add(from, i);
+                from = i + 1;
+            }
+        }
+        add(from, n);
+        op = Op.lookup(line, start[0], end[0]);
+        return this;
+    }
+
+    private void add(int from, int to) {
+        if (count == start.length) {
+            start = Arrays.copyOf(start, count * 2);
+            end = Arrays.copyOf(end, count * 2);
+        }
+        start[count] = from;
+        end[count++] = to;
+    }
+
+    public Op op() { return op; }
+
+    public CharSequence line() { return line; }
+
+    /** Number of fields, opcode included. */
+    public int fields() { return count; }
+
+    public int start(int field) { return start[check(field)]; }
+
+    public int end(int field) { return end[check(field)]; }
+
+    private int check(int field) {
+        if (field >= count) throw new IllegalArgumentException("Missing field " + field + " in " + op);
+        return field;
+    }
+
+    /** The unescaped field, e.g. a username. */
+    public String str(int field) { return unescape(line, start(field), end(field)); }
+
+    /** Everything from {@code field} to the end of the line, ':' included; "" if absent. */
+    public String rest(int field) {
+        return field < count ? line.subSequence(start[field], line.length()).toString() : "";
+    }
+
+    public boolean is(int field, String s) {
+        int from = start(field);
+        if (end[field] - from != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) if (line.charAt(from + i) != s.charAt(i)) return false;
+        return true;
+    }
+
+    public int intField(int field) { return parseInt(line, start(field), end(field)); }
+
+    public long longField(int field) { return parseLong(line, start(field), end(field)); }
+
+    public double doubleField(int field) { return parseDouble(line, start(field), end(field)); }
+
+    /** Like {@link Boolean#parseBoolean}: "true" in any case, anything else is false. */
+    public boolean boolField(int field) {
+        int from = start(field);
+        if (end[field] - from != 4) return false;
+        return (line.charAt(from) | 0x20) == 't' && (line.charAt(from + 1) | 0x20) == 'r'
+                && (line.charAt(from + 2) | 0x20) == 'u' && (line.charAt(from + 3) | 0x20) == 'e';
+    }
+
+    public static int parseInt(CharSequence s, int from, int to) {
+        if (from >= to) throw new NumberFormatException("Empty number");
+        boolean neg = s.charAt(from) == '-';
+        int i = neg || s.charAt(from) == '+' ? from + 1 : from;
+        if (i == to) throw new NumberFormatException("Bad number");
+        long v = 0;
+        for (; i < to; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("Bad number");
+            v = v * 10 + d;
+            if (v > Integer.MAX_VALUE + 1L) throw new NumberFormatException("Number too large");
+        }
+        v = neg ? -v : v;
+        if (v > Integer.MAX_VALUE) throw new NumberFormatException("Number too large");
+        return (int) v;
+    }
+
+    public static long parseLong(CharSequence s, int from, int to) {
+        if (from >= to) throw new NumberFormatException("Empty number");
+        boolean neg = s.charAt(from) == '-';
+        int i = neg || s.charAt(from) == '+' ? from + 1 : from;
+        if (i == to) throw new NumberFormatException("Bad number");
+        long v = 0;
+        for (; i < to; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("Bad number");
+            // accumulated negative so Long.MIN_VALUE fits
+            if (v < (Long.MIN_VALUE + d) / 10) throw new NumberFormatException("Number too large");
+            v = v * 10 - d;
+        }
+        if (!neg && v == Long.MIN_VALUE) throw new NumberFormatException("Number too large");
+        return neg ? v : -v;
+    }
+
+    private static final double[] POW10 = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    /**
+     * Parses plain decimals ({@code -12.25}) without a string; each is correctly rounded because
+     * both the digits and the power of ten are exact doubles. Anything else (exponents, very long
+     * digit runs, NaN) goes through {@link Double#parseDouble}.
+     */
+    public static double parseDouble(CharSequence s, int from, int to) {
+        int i = from;
+        boolean neg = i < to && s.charAt(i) == '-';
+        if (neg || (i < to && s.charAt(i) == '+')) i++;
+        long digits = 0;
+        int scale = -1, n = 0;
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+                if (scale >= 0) scale++;
+                if (++n > 15) return Double.parseDouble(s.subSequence(from, to).toString());
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return Double.parseDouble(s.subSequence(from, to).toString());
+            }
+        }
+        if (n == 0) throw new NumberFormatException("Bad number");
+        double v = scale > 0 ? digits / POW10[scale] : digits;
+        return neg ? -v : v;
+    }
+
+    /** {@code #rrggbb} or {@code rrggbb}. */
+    public static int parseHex(CharSequence s, int from, int to) {
+        if (from < to && s.charAt(from) == '#') from++;
+        if (from >= to || to - from > 8) throw new NumberFormatException("Bad color");
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            int d = Character.digit(s.charAt(i), 16);
+            if (d < 0) throw new NumberFormatException("Bad color");
+            v = v << 4 | d;
+        }
+        return v & 0xFFFFFF;
+    }
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static boolean reserved(char c) { return c == ':' || c == '%' || c == ',' || c == ';' || c == '|'; }
+
+    /** Percent-escapes the characters that separate fields, so a name stays one field. */
+    public static String escape(String s) {
+        int i = 0;
+        while (i < s.length() && !reserved(s.charAt(i))) i++;
+        if (i == s.length()) return s;
+        StringBuilder sb = new StringBuilder(s.length() + 8).append(s, 0, i);
+        for (; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (reserved(c)) sb.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    public static String unescape(CharSequence s, int from, int to) {
+        int i = from;
+        while (i < to && s.charAt(i) != '%') i++;
+        if (i == to) return s.subSequence(from, to).toString();
+        StringBuilder sb = new StringBuilder(to - from).append(s, from, i);
+        while (i < to) {
+            char c = s.charAt(i);
+            int hi, lo;
+            if (c == '%' && i + 2 < to
+                    && (hi = Character.digit(s.charAt(i + 1), 16)) >= 0 && (lo = Character.digit(s.charAt(i + 2), 16)) >= 0) {
+                sb.append((char) (hi << 4 | lo));
+                i += 3;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    public static String unescape(String s) { return unescape(s, 0, s.length()); }
+}
@@ -0,0 +1,27 @@
+package com.doodler.protocol;
+
+/** Opcode of a text protocol line: everything before the first ':'. */
+public enum Op {
+    // client -> server
+    CAPS, JOIN, RESUME, GUESS, LEAVE,
+    // both directions
+    CHAT, DRAW, STROKE, CLEAR,
+    // server -> client
+    PROTO, TOKEN, RESUMED, REDIRECT, REPLAY, INFO, ERROR, ROLE, SECRET, TIME, DEADLINE, CLOCK, CORRECT, DISABLE, SCORES, PLAYERS, ROUND_START, ROUND_END,
+    UNKNOWN;
+
+    private static final Op[] KNOWN = java.util.Arrays.copyOf(values(), values().length - 1);
+
+    /** Matches {@code s[from, to)} against the opcode names without creating a string. */
+    public static Op lookup(CharSequence s, int from, int to) {
+        int len = to - from;
+        for (Op op : KNOWN) {
+            String name = op.name();
+            if (name.length() != len || name.charAt(0) != s.charAt(from)) continue;
+            int i = 1;
+            while (i < len && name.charAt(i) == s.charAt(from + i)) i++;
+            if (i == len) return op;
+        }
+        return UNKNOWN;
+    }
+}
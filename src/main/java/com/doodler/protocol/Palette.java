@@ -0,0 +1,40 @@
+package com.doodler.protocol;
+
+/**
+ * Fixed drawing palette shared by client and server. Colors on the wire are a one-byte index;
+ * anything outside the palette is sent as {@link #CUSTOM} followed by three RGB bytes.
+ */
+public final class Palette {
+    public static final int CUSTOM = 0xFF;
+
+    private static final int[] RGB = {
+            0x000000, 0xFFFFFF, 0x808080, 0xC0C0C0, 0x404040, 0xFF0000, 0x800000, 0xFF8080,
+            0xFFA500, 0xFF8C00, 0xFFFF00, 0x808000, 0x00FF00, 0x008000, 0x80FF80, 0x00FFFF,
+            0x008080, 0x0000FF, 0x000080, 0x8080FF, 0xFF00FF, 0x800080, 0xFFC0CB, 0xA52A2A,
+            0x8B4513, 0xD2B48C, 0x4B0082, 0xEE82EE, 0x40E0D0, 0xFFD700, 0x87CEEB, 0x2E8B57,
+    };
+
+    private Palette() {}
+
+    /** Palette index of an exact RGB match, or {@link #CUSTOM}. */
+    public static int indexOf(int rgb) {
+        rgb &= 0xFFFFFF;
+        for (int i = 0; i < RGB.length; i++) if (RGB[i] == rgb) return i;
+        return CUSTOM;
+    }
+
+    public static int rgb(int index) { return RGB[index]; }
+
+    public static int size() { return RGB.length; }
+
+    public static String toHex(int rgb) {
+        char[] c = {'#', 0, 0, 0, 0, 0, 0};
+        for (int i = 6; i >= 1; i--) { c[i] = Character.forDigit(rgb & 0xF, 16); rgb >>>= 4; }
+        return new String(c);
+    }
+
+    /** Parses "#rrggbb" (the leading '#' is optional). */
+    public static int parseHex(String s) {
+        return Message.parseHex(s, 0, s.length());
+    }
+}
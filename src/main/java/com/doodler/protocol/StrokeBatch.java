@@ -0,0 +1,59 @@
+package com.doodler.protocol;
+
+import java.util.Arrays;
+
+/**
+ * A run of points drawn with one color by one player. Coordinates are kept quantized to
+ * 1/{@value #SCALE} px. If {@link #continues} is false the first point starts a new path
+ * (moveTo); otherwise every point extends the previous one (lineTo).
+ */
+public final class StrokeBatch {
+    public static final int SCALE = 4;
+
+    public int playerId;
+    public int rgb;
+    public boolean eraser;
+    public boolean continues;
+    private int[] xy;
+    private int count;
+
+    public StrokeBatch(int capacity) {
+        xy = new int[Math.max(2, capacity * 2)];
+    }
+
+    public static StrokeBatch of(int rgb, boolean eraser, boolean continues) {
+        StrokeBatch b = new StrokeBatch(8);
+        b.rgb = rgb; b.eraser = eraser; b.continues = continues;
+        return b;
+    }
+
+    public static int quantize(double v) { return (int) Math.round(v * SCALE); }
+
+    public static double unquantize(int q) { return q / (double) SCALE; }
+
+    public void add(double x, double y) { addQuantized(quantize(x), quantize(y)); }
+
+    public void addQuantized(int qx, int qy) {
+        if (count * 2 == xy.length) xy = Arrays.copyOf(xy, xy.length * 2);
+        xy[count * 2] = qx;
+        xy[count * 2 + 1] = qy;
+        count++;
+    }
+
+    public int size() { return count; }
+
+    public boolean isEmpty() { return count == 0; }
+
+    public int qx(int i) { return xy[i * 2]; }
+
+    public int qy(int i) { return xy[i * 2 + 1]; }
+
+    public double x(int i) { return unquantize(xy[i * 2]); }
+
+    public double y(int i) { return unquantize(xy[i * 2 + 1]); }
+
+    /** Whether point {@code i} is a lineTo (true) or starts a new path (false). */
+    public boolean isDrag(int i) { return i > 0 || continues; }
+
+    public void clear() { count = 0; }
+}
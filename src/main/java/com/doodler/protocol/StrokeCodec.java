@@ -0,0 +1,164 @@
+package com.doodler.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary body of a {@link Frames#STROKE} frame:
+ * <pre>
+ * varint playerId | flags (bit0 continues, bit1 eraser) | palette index [+ r g b if CUSTOM]
+ * varint count | zigzag x0 | zigzag y0 | (zigzag dx | zigzag dy) * (count - 1)
+ * </pre>
+ * and the two text forms used by text-protocol clients: the legacy single point
+ * {@code DRAW:x:y:isDrag:isEraser:#rrggbb} and the multi-point
+ * {@code STROKE:continues:isEraser:#rrggbb:x,y;x,y;...}. Servers relay both with the sender's
+ * username inserted after the prefix. A text canvas replay is {@code REPLAY:} followed by STROKE
+ * payloads separated by '|'.
+ */
+public final class StrokeCodec {
+    private static final int CONTINUES = 1, ERASER = 2;
+
+    private StrokeCodec() {}
+
+    public static int maxEncodedSize(StrokeBatch b) {
+        return Varint.MAX_BYTES + 1 + 4 + Varint.MAX_BYTES + b.size() * 2 * Varint.MAX_BYTES;
+    }
+
+    /** Exact size of {@link #encode}'s output. */
+    public static int encodedSize(StrokeBatch b) {
+        int n = Varint.size(b.playerId) + 2 + (Palette.indexOf(b.rgb) == Palette.CUSTOM ? 3 : 0) + Varint.size(b.size());
+        int px = 0, py = 0;
+        for (int i = 0; i < b.size(); i++) {
+            n += Varint.size(Varint.zigzag(b.qx(i) - px)) + Varint.size(Varint.zigzag(b.qy(i) - py));
+            px = b.qx(i); py = b.qy(i);
+        }
+        return n;
+    }
+
+    public static void encode(StrokeBatch b, ByteBuffer out) {
+        Varint.write(out, b.playerId);
+        out.put((byte) ((b.continues ? CONTINUES : 0) | (b.eraser ? ERASER : 0)));
+        int idx = Palette.indexOf(b.rgb);
+        out.put((byte) idx);
+        if (idx == Palette.CUSTOM) {
+            out.put((byte) (b.rgb >> 16)).put((byte) (b.rgb >> 8)).put((byte) b.rgb);
+        }
+        Varint.write(out, b.size());
+        int px = 0, py = 0;
+        for (int i = 0; i < b.size(); i++) {
+            Varint.write(out, Varint.zigzag(b.qx(i) - px));
+            Varint.write(out, Varint.zigzag(b.qy(i) - py));
+            px = b.qx(i); py = b.qy(i);
+        }
+    }
+
+    public static StrokeBatch decode(ByteBuffer in) {
+        int playerId = Varint.read(in);
+        int flags = in.get();
+        int idx = in.get() & 0xFF;
+        int rgb = idx == Palette.CUSTOM
+                ? (in.get() & 0xFF) << 16 | (in.get() & 0xFF) << 8 | (in.get() & 0xFF)
+                : Palette.rgb(idx);
+        int n = Varint.read(in);
+        if (n < 0 || n > in.remaining()) throw new IllegalArgumentException("Bad point count " + n);
+        StrokeBatch b = new StrokeBatch(n);
+        b.playerId = playerId;
+        b.rgb = rgb;
+        b.continues = (flags & CONTINUES) != 0;
+        b.eraser = (flags & ERASER) != 0;
+        int x = 0, y = 0;
+        for (int i = 0; i < n; i++) {
+            x += Varint.unzigzag(Varint.read(in));
+            y += Varint.unzigzag(Varint.read(in));
+            b.addQuantized(x, y);
+        }
+        return b;
+    }
+
+    /** Text payload of point {@code i}, without the DRAW:[user:] prefix. */
+    public static String toTextPayload(StrokeBatch b, int i) {
+        return b.x(i) + ":" + b.y(i) + ":" + b.isDrag(i) + ":" + b.eraser + ":" + Palette.toHex(b.rgb);
+    }
+
+    /** Text payload of a whole batch, without the STROKE:[user:] prefix. */
+    public static String toTextStroke(StrokeBatch b) {
+        StringBuilder sb = new StringBuilder(24 + b.size() * 12);
+        sb.append(b.continues).append(':').append(b.eraser).append(':').append(Palette.toHex(b.rgb)).append(':');
+        for (int i = 0; i < b.size(); i++) {
+            if (i > 0) sb.append(';');
+            sb.append(b.x(i)).append(',').append(b.y(i));
+        }
+        return sb.toString();
+    }
+
+    /** Parses {@code continues:isEraser:#rrggbb:x,y;x,y;...}. */
+    public static StrokeBatch fromTextStroke(String payload) { return fromTextStroke(payload, 0, payload.length()); }
+
+    /** Parses a STROKE payload in {@code s[from, to)} in place, without splitting it into strings. */
+    public static StrokeBatch fromTextStroke(CharSequence s, int from, int to) {
+        int c1 = field(s, from, to), c2 = field(s, c1 + 1, to), c3 = field(s, c2 + 1, to);
+        StrokeBatch b = StrokeBatch.of(Message.parseHex(s, c2 + 1, c3), isTrue(s, c1 + 1, c2), isTrue(s, from, c1));
+        int p = c3 + 1;
+        while (p < to) {
+            int semi = indexOf(s, ';', p, to);
+            if (semi < 0) semi = to;
+            int comma = indexOf(s, ',', p, semi);
+            if (comma < 0) throw new IllegalArgumentException("Bad STROKE point");
+            b.add(Message.parseDouble(s, p, comma), Message.parseDouble(s, comma + 1, semi));
+            p = semi + 1;
+        }
+        return b;
+    }
+
+    /** Text payload of a canvas replay, without the REPLAY: prefix. */
+    public static String toTextReplay(List<StrokeBatch> strokes) {
+        StringBuilder sb = new StringBuilder();
+        for (StrokeBatch s : strokes) {
+            if (sb.length() > 0) sb.append('|');
+            sb.append(toTextStroke(s));
+        }
+        return sb.toString();
+    }
+
+    public static List<StrokeBatch> fromTextReplay(String payload) { return fromTextReplay(payload, 0, payload.length()); }
+
+    public static List<StrokeBatch> fromTextReplay(CharSequence s, int from, int to) {
+        List<StrokeBatch> out = new ArrayList<>();
+        while (from < to) {
+            int bar = indexOf(s, '|', from, to);
+            if (bar < 0) bar = to;
+            out.add(fromTextStroke(s, from, bar));
+            from = bar + 1;
+        }
+        return out;
+    }
+
+    /** Parses a legacy single-point payload {@code x:y:isDrag:isEraser:#rrggbb}. */
+    public static StrokeBatch fromTextPayload(String payload) { return fromTextPayload(payload, 0, payload.length()); }
+
+    public static StrokeBatch fromTextPayload(CharSequence s, int from, int to) {
+        int c1 = field(s, from, to), c2 = field(s, c1 + 1, to), c3 = field(s, c2 + 1, to), c4 = field(s, c3 + 1, to);
+        int c5 = indexOf(s, ':', c4 + 1, to);
+        StrokeBatch b = StrokeBatch.of(Message.parseHex(s, c4 + 1, c5 < 0 ? to : c5), isTrue(s, c3 + 1, c4), isTrue(s, c2 + 1, c3));
+        b.add(Message.parseDouble(s, from, c1), Message.parseDouble(s, c1 + 1, c2));
+        return b;
+    }
+
+    /** End of the ':'-terminated field starting at {@code from}. */
+    private static int field(CharSequence s, int from, int to) {
+        int i = indexOf(s, ':', from, to);
+        if (i < 0) throw new IllegalArgumentException("Missing stroke field");
+        return i;
+    }
+
+    private static int indexOf(CharSequence s, char c, int from, int to) {
+        for (int i = from; i < to; i++) if (s.charAt(i) == c) return i;
+        return -1;
+    }
+
+    private static boolean isTrue(CharSequence s, int from, int to) {
+        return to - from == 4 && (s.charAt(from) | 0x20) == 't' && (s.charAt(from + 1) | 0x20) == 'r'
+                && (s.charAt(from + 2) | 0x20) == 'u' && (s.charAt(from + 3) | 0x20) == 'e';
+    }
+}
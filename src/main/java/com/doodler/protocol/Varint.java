@@ -0,0 +1,40 @@
+package com.doodler.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128-style unsigned varints plus zigzag for signed deltas.
+ */
+public final class Varint {
+    public static final int MAX_BYTES = 5;
+
+    private Varint() {}
+
+    public static void write(ByteBuffer b, int v) {
+        while ((v & ~0x7F) != 0) {
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    public static int read(ByteBuffer b) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte x = b.get();
+            v |= (x & 0x7F) << shift;
+            if (x >= 0) return v;
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    public static int size(int v) {
+        int n = 1;
+        while ((v & ~0x7F) != 0) { n++; v >>>= 7; }
+        return n;
+    }
+
+    public static int zigzag(int v) { return (v << 1) ^ (v >> 31); }
+
+    public static int unzigzag(int v) { return (v >>> 1) ^ -(v & 1); }
+}
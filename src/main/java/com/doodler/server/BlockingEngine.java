@@ -0,0 +1,154 @@
+package com.doodler.server;
+
+import com.doodler.protocol.Frames;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * One reader and one writer thread per connection, on blocking socket channels. With a
+ * virtual-thread factory the parked threads cost a few hundred bytes each instead of a
+ * platform stack.
+ */
+public class BlockingEngine implements ConnectionEngine {
+    static final int WRITE_BUF = 16 * 1024;
+
+    private final ServerMain server;
+    private final ThreadFactory threads;
+    private volatile ServerSocketChannel ss;
+
+    public BlockingEngine(ServerMain server, ThreadFactory threads) {
+        this.server = server; this.threads = threads;
+    }
+
+    @Override
+    public void serve(int port) throws IOException {
+        ss = ServerSocketChannel.open();
+        ss.bind(new InetSocketAddress(port), 1024);
+        while (ss.isOpen()) {
+            SocketChannel s;
+            try { s = ss.accept(); } catch (ClosedChannelException closed) { break; }
+            ServerMetrics.ACCEPTED.increment();
+            s.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+            threads.newThread(() -> handleClient(s)).start();
+        }
+    }
+
+    private void handleClient(SocketChannel sock) {
+        SocketTransport t = new SocketTransport(sock);
+        threads.newThread(t::writeLoop).start();
+        ClientHandler ch = null;
+        try {
+            // not closed here: closing the stream would close the socket under the writer
+            InputStream in = new BufferedInputStream(sock.socket().getInputStream());
+            String line = Frames.readLine(in), caps = null;
+            if (line != null && line.startsWith(Frames.CAPS_PREFIX)) {
+                caps = line.substring(Frames.CAPS_PREFIX.length());
+                line = Frames.readLine(in);
+            }
+            ch = server.join(line, caps, t);
+            if (ch == null) return;
+            if (t.inflate != null) in = new BufferedInputStream(t.inflate.stream(in));
+            if (t.readFrames) {
+                while (sock.isOpen() && Frames.read(in, ch)) { }
+            } else {
+                while ((line = Frames.readLine(in)) != null) {
+                    if (!ch.handleLine(line)) break;
+                }
+            }
+        } catch (IOException e) {
+            // e.printStackTrace();
+        } finally {
+            if (ch != null) ch.disconnected(t);
+            else t.closeGracefully();
+            if (t.inflate != null) t.inflate.end();
+        }
+    }
+
+    @Override
+    public void close() {
+        try { if (ss != null) ss.close(); } catch (IOException ignored) {}
+    }
+
+    static class SocketTransport implements Transport {
+        private final SocketChannel sock;
+        private final OutboundQueue outbound;
+        // only touched by the connection's reader thread
+        boolean readFrames;
+        StreamCompression.In inflate;
+        // set before anything it applies to is queued; the writer thread owns it after that
+        private volatile StreamCompression.Out deflate;
+
+        SocketTransport(SocketChannel sock) {
+            this.sock = sock;
+            this.outbound = new OutboundQueue(() -> {}, this::close);
+        }
+
+        void writeLoop() {
+            try {
+                while (outbound.await()) {
+                    // the socket buffer is only held while there is something to write
+                    SharedFrame wbuf = BufferPool.acquire(WRITE_BUF, SharedFrame.TEXT);
+                    try {
+                        ByteBuffer b = wbuf.buf;
+                        while (true) {
+                            b.clear();
+                            SharedFrame large = outbound.fill(b);
+                            if (large != null) {
+                                try { write(large.buf.duplicate()); } finally { large.release(); }
+                                continue;
+                            }
+                            if (b.position() == 0) break;
+                            write(b.flip());
+                        }
+                    } finally {
+                        wbuf.release();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                // reader side notices the closed socket
+            } finally {
+                close();
+                if (deflate != null) deflate.end();
+            }
+        }
+
+        private void write(ByteBuffer b) throws IOException {
+            StreamCompression.Out d = deflate;
+            writeFully(d != null ? d.deflate(b) : b);
+        }
+
+        private void writeFully(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) sock.write(b);
+        }
+
+        @Override
+        public OutboundQueue outbound() { return outbound; }
+
+        @Override
+        public void switchToFrames() { readFrames = true; }
+
+        @Override
+        public void switchToDeflate(int level, int plainBytes) {
+            deflate = new StreamCompression.Out(level, plainBytes);
+            inflate = new StreamCompression.In();
+        }
+
+        @Override
+        public void closeGracefully() { outbound.finish(); }
+
+        @Override
+        public void close() {
+            outbound.close();
+            try { sock.close(); } catch (IOException ignored) {}
+        }
+
+        @Override
+        public String remoteAddress() {
+            try { return String.valueOf(sock.getRemoteAddress()); } catch (IOException e) { return "?"; }
+        }
+    }
+}
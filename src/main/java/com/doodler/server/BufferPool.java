@@ -0,0 +1,60 @@
+package com.doodler.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-classed pool of direct buffers behind {@link SharedFrame}. Frames larger than the
+ * biggest class are allocated on demand and left to the GC.
+ */
+final class BufferPool {
+    private static final int[] CLASSES = {256, 1024, 4096, 16 * 1024, 64 * 1024};
+    private static final int MAX_FREE_PER_CLASS = Integer.getInteger("doodler.pool.maxFree", 4096);
+    // idle direct memory kept per class: 64 frames of the largest, 4096 of the smallest
+    private static final int MAX_FREE_BYTES_PER_CLASS = Integer.getInteger("doodler.pool.maxFreeBytes", 4 << 20);
+
+    /** One size class's free frames; a plain holder so the array of them is not a generic array. */
+    private static final class FreeList {
+        final ArrayBlockingQueue<SharedFrame> frames;
+
+        FreeList(int frameSize) {
+            frames = new ArrayBlockingQueue<>(Math.max(1, Math.min(MAX_FREE_PER_CLASS, MAX_FREE_BYTES_PER_CLASS / frameSize)));
+        }
+    }
+
+    private static final FreeList[] FREE = new FreeList[CLASSES.length];
+
+    static {
+        for (int i = 0; i < CLASSES.length; i++) FREE[i] = new FreeList(CLASSES[i]);
+    }
+
+    static final LongAdder ALLOCATED = new LongAdder();
+    static final LongAdder REUSED = new LongAdder();
+
+    private BufferPool() {}
+
+    /** Returns a frame with at least {@code size} bytes of room and a reference count of 1. */
+    static SharedFrame acquire(int size, byte kind) {
+        int c = 0;
+        while (c < CLASSES.length && CLASSES[c] < size) c++;
+        SharedFrame f = c < CLASSES.length ? FREE[c].frames.poll() : null;
+        if (f != null) {
+            REUSED.increment();
+        } else {
+            ALLOCATED.increment();
+            int cap = c < CLASSES.length ? CLASSES[c] : size;
+            f = new SharedFrame(ByteBuffer.allocateDirect(cap), c < CLASSES.length ? c : -1);
+        }
+        f.reset(kind);
+        return f;
+    }
+
+    static void recycle(SharedFrame f) {
+        if (f.sizeClass >= 0) FREE[f.sizeClass].frames.offer(f);
+    }
+
+    static String stats() {
+        return "allocated=" + ALLOCATED.sum() + " reused=" + REUSED.sum();
+    }
+}
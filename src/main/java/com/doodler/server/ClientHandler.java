@@ -1,48 +1,184 @@
 package com.doodler.server;
 
+import com.doodler.metrics.AsyncLog;
+import com.doodler.protocol.Frames;
+import com.doodler.protocol.Message;
+import com.doodler.protocol.Op;
+import com.doodler.protocol.StrokeBatch;
+import com.doodler.protocol.StrokeCodec;
+
 import java.io.*;
-import java.net.*;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ClientHandler implements Frames.Handler {
+    private static final SecureRandom TOKENS = new SecureRandom();
 
-public class ClientHandler {
-    final Socket sock;
-    final BufferedReader in;
-    final BufferedWriter out;
+    // replaced when the player resumes on a new connection
+    volatile Transport transport;
     final String username;
+    // username as it appears in ':'-separated fields
+    final String wireName;
     final GameSession session;
+    // session-local id, sent in binary strokes instead of the username
+    volatile int playerId;
+    // wire format of everything queued for this client, fixed at JOIN
+    final boolean binary;
+    private final AtomicBoolean gone = new AtomicBoolean();
+    // handed out at JOIN; presenting it with RESUME reattaches a new connection to this player
+    final String resumeToken;
+    // null when resuming is disabled (doodler.resume.graceSec=0)
+    final ResumeBuffer history;
+    // the connection dropped and the player waits out the grace window; guarded by this
+    private boolean detached;
+    private volatile boolean leaving;
+    // inbound lines are dispatched one at a time per connection, so one tokenizer suffices
+    private final Message msg = new Message();
 
-    public ClientHandler(Socket sock, BufferedReader in, BufferedWriter out, String username, GameSession session) {
-        this.sock = sock; this.in = in; this.out = out; this.username = username; this.session = session;
+    public ClientHandler(Transport transport, String username, GameSession session, boolean binary) {
+        this.transport = transport; this.username = username; this.session = session; this.binary = binary;
+        this.wireName = Message.escape(username);
+        this.history = GameSession.RESUME_GRACE_SECONDS > 0 ? new ResumeBuffer(ResumeBuffer.FRAMES) : null;
+        byte[] b = new byte[16];
+        TOKENS.nextBytes(b);
+        this.resumeToken = Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+        if (history != null) transport.outbound().recordInto(history);
     }
 
-    public void listen() {
+    /** Dispatches one inbound line; returns false once the client asked to leave. */
+    public boolean handleLine(String line) {
+        Message m = msg.parse(line);
+        ServerMetrics.in(m.op());
         try {
-            send("INFO:Welcome " + username);
-            String line;
-            while ((line = in.readLine()) != null) {
-                if (line.startsWith("CHAT:")) {
-                    String text = line.substring(5);
-                    session.broadcast("CHAT:" + username + ":" + text);
-                } else if (line.startsWith("DRAW:")) {
-                    // DRAW payload after prefix
-                    String payload = line.substring(5);
-                    session.handleDraw(this, payload);
-                } else if (line.startsWith("GUESS:")) {
-                    String guess = line.substring(6);
-                    session.checkGuess(this, guess);
-                } else if (line.equals("LEAVE")) {
-                    break;
+            switch (m.op()) {
+                case CHAT -> session.broadcast("CHAT:" + wireName + ":" + m.rest(1));
+                // single point: DRAW:x:y:isDrag:isEraser:#rrggbb
+                case DRAW -> session.handleDraw(this, StrokeCodec.fromTextPayload(line, m.start(1), line.length()));
+                case STROKE -> session.handleDraw(this, StrokeCodec.fromTextStroke(line, m.start(1), line.length()));
+                case GUESS -> session.checkGuess(this, m.rest(1));
+                case CLEAR -> session.clearCanvas(this);
+                case LEAVE -> {
+                    leaving = true;
+                    return false;
                 }
+                default -> { }
+            }
+        } catch (IllegalArgumentException ignored) {
+            // malformed field: the line is dropped, the connection stays
+        }
+        return true;
+    }
+
+    @Override
+    public void onText(String line) {
+        if (!handleLine(line)) transport.close();
+    }
+
+    @Override
+    public void onStroke(StrokeBatch stroke) {
+        ServerMetrics.in(Op.STROKE);
+        if (!stroke.isEmpty()) session.handleDraw(this, stroke);
+    }
+
+    /**
+     * Called by the engine exactly once per connection, whichever side closed it. Unless the
+     * player left on purpose it stays in the game for the resume grace window.
+     */
+    public void disconnected(Transport t) {
+        if (t != transport || gone.get()) return; // an old connection of a resumed player
+        OutboundQueue q = t.outbound();
+        if (q.maxDepth() > OutboundQueue.CAPACITY / 2) {
+            AsyncLog.get().info("Client " + username + " outbound queue " + q.stats());
+        }
+        t.close();
+        if (history != null && !leaving) {
+            synchronized (this) {
+                if (t != transport) return;
+                detached = true;
+            }
+            // removes the player itself if the session cannot hold the seat
+            session.detach(this);
+            return;
+        }
+        remove();
+    }
+
+    /** Takes the player out of the game for good. */
+    void remove() {
+        if (!gone.compareAndSet(false, true)) return;
+        ServerMetrics.CONNECTED.decrement();
+        transport.close();
+        session.removeClient(this);
+        if (history != null) history.releaseAll();
+    }
+
+    /**
+     * Sends the player to another node: REDIRECT:host:port, then the connection is closed once
+     * that has gone out, and the player leaves this session. A player waiting to resume just leaves.
+     */
+    void redirect(String target) {
+        if (leaving) return;
+        leaving = true;
+        ServerMetrics.REDIRECT_MIGRATE.increment();
+        if (isDetached()) { remove(); return; }
+        try { send("REDIRECT:" + target); } catch (IOException ignored) {}
+        transport.closeGracefully();
+    }
+
+    synchronized boolean isDetached() { return detached; }
+
+    /**
+     * Moves the player onto {@code t}. The client has read {@code received} frames of the old
+     * stream; if the history still holds everything after that, only those frames are queued
+     * again (after a RESUMED line) and true is returned. Otherwise the numbering starts over and
+     * false is returned: the caller must send the full game state.
+     */
+    synchronized boolean resume(Transport t, long received) throws IOException {
+        // first, so whatever the old queue still holds is numbered before the rewind
+        transport.close();
+        List<SharedFrame> missed = history.rewind(received);
+        if (missed == null) history.reset();
+        t.outbound().recordInto(history);
+        transport = t;
+        detached = false;
+        send("RESUMED:" + (missed != null ? "delta" : "full"));
+        if (missed != null) {
+            for (SharedFrame f : missed) {
+                if (!t.outbound().offer(f)) f.release();
             }
-        } catch (IOException e) {
-            // e.printStackTrace();
-        } finally {
-            try { sock.close(); } catch (IOException ignored) {}
-            session.removeClient(this);
         }
+        return missed != null;
     }
 
+    /** Queues a message for this client; never blocks on the socket. */
     public void send(String msg) throws IOException {
-        out.write(msg + "\n");
-        out.flush();
+        Fanout f = Fanout.text(msg);
+        try { send(f); } finally { f.release(); }
     }
+
+    /** Queues a message that is being fanned out; its encoded frame is shared, not copied. */
+    void send(Fanout msg) throws IOException {
+        SharedFrame frame = msg.frameFor(binary).retain();
+        if (!transport.outbound().offer(frame)) {
+            // the socket is gone but the player may resume: the frame counts as sent and lost
+            if (history != null && !gone.get() && transport.outbound().isClosed()) {
+                synchronized (this) {
+                    if (!transport.outbound().isClosed()) {
+                        if (transport.outbound().offer(frame)) { ServerMetrics.out(msg.op); return; }
+                    } else {
+                        history.record(frame);
+                        return;
+                    }
+                }
+            }
+            frame.release();
+            if (transport.outbound().isClosed()) throw new IOException("Client " + username + " is disconnected");
+            return;
+        }
+        ServerMetrics.out(msg.op);
+    }
+
+    public int queueDepth() { return transport.outbound().depth(); }
 }
@@ -0,0 +1,158 @@
+package com.doodler.server;
+
+import com.doodler.metrics.AsyncLog;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * This node's view of the cluster, and where it sends JOINs it should not serve itself. A room
+ * stays on the node that holds it; a new room goes to its owner on a {@link HashRing} of the
+ * nodes that are not draining, skipping nodes already above {@link #LOAD_FACTOR} times the
+ * average session count (consistent hashing with bounded loads). The view is refreshed from
+ * the {@link ClusterDirectory} on every heartbeat, which also publishes this node's status.
+ * <p>
+ * Draining stops new rooms from landing here and moves the ones that are: each is sent to its
+ * new owner at its next round boundary, where every player gets REDIRECT and joins again there.
+ */
+final class Cluster implements AutoCloseable {
+    // how far above the average a node may be before new rooms skip it
+    static final double LOAD_FACTOR = 1.25;
+    private static final AsyncLog LOG = AsyncLog.get();
+
+    private final ClusterDirectory directory;
+    private final String id, address;
+    private final SessionRegistry sessions;
+    private volatile boolean draining, closed;
+    private volatile View view = new View(Map.of(), Map.of(), new HashRing(List.of()));
+
+    /** Immutable snapshot of the directory: live nodes by id, who holds which room, the ring. */
+    private record View(Map<String, ClusterDirectory.NodeStatus> nodes,
+                        Map<String, ClusterDirectory.NodeStatus> holders, HashRing ring) {}
+
+    /** {@code address}: host:port as clients should reach this node; it doubles as the node id. */
+    Cluster(ClusterDirectory directory, String address, SessionRegistry sessions) {
+        this.directory = directory; this.id = address; this.address = address; this.sessions = sessions;
+    }
+
+    /** Publishes this node's status and reads everyone's back. Failures keep the last view. */
+    void refresh() {
+        try {
+            publish();
+            reload();
+        } catch (IOException e) {
+            if (AsyncLog.sample(60)) LOG.error("Cluster directory unavailable, routing on the last view: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A room opened here: published at once rather than on the next heartbeat, so that the
+     * next player of the room is sent here by whichever node they ask.
+     */
+    void opened() {
+        try {
+            publish();
+        } catch (IOException e) {
+            if (AsyncLog.sample(60)) LOG.error("Could not publish new room: " + e.getMessage());
+        }
+    }
+
+    private void publish() throws IOException {
+        // a heartbeat that fires during shutdown must not bring the node back
+        if (closed) return;
+        Set<String> rooms = new HashSet<>();
+        for (GameSession s : sessions.sessions()) if (s.state() != GameSession.State.CLOSED) rooms.add(s.code());
+        directory.publish(new ClusterDirectory.NodeStatus(id, address, sessions.size(),
+                (int) ServerMetrics.CONNECTED.sum(), draining, System.currentTimeMillis(), rooms));
+    }
+
+    private void reload() throws IOException {
+        Map<String, ClusterDirectory.NodeStatus> nodes = new HashMap<>();
+        Map<String, ClusterDirectory.NodeStatus> holders = new HashMap<>();
+        List<String> serving = new ArrayList<>();
+        for (ClusterDirectory.NodeStatus n : directory.nodes()) {
+            nodes.put(n.id(), n);
+            if (!n.draining()) serving.add(n.id());
+            for (String code : n.rooms()) holders.put(code, n);
+        }
+        // same members: the ring is unchanged, only the loads moved
+        HashRing ring = view.ring.members().equals(new HashSet<>(serving)) ? view.ring : new HashRing(serving);
+        view = new View(nodes, holders, ring);
+    }
+
+    /**
+     * The address a JOIN for {@code code} should go to instead, or null to serve it here. Also
+     * null when no other node is known, so a lone or cut-off node keeps working on its own.
+     */
+    String route(String code) {
+        if (!draining && sessions.find(code) != null) return null;
+        View v = view;
+        ClusterDirectory.NodeStatus holder = v.holders.get(code);
+        if (holder == null) {
+            // a room opened since the last heartbeat is only in the directory so far
+            try { reload(); } catch (IOException ignored) { }
+            v = view;
+            holder = v.holders.get(code);
+        }
+        if (holder != null && !holder.draining() && !holder.id().equals(id)) return holder.address();
+        List<String> order = v.ring.walk(code);
+        String owner = place(v, order);
+        if (owner == null || owner.equals(id)) return null;
+        // nodes see each other's loads a heartbeat apart and may pick differently; a JOIN is only
+        // ever sent further back along the walk, so it cannot bounce between two of them
+        int self = order.indexOf(id);
+        return self >= 0 && self < order.indexOf(owner) ? null : v.nodes.get(owner).address();
+    }
+
+    /** The first node along the code's walk whose load is under the cap. */
+    private static String place(View v, List<String> order) {
+        if (order.isEmpty()) return null;
+        long total = 0;
+        for (String n : order) total += v.nodes.get(n).sessions();
+        double cap = Math.ceil(LOAD_FACTOR * (total + 1) / order.size());
+        for (String n : order) if (v.nodes.get(n).sessions() < cap) return n;
+        return order.get(0);
+    }
+
+    /**
+     * Stops taking new rooms and moves every room here to its new owner. Returns a summary; a
+     * room with nowhere to go stays until another node joins and drain is asked for again.
+     */
+    String drain() {
+        draining = true;
+        refresh();
+        int moving = 0, stuck = 0;
+        for (GameSession s : sessions.sessions()) {
+            String target = route(s.code());
+            if (target == null) { stuck++; continue; }
+            s.migrate(target);
+            moving++;
+        }
+        String summary = "draining " + id + ": " + moving + " rooms moving at their next round boundary, "
+                + stuck + " with no other node to go to";
+        LOG.info(summary);
+        return summary + "\n";
+    }
+
+    /** One line per live node, for the /cluster page. */
+    String describe() {
+        View v = view;
+        StringBuilder sb = new StringBuilder("self=").append(id).append(draining ? " (draining)" : "").append('\n');
+        List<ClusterDirectory.NodeStatus> nodes = new ArrayList<>(v.nodes.values());
+        nodes.sort(Comparator.comparing(ClusterDirectory.NodeStatus::id));
+        for (ClusterDirectory.NodeStatus n : nodes) {
+            sb.append(n.id()).append(" sessions=").append(n.sessions()).append(" connections=").append(n.connections())
+                    .append(n.draining() ? " draining" : "").append(" age=")
+                    .append(System.currentTimeMillis() - n.publishedAtMillis()).append("ms\n");
+        }
+        return sb.toString();
+    }
+
+    /** Leaves the directory, so the others stop routing here without waiting for staleness. */
+    @Override
+    public void close() {
+        closed = true;
+        try { directory.remove(id); } catch (IOException e) { LOG.error("Could not leave cluster directory: " + e.getMessage()); }
+        directory.close();
+    }
+}
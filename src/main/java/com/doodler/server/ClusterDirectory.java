@@ -0,0 +1,32 @@
+package com.doodler.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Where the nodes of a cluster find each other. Every node publishes its own status on each
+ * heartbeat and reads everyone's back; nothing else is shared. A node that stops publishing
+ * drops out once its last status is older than the directory's staleness limit.
+ */
+public interface ClusterDirectory extends AutoCloseable {
+    /**
+     * One node as it last described itself. {@code address} is the host:port clients connect
+     * to; {@code rooms} are the codes of the sessions it holds, so JOINs for them go there even
+     * if the hash ring would pick another node.
+     */
+    record NodeStatus(String id, String address, int sessions, int connections, boolean draining,
+                      long publishedAtMillis, Set<String> rooms) {}
+
+    /** Replaces this node's previous status. */
+    void publish(NodeStatus self) throws IOException;
+
+    /** Every node whose status is recent enough, this one included if it has published. */
+    List<NodeStatus> nodes() throws IOException;
+
+    /** Withdraws {@code id}, e.g. on shutdown, so others stop routing to it at once. */
+    void remove(String id) throws IOException;
+
+    @Override
+    default void close() {}
+}
@@ -0,0 +1,22 @@
+package com.doodler.server;
+
+import java.io.IOException;
+
+/**
+ * Accepts sockets and feeds their lines to {@link ServerMain#join} / {@link ClientHandler#handleLine}.
+ */
+public interface ConnectionEngine {
+    /** Binds the port and serves until {@link #close()} is called. */
+    void serve(int port) throws IOException;
+
+    void close();
+
+    static ConnectionEngine create(String mode, ServerMain server) {
+        switch (mode.toLowerCase()) {
+            case "nio": return new NioEngine(server);
+            case "virtual": return new BlockingEngine(server, Thread.ofVirtual().name("client-", 0).factory());
+            case "platform": return new BlockingEngine(server, Thread.ofPlatform().name("client-", 0).factory());
+            default: throw new IllegalArgumentException("Unknown engine: " + mode + " (nio|virtual|platform)");
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.doodler.server;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size JDBC connection pool. Each pooled connection keeps its own LRU cache of prepared
+ * statements, so hot statements are prepared once per connection rather than once per call.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final String url, user, pass;
+    private final int size;
+    private final long borrowTimeoutMs;
+    private final int queryTimeoutSec;
+    private final int statementCacheSize;
+    private final BlockingQueue<Pooled> idle;
+    private final Semaphore permits;
+    private volatile boolean closed;
+
+    final LongAdder borrows = new LongAdder();
+    final LongAdder waitNanos = new LongAdder();
+    final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder statementsPrepared = new LongAdder();
+    final LongAdder statementCacheHits = new LongAdder();
+
+    public ConnectionPool(String url, String user, String pass, int size, long borrowTimeoutMs,
+                          int queryTimeoutSec, int statementCacheSize) {
+        this.url = url; this.user = user; this.pass = pass; this.size = size;
+        this.borrowTimeoutMs = borrowTimeoutMs; this.queryTimeoutSec = queryTimeoutSec;
+        this.statementCacheSize = statementCacheSize;
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.permits = new Semaphore(size, true);
+    }
+
+    /**
+     * One connection unless db.pool.size says otherwise: the server's only borrower is the single
+     * write-behind thread, so more would sit idle holding server-side sessions.
+     */
+    public static ConnectionPool fromConfig(ServerConfig cfg) {
+        return new ConnectionPool(cfg.require("db.url"), cfg.get("db.user", "root"), cfg.get("db.password", ""),
+                cfg.getInt("db.pool.size", 1), cfg.getLong("db.pool.timeoutMs", 5_000),
+                cfg.getInt("db.queryTimeoutSec", 10), cfg.getInt("db.statementCache", 32));
+    }
+
+    /** Opens one connection up front so bad credentials fail at startup, not on first use. */
+    public ConnectionPool warmUp() throws SQLException {
+        borrow().close();
+        return this;
+    }
+
+    /** Waits up to the configured timeout; a timeout is reported as a transient failure. */
+    public Pooled borrow() throws SQLException {
+        if (closed) throw new SQLNonTransientConnectionException("Pool closed");
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTransientConnectionException("No DB connection free after " + borrowTimeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a DB connection");
+        }
+        long waited = System.nanoTime() - start;
+        borrows.increment(); waitNanos.add(waited); maxWaitNanos.accumulate(waited);
+        Pooled c = idle.poll();
+        try {
+            if (c != null && !c.conn.isValid(2)) { c.discard(); c = null; }
+            if (c == null) c = new Pooled(DriverManager.getConnection(url, user, pass));
+            return c;
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void giveBack(Pooled c, boolean broken) {
+        if (broken || closed || !idle.offer(c)) c.discard();
+        permits.release();
+    }
+
+    public String stats() {
+        long n = borrows.sum();
+        return "size=" + size + " idle=" + idle.size() + " borrows=" + n
+                + " avgWaitUs=" + (n == 0 ? 0 : waitNanos.sum() / n / 1000) + " maxWaitUs=" + maxWaitNanos.get() / 1000
+                + " timeouts=" + timeouts.sum() + " prepared=" + statementsPrepared.sum() + " cacheHits=" + statementCacheHits.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Pooled c;
+        while ((c = idle.poll()) != null) c.discard();
+    }
+
+    /** A borrowed connection; close() returns it to the pool. */
+    public final class Pooled implements AutoCloseable {
+        final Connection conn;
+        private boolean broken;
+        private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> e) {
+                if (size() <= statementCacheSize) return false;
+                try { e.getValue().close(); } catch (SQLException ignored) {}
+                return true;
+            }
+        };
+
+        private Pooled(Connection conn) { this.conn = conn; }
+
+        /** A cached statement for {@code sql}; do not close it. Parameters and batch are cleared. */
+        public PreparedStatement prepare(String sql, boolean generatedKeys) throws SQLException {
+            String key = generatedKeys ? "K:" + sql : sql;
+            PreparedStatement p = statements.get(key);
+            if (p != null && !p.isClosed()) {
+                statementCacheHits.increment();
+                p.clearParameters();
+                p.clearBatch();
+                return p;
+            }
+            statementsPrepared.increment();
+            p = generatedKeys ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : conn.prepareStatement(sql);
+            p.setQueryTimeout(queryTimeoutSec);
+            statements.put(key, p);
+            return p;
+        }
+
+        /** Marks the connection unusable (e.g. after a connection-level error) so it is not reused. */
+        public void markBroken() { broken = true; }
+
+        private void discard() {
+            for (PreparedStatement p : statements.values()) try { p.close(); } catch (SQLException ignored) {}
+            statements.clear();
+            try { conn.close(); } catch (SQLException ignored) {}
+        }
+
+        @Override
+        public void close() { giveBack(this, broken); }
+    }
+}
@@ -1,74 +1,212 @@
 package com.doodler.server;
 
+import com.doodler.metrics.LatencyHistogram;
+
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DBManager {
-    private final Connection conn;
+    private static final String INSERT_GAME = "INSERT INTO games(code, host) VALUES (?, ?)";
+    private static final String SET_SECRET = "UPDATE games SET secret_word=? WHERE id=?";
+    private static final String INSERT_PLAYER = "INSERT INTO players(game_id, username, is_drawer, can_guess) VALUES(?,?,?,?)";
+    private static final String ADD_POINTS = "UPDATE players SET score = score + ? WHERE id=?";
+    private static final String DISABLE_GUESSING = "UPDATE players SET can_guess = false WHERE id=?";
+    private static final String SCORES = "SELECT username, score FROM players WHERE game_id=? ORDER BY score DESC";
+
+    private final ConnectionPool pool;
+    // per-method call time in microseconds; also exported as doodler_db_call_seconds
+    private final Map<String, LatencyHistogram> timings = new ConcurrentHashMap<>();
 
+    /** Single-connection mode, as before pooling. */
     public DBManager(String url, String user, String pass) throws SQLException {
-        conn = DriverManager.getConnection(url, user, pass);
+        this(new ConnectionPool(url, user, pass, 1, 30_000, 0, 16).warmUp());
+    }
+
+    public DBManager(ConnectionPool pool) { this.pool = pool; }
+
+    @FunctionalInterface
+    private interface Query<T> { T run(ConnectionPool.Pooled c) throws SQLException; }
+
+    /** Borrows a connection for one call and records its query time under {@code op}. */
+    private <T> T call(String op, Query<T> q) throws SQLException {
+        ConnectionPool.Pooled c = pool.borrow();
+        long start = System.nanoTime();
+        try {
+            return q.run(c);
+        } catch (SQLRecoverableException | SQLNonTransientConnectionException e) {
+            c.markBroken();
+            throw e;
+        } finally {
+            timings.computeIfAbsent(op, ServerMetrics::dbCall).record((System.nanoTime() - start) / 1_000);
+            c.close();
+        }
+    }
+
+    /**
+     * Like {@link #call}, but all of {@code q} commits or none of it does, so a batch that fails
+     * partway can be retried without applying its first rows twice. A commit that fails for any
+     * reason but a rollback (SQL state 40xxx) may have gone through, and is not retryable.
+     */
+    private <T> T transaction(String op, Query<T> q) throws SQLException {
+        return call(op, c -> {
+            c.conn.setAutoCommit(false);
+            try {
+                T result;
+                try {
+                    result = q.run(c);
+                } catch (SQLException | RuntimeException e) {
+                    try { c.conn.rollback(); } catch (SQLException r) { e.addSuppressed(r); c.markBroken(); }
+                    throw e;
+                }
+                try {
+                    c.conn.commit();
+                } catch (SQLException e) {
+                    if (e.getSQLState() != null && e.getSQLState().startsWith("40")) throw e;
+                    c.markBroken();
+                    throw new SQLNonTransientException(op + " commit outcome unknown", e);
+                }
+                return result;
+            } finally {
+                try { c.conn.setAutoCommit(true); } catch (SQLException e) { c.markBroken(); }
+            }
+        });
     }
 
     public int createGame(String code, String host) throws SQLException {
-        String s = "INSERT INTO games(code, host) VALUES (?, ?)";
-        try (PreparedStatement p = conn.prepareStatement(s, Statement.RETURN_GENERATED_KEYS)) {
+        return call("createGame", c -> {
+            PreparedStatement p = c.prepare(INSERT_GAME, true);
             p.setString(1, code);
             p.setString(2, host);
             p.executeUpdate();
-            ResultSet rs = p.getGeneratedKeys();
-            if (rs.next()) return rs.getInt(1);
-        }
-        throw new SQLException("Could not create game");
+            try (ResultSet rs = p.getGeneratedKeys()) {
+                if (rs.next()) return rs.getInt(1);
+            }
+            throw new SQLException("Could not create game");
+        });
     }
 
     public void setSecret(int gameId, String secret) throws SQLException {
-        try (PreparedStatement p = conn.prepareStatement("UPDATE games SET secret_word=? WHERE id=?")) {
+        call("setSecret", c -> {
+            PreparedStatement p = c.prepare(SET_SECRET, false);
             p.setString(1, secret);
             p.setInt(2, gameId);
-            p.executeUpdate();
-        }
+            return p.executeUpdate();
+        });
     }
 
     public int addPlayer(int gameId, String username, boolean isDrawer) throws SQLException {
-        try (PreparedStatement p = conn.prepareStatement(
-                "INSERT INTO players(game_id, username, is_drawer, can_guess) VALUES(?,?,?,?)",
-                Statement.RETURN_GENERATED_KEYS)) {
+        return call("addPlayer", c -> {
+            PreparedStatement p = c.prepare(INSERT_PLAYER, true);
             p.setInt(1, gameId);
             p.setString(2, username);
             p.setBoolean(3, isDrawer);
             p.setBoolean(4, !isDrawer);
             p.executeUpdate();
-            ResultSet rs = p.getGeneratedKeys();
-            if (rs.next()) return rs.getInt(1);
-        }
-        throw new SQLException("Could not add player");
+            try (ResultSet rs = p.getGeneratedKeys()) {
+                if (rs.next()) return rs.getInt(1);
+            }
+            throw new SQLException("Could not add player");
+        });
     }
 
     public void addPoints(int playerId, int pts) throws SQLException {
-        try (PreparedStatement p = conn.prepareStatement("UPDATE players SET score = score + ? WHERE id=?")) {
+        call("addPoints", c -> {
+            PreparedStatement p = c.prepare(ADD_POINTS, false);
             p.setInt(1, pts);
             p.setInt(2, playerId);
-            p.executeUpdate();
-        }
+            return p.executeUpdate();
+        });
     }
 
     public void disableGuessing(int playerId) throws SQLException {
-        try (PreparedStatement p = conn.prepareStatement("UPDATE players SET can_guess = false WHERE id=?")) {
+        call("disableGuessing", c -> {
+            PreparedStatement p = c.prepare(DISABLE_GUESSING, false);
             p.setInt(1, playerId);
-            p.executeUpdate();
-        }
+            return p.executeUpdate();
+        });
+    }
+
+    /** Inserts several players in one JDBC batch and transaction; returns their ids in order. */
+    public int[] addPlayers(int[] gameIds, String[] usernames, boolean[] isDrawer) throws SQLException {
+        return transaction("addPlayers", c -> {
+            int[] ids = new int[gameIds.length];
+            PreparedStatement p = c.prepare(INSERT_PLAYER, true);
+            for (int i = 0; i < gameIds.length; i++) {
+                p.setInt(1, gameIds[i]);
+                p.setString(2, usernames[i]);
+                p.setBoolean(3, isDrawer[i]);
+                p.setBoolean(4, !isDrawer[i]);
+                p.addBatch();
+            }
+            p.executeBatch();
+            try (ResultSet rs = p.getGeneratedKeys()) {
+                for (int i = 0; i < ids.length; i++) {
+                    if (!rs.next()) throw new SQLException("Could not add player");
+                    ids[i] = rs.getInt(1);
+                }
+            }
+            return ids;
+        });
+    }
+
+    public void addPoints(int[] playerIds, int[] pts) throws SQLException {
+        transaction("addPoints[]", c -> {
+            PreparedStatement p = c.prepare(ADD_POINTS, false);
+            for (int i = 0; i < playerIds.length; i++) {
+                p.setInt(1, pts[i]);
+                p.setInt(2, playerIds[i]);
+                p.addBatch();
+            }
+            return p.executeBatch();
+        });
+    }
+
+    public void disableGuessing(int[] playerIds) throws SQLException {
+        transaction("disableGuessing[]", c -> {
+            PreparedStatement p = c.prepare(DISABLE_GUESSING, false);
+            for (int id : playerIds) {
+                p.setInt(1, id);
+                p.addBatch();
+            }
+            return p.executeBatch();
+        });
+    }
+
+    public void setSecrets(int[] gameIds, String[] secrets) throws SQLException {
+        transaction("setSecret[]", c -> {
+            PreparedStatement p = c.prepare(SET_SECRET, false);
+            for (int i = 0; i < gameIds.length; i++) {
+                p.setString(1, secrets[i]);
+                p.setInt(2, gameIds[i]);
+                p.addBatch();
+            }
+            return p.executeBatch();
+        });
     }
 
     public Map<String, Integer> getScoresForGame(int gameId) throws SQLException {
-        Map<String, Integer> out = new LinkedHashMap<>();
-        try (PreparedStatement p = conn.prepareStatement("SELECT username, score FROM players WHERE game_id=? ORDER BY score DESC")) {
+        return call("getScoresForGame", c -> {
+            Map<String, Integer> out = new LinkedHashMap<>();
+            PreparedStatement p = c.prepare(SCORES, false);
             p.setInt(1, gameId);
-            ResultSet rs = p.executeQuery();
-            while (rs.next()) out.put(rs.getString("username"), rs.getInt("score"));
-        }
-        return out;
+            try (ResultSet rs = p.executeQuery()) {
+                while (rs.next()) out.put(rs.getString("username"), rs.getInt("score"));
+            }
+            return out;
+        });
+    }
+
+    /** Pool wait times plus call count and mean/p99/max time per operation. */
+    public String stats() {
+        StringBuilder sb = new StringBuilder("pool[").append(pool.stats()).append(']');
+        new TreeMap<>(timings).forEach((op, h) -> {
+            long c = h.count();
+            sb.append(' ').append(op).append('=').append(c).append("x/avg").append(c == 0 ? 0 : h.sum() / c)
+                    .append("us/p99").append(h.percentile(99)).append("us/max").append(h.max()).append("us");
+        });
+        return sb.toString();
     }
 
-    public void close() throws SQLException { conn.close(); }
+    public void close() throws SQLException { pool.close(); }
 }
@@ -0,0 +1,91 @@
+package com.doodler.server;
+
+import com.doodler.protocol.Frames;
+import com.doodler.protocol.Op;
+import com.doodler.protocol.StrokeBatch;
+import com.doodler.protocol.StrokeCodec;
+import com.doodler.protocol.Utf8;
+
+import java.util.List;
+
+/**
+ * One message on its way to one or more clients. It is encoded lazily, at most once per wire
+ * format (text line / binary frame), into pooled {@link SharedFrame}s that every recipient
+ * shares. The creator must {@link #release()} it after handing it to the recipients.
+ */
+final class Fanout {
+    private final byte kind;
+    // message type, for the per-type outbound counters
+    final Op op;
+    private final String text;
+    private final StrokeBatch stroke;
+    private final String from;
+    private final List<StrokeBatch> replay;
+    private SharedFrame textFrame, binaryFrame;
+
+    private Fanout(byte kind, Op op, String text, StrokeBatch stroke, String from, List<StrokeBatch> replay) {
+        this.kind = kind; this.op = op; this.text = text; this.stroke = stroke; this.from = from; this.replay = replay;
+    }
+
+    static Fanout text(String line) {
+        int colon = line.indexOf(':');
+        Op op = Op.lookup(line, 0, colon < 0 ? line.length() : colon);
+        boolean clock = op == Op.DEADLINE || op == Op.CLOCK || op == Op.TIME;
+        return new Fanout(clock ? SharedFrame.TIME : SharedFrame.TEXT, op, line, null, null, null);
+    }
+
+    static Fanout stroke(StrokeBatch s, String from) {
+        return new Fanout(SharedFrame.DRAW, s.size() == 1 ? Op.DRAW : Op.STROKE, null, s, from, null);
+    }
+
+    /** A canvas replay; queued as TEXT so overflow policies never drop it like a live stroke. */
+    static Fanout replay(List<StrokeBatch> strokes) { return new Fanout(SharedFrame.TEXT, Op.REPLAY, null, null, null, strokes); }
+
+    /** The encoded frame for a client on the given wire format; owned by this fanout. */
+    SharedFrame frameFor(boolean binary) {
+        if (binary) {
+            if (binaryFrame == null) binaryFrame = encodeBinary();
+            return binaryFrame;
+        }
+        if (textFrame == null) textFrame = encodeText();
+        return textFrame;
+    }
+
+    private SharedFrame encodeBinary() {
+        SharedFrame f;
+        if (replay != null) {
+            f = BufferPool.acquire(Frames.replaySize(replay), kind);
+            Frames.writeReplay(replay, f.buf);
+        } else if (stroke != null) {
+            f = BufferPool.acquire(Frames.strokeSize(stroke), kind);
+            Frames.writeStroke(stroke, f.buf);
+        } else {
+            f = BufferPool.acquire(Frames.textSize(text), kind);
+            Frames.writeText(text, f.buf);
+        }
+        f.buf.flip();
+        return f;
+    }
+
+    private SharedFrame encodeText() {
+        String line = text;
+        if (replay != null) {
+            line = "REPLAY:" + StrokeCodec.toTextReplay(replay);
+        } else if (stroke != null) {
+            line = stroke.size() == 1
+                    ? "DRAW:" + from + ":" + StrokeCodec.toTextPayload(stroke, 0)
+                    // a batched stroke stays one message on the text protocol too
+                    : "STROKE:" + from + ":" + StrokeCodec.toTextStroke(stroke);
+        }
+        SharedFrame f = BufferPool.acquire(Utf8.length(line) + 1, kind);
+        Utf8.encode(line, f.buf);
+        f.buf.put((byte) '\n');
+        f.buf.flip();
+        return f;
+    }
+
+    void release() {
+        if (textFrame != null) { textFrame.release(); textFrame = null; }
+        if (binaryFrame != null) { binaryFrame.release(); binaryFrame = null; }
+    }
+}
@@ -0,0 +1,79 @@
+package com.doodler.server;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A directory kept as one properties file per node in a shared folder (cluster.dir), which is
+ * all several server JVMs on one host, or on hosts sharing a mount, need to find each other.
+ * Files are written to a temporary name and renamed, so readers never see half a status.
+ */
+public final class FileDirectory implements ClusterDirectory {
+    private static final String SUFFIX = ".node";
+    private final Path dir;
+    private final long staleMillis;
+
+    public FileDirectory(Path dir, long staleMillis) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.staleMillis = staleMillis;
+    }
+
+    @Override
+    public void publish(NodeStatus self) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("id", self.id());
+        p.setProperty("address", self.address());
+        p.setProperty("sessions", String.valueOf(self.sessions()));
+        p.setProperty("connections", String.valueOf(self.connections()));
+        p.setProperty("draining", String.valueOf(self.draining()));
+        p.setProperty("publishedAt", String.valueOf(self.publishedAtMillis()));
+        StringJoiner rooms = new StringJoiner(",");
+        // codes are whatever players typed, commas included
+        for (String code : self.rooms()) rooms.add(URLEncoder.encode(code, StandardCharsets.UTF_8));
+        p.setProperty("rooms", rooms.toString());
+        Path tmp = dir.resolve(fileName(self.id()) + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) { p.store(w, null); }
+        Files.move(tmp, dir.resolve(fileName(self.id())), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public List<NodeStatus> nodes() throws IOException {
+        long now = System.currentTimeMillis();
+        List<NodeStatus> live = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path f : files) {
+                NodeStatus n = read(f);
+                if (n != null && now - n.publishedAtMillis() <= staleMillis) live.add(n);
+            }
+        }
+        return live;
+    }
+
+    /** Null if the file vanished or is not a node status; one bad file must not hide the others. */
+    private static NodeStatus read(Path f) {
+        Properties p = new Properties();
+        try (Reader r = Files.newBufferedReader(f, StandardCharsets.UTF_8)) {
+            p.load(r);
+            Set<String> rooms = new HashSet<>();
+            for (String code : p.getProperty("rooms", "").split(",")) {
+                if (!code.isEmpty()) rooms.add(URLDecoder.decode(code, StandardCharsets.UTF_8));
+            }
+            return new NodeStatus(p.getProperty("id"), p.getProperty("address"),
+                    Integer.parseInt(p.getProperty("sessions", "0")), Integer.parseInt(p.getProperty("connections", "0")),
+                    Boolean.parseBoolean(p.getProperty("draining")), Long.parseLong(p.getProperty("publishedAt", "0")),
+                    rooms);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void remove(String id) throws IOException { Files.deleteIfExists(dir.resolve(fileName(id))); }
+
+    // node ids are host:port, which is not a portable file name
+    private static String fileName(String id) { return id.replaceAll("[^A-Za-z0-9._-]", "_") + SUFFIX; }
+}
@@ -0,0 +1,237 @@
+package com.doodler.server;
+
+import com.doodler.protocol.StrokeBatch;
+import com.doodler.protocol.StrokeCodec;
+import com.doodler.protocol.Utf8;
+import com.doodler.protocol.Varint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One session's append-only record of what happened: joins, leaves, strokes, guesses, correct
+ * guesses and round starts and ends, each stamped with milliseconds since the journal opened.
+ * The session's loop only appends the encoded record to a heap buffer; {@link JournalWriter}
+ * moves it into the memory-mapped file in the background, so the file is never touched on the
+ * way to the players. A record the writer has copied survives a crash of the JVM.
+ * <pre>
+ * file:   magic "DJNL" | short version | short code length | code (UTF-8) | long start epoch millis | record*
+ * record: int length (of what follows) | byte type | int millis | body
+ * JOIN        varint id | string name         LEAVE   varint id
+ * DRAW        StrokeCodec stroke (holds id)    CLEAR   varint id
+ * GUESS       varint id | byte result | string text (result: GuessMatcher.Result ordinal)
+ * CORRECT     varint id | varint points
+ * ROUND_START varint drawer id (0 none) | string secret
+ * ROUND_END   byte reason (0 finished, 1 time up)
+ * string = varint byte length | UTF-8
+ * </pre>
+ * The file is mapped a chunk at a time and cut to its length on close; a reader stops at the
+ * first zero length, which is where an unclosed journal's records end.
+ */
+public final class GameJournal {
+    static final int MAGIC = 0x444A4E4C; // "DJNL"
+    static final short VERSION = 1;
+    public static final byte JOIN = 1, LEAVE = 2, DRAW = 3, CLEAR = 4, GUESS = 5, CORRECT = 6, ROUND_START = 7, ROUND_END = 8;
+    static final byte FINISHED = 0, TIME_UP = 1;
+    private static final int RECORD_HEADER = 4 + 1 + 4;
+
+    final String code;
+    final Path file;
+    private final long startNanos;
+    // the loop appends to staged; the writer swaps it with spare and copies it out
+    private ByteBuffer staged, spare;
+    private final int maxStaged;
+    private boolean closing;
+    private int recordStart;
+    // writer side only
+    FileChannel channel;
+    MappedByteBuffer window;
+    long windowStart, written;
+
+    GameJournal(String code, Path file, int maxStaged) {
+        this.code = code; this.file = file; this.maxStaged = maxStaged;
+        this.startNanos = System.nanoTime();
+        staged = ByteBuffer.allocate(16 * 1024);
+        spare = ByteBuffer.allocate(16 * 1024);
+        byte[] name = code.getBytes(StandardCharsets.UTF_8);
+        staged.putInt(MAGIC).putShort(VERSION).putShort((short) name.length).put(name).putLong(System.currentTimeMillis());
+    }
+
+    synchronized void join(int playerId, String name) {
+        ByteBuffer b = begin(JOIN, Varint.MAX_BYTES + stringSize(name));
+        if (b == null) return;
+        Varint.write(b, playerId);
+        putString(b, name);
+        end(b);
+    }
+
+    void leave(int playerId) { small(LEAVE, playerId); }
+
+    void clear(int playerId) { small(CLEAR, playerId); }
+
+    /**
+     * A stroke as the binary frame it was fanned out in: the body is already the StrokeCodec
+     * encoding, so it is copied rather than encoded again. Reads {@code frame} by index only.
+     */
+    synchronized void draw(ByteBuffer frame) {
+        int at = 0;
+        while ((frame.get(at++) & 0x80) != 0) { } // the frame's length prefix
+        at++; // and its type byte
+        int n = frame.limit() - at;
+        ByteBuffer b = begin(DRAW, n);
+        if (b == null) return;
+        b.put(b.position(), frame, at, n).position(b.position() + n);
+        end(b);
+    }
+
+    synchronized void guess(int playerId, GuessMatcher.Result result, String text) {
+        ByteBuffer b = begin(GUESS, Varint.MAX_BYTES + 1 + stringSize(text));
+        if (b == null) return;
+        Varint.write(b, playerId);
+        b.put((byte) result.ordinal());
+        putString(b, text);
+        end(b);
+    }
+
+    synchronized void correct(int playerId, int points) {
+        ByteBuffer b = begin(CORRECT, 2 * Varint.MAX_BYTES);
+        if (b == null) return;
+        Varint.write(b, playerId);
+        Varint.write(b, points);
+        end(b);
+    }
+
+    synchronized void roundStart(int drawerId, String secret) {
+        ByteBuffer b = begin(ROUND_START, Varint.MAX_BYTES + stringSize(secret));
+        if (b == null) return;
+        Varint.write(b, drawerId);
+        putString(b, secret);
+        end(b);
+    }
+
+    synchronized void roundEnd(boolean timeUp) {
+        ByteBuffer b = begin(ROUND_END, 1);
+        if (b == null) return;
+        b.put(timeUp ? TIME_UP : FINISHED);
+        end(b);
+    }
+
+    /** Records nothing more; the writer flushes what is staged and closes the file. */
+    synchronized void close() { closing = true; }
+
+    private synchronized void small(byte type, int playerId) {
+        ByteBuffer b = begin(type, Varint.MAX_BYTES);
+        if (b == null) return;
+        Varint.write(b, playerId);
+        end(b);
+    }
+
+    /**
+     * Leaves the staging buffer positioned for the body of a new record, or returns null when
+     * the journal is closed or full. Callers hold the lock from here through {@link #end},
+     * so the writer never takes half a record.
+     */
+    private ByteBuffer begin(byte type, int maxBody) {
+        if (closing) return null;
+        int need = RECORD_HEADER + maxBody;
+        if (staged.remaining() < need) {
+            int size = Math.max(staged.capacity() * 2, staged.position() + need);
+            if (size > maxStaged) {
+                // the writer is that far behind: losing a record beats growing without bound
+                JournalWriter.DROPPED.increment();
+                return null;
+            }
+            staged = ByteBuffer.allocate(size).put(staged.flip());
+        }
+        recordStart = staged.position();
+        // the length goes in once the body is written
+        staged.putInt(0).put(type).putInt((int) ((System.nanoTime() - startNanos) / 1_000_000));
+        return staged;
+    }
+
+    private void end(ByteBuffer b) {
+        b.putInt(recordStart, b.position() - recordStart - 4);
+        JournalWriter.RECORDS.increment();
+    }
+
+    /**
+     * Writer side: takes everything staged so far, leaving an empty buffer for the loop. Returns
+     * null if nothing is staged; {@code closing} tells the writer to finish up after copying.
+     */
+    synchronized ByteBuffer takeStaged() {
+        if (staged.position() == 0) return null;
+        ByteBuffer full = staged;
+        // the writer is done with the previous batch by the time it asks for the next
+        staged = spare.clear();
+        spare = full;
+        return full.flip();
+    }
+
+    synchronized boolean isClosing() { return closing; }
+
+    private static int stringSize(String s) { return Varint.MAX_BYTES + Utf8.length(s); }
+
+    private static void putString(ByteBuffer b, String s) {
+        Varint.write(b, Utf8.length(s));
+        Utf8.encode(s, b);
+    }
+
+    private static String getString(ByteBuffer b) {
+        int n = Varint.read(b);
+        String s = new String(b.array(), b.arrayOffset() + b.position(), n, StandardCharsets.UTF_8);
+        b.position(b.position() + n);
+        return s;
+    }
+
+    /** One decoded record; fields a type does not have are 0 or null. */
+    public record Entry(byte type, int millis, int playerId, int value, String text, StrokeBatch stroke) {}
+
+    /** A whole journal read back, closed or still being written. */
+    public record Recording(String code, long startedAtMillis, List<Entry> entries) {}
+
+    public static Recording read(Path file) throws IOException {
+        ByteBuffer b;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            // heap copy: the strings are decoded straight from its array
+            b = ByteBuffer.allocate((int) ch.size());
+            while (b.hasRemaining() && ch.read(b) >= 0) { }
+            b.flip();
+        }
+        if (b.remaining() < 16 || b.getInt() != MAGIC) throw new IOException(file + " is not a game journal");
+        short version = b.getShort();
+        if (version != VERSION) throw new IOException(file + ": journal version " + version + ", expected " + VERSION);
+        byte[] name = new byte[b.getShort()];
+        b.get(name);
+        long started = b.getLong();
+        List<Entry> entries = new ArrayList<>();
+        while (b.remaining() >= RECORD_HEADER) {
+            int len = b.getInt();
+            // zero: the unwritten tail of a journal that was not closed; past the end: cut off mid-record
+            if (len < 5 || len > b.remaining()) break;
+            int next = b.position() + len;
+            byte type = b.get();
+            int millis = b.getInt();
+            Entry e = switch (type) {
+                case JOIN -> { int id = Varint.read(b); yield new Entry(type, millis, id, 0, getString(b), null); }
+                case LEAVE, CLEAR -> new Entry(type, millis, Varint.read(b), 0, null, null);
+                case DRAW -> { StrokeBatch s = StrokeCodec.decode(b); yield new Entry(type, millis, s.playerId, 0, null, s); }
+                case GUESS -> { int id = Varint.read(b); int result = b.get(); yield new Entry(type, millis, id, result, getString(b), null); }
+                case CORRECT -> { int id = Varint.read(b); yield new Entry(type, millis, id, Varint.read(b), null, null); }
+                case ROUND_START -> { int id = Varint.read(b); yield new Entry(type, millis, id, 0, getString(b), null); }
+                case ROUND_END -> new Entry(type, millis, 0, b.get(), null, null);
+                // written by a newer server: skip what this one does not know
+                default -> null;
+            };
+            if (e != null) entries.add(e);
+            b.position(next);
+        }
+        return new Recording(new String(name, StandardCharsets.UTF_8), started, entries);
+    }
+}
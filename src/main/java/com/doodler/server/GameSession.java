@@ -1,160 +1,519 @@
 package com.doodler.server;
 
+import com.doodler.metrics.AsyncLog;
+import com.doodler.protocol.Frames;
+import com.doodler.protocol.StrokeBatch;
+import com.doodler.protocol.StrokeCodec;
+
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
+/**
+ * One room. Its state belongs to the session's {@link SessionLoops.Mailbox}: the public methods
+ * only tell the mailbox what to do, and everything that reads or changes the game runs there,
+ * one command at a time, so none of it takes a lock. Only the client list (copy-on-write) and
+ * the state are read from other threads, by the gauges and the registry.
+ */
 public class GameSession {
+    /**
+     * LOBBY: players present, no round running (before the first, between rounds). ACTIVE: a
+     * round is running. DRAINING: empty, closes after the idle timeout unless someone joins.
+     * CLOSED: evicted; joins are refused and the registry has dropped it.
+     */
+    enum State { LOBBY, ACTIVE, DRAINING, CLOSED }
+
+    // rough per-object costs for memoryEstimate(), on a 64-bit JVM with compressed oops
+    private static final int SESSION_BYTES = 1_024, CLIENT_BYTES = 1_536, FRAME_BYTES = 128;
+
     private final String code;
-    private final List<ClientHandler> clients = Collections.synchronizedList(new ArrayList<>());
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private final List<String> words = Arrays.asList("apple","house","tree","train","dog","cat","flower","phone","book","car");
+    // copy-on-write so the gauges can walk it from outside the loop; joins/leaves are rare
+    private final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
+    static final int ROUND_SECONDS = 60;
+    // clients count down locally from DEADLINE; CLOCK re-anchors them this often
+    static final int CLOCK_SYNC_SECONDS = Integer.getInteger("doodler.round.clockSyncSec", 15);
+    static final int INTERMISSION_SECONDS = Integer.getInteger("doodler.round.intermissionSec", 5);
+    // leaves room for the replay header, and for text replays to stay under the line limit
+    private static final int REPLAY_BUDGET = Frames.MAX_FRAME - 64;
+    static final int IDLE_SECONDS = Integer.getInteger("doodler.session.idleSec", 300);
+    // a dropped player keeps their seat (role, score, player id) this long; 0 disables resuming
+    static final int RESUME_GRACE_SECONDS = Integer.getInteger("doodler.resume.graceSec", 30);
+    // one broadcast in N reaches the console (1 = all, 0 = none); printing every DRAW costs more than sending it
+    static final int BROADCAST_LOG_SAMPLE = Integer.getInteger("doodler.log.broadcastSample", 1000);
+    private static final AsyncLog LOG = AsyncLog.get();
+    // server-wide wheel; this session only holds handles to its own timeouts
+    private final TimerWheel timers;
+    private final Consumer<GameSession> onIdle;
+    private final SessionLoops.Mailbox mailbox;
+    // countdown fires once at round end; clockSync repeats every CLOCK_SYNC_SECONDS
+    private TimerWheel.Timeout countdown, clockSync, transition, idle;
+    // written on the loop, read by the registry
+    private volatile State state = State.DRAINING;
+    private ClientHandler roundDrawer;
+    // this room's own walk through the shared word bank: no word twice until the list is used up
+    private final WordBank.Cursor words;
+    // what happened here, for replay and analysis; null when journalling is off
+    private final GameJournal journal;
     private String secret;
-    private int timeLeft;
+    // this round's secret, folded for matching; also remembers each player's recent misses
+    private GuessMatcher matcher;
+    // round end on the server's monotonic millisecond clock
+    private long endsAtMillis;
     private boolean roundActive = false;
     private ClientHandler drawer;
-    private final DBManager db;
-    private int gameId;
-    private final Map<ClientHandler,Integer> playerDbIds = new ConcurrentHashMap<>();
+    // host:port this room moves to at its next round boundary (the node is draining), or null
+    private String migrateTo;
+    private final WriteBehindStore db;
+    private final WriteBehindStore.Ref game;
+    private final Map<ClientHandler,WriteBehindStore.Ref> playerDbIds = new HashMap<>();
+    private final Map<String, ClientHandler> byResumeToken = new HashMap<>();
+    // players waiting out the grace window, and the timeout that removes them
+    private final Map<ClientHandler, TimerWheel.Timeout> detached = new HashMap<>();
+    private int nextPlayerId = 1;
+    private final Scoreboard scoreboard = new Scoreboard();
+    // this round's canvas; a joiner's replay and the live strokes are queued in loop order
+    private final StrokeLog strokeLog = new StrokeLog();
 
-    public GameSession(String code, DBManager db) throws Exception {
-        this.code = code; this.db = db;
+    public GameSession(String code, WriteBehindStore db, TimerWheel timers, SessionLoops loops, WordBank.Cursor words,
+                       GameJournal journal, Consumer<GameSession> onIdle) {
+        this.code = code; this.db = db; this.timers = timers; this.words = words; this.journal = journal; this.onIdle = onIdle;
+        this.mailbox = loops.mailbox(code);
         // create DB entry; host will be updated when first client joins
-        this.gameId = db.createGame(code, "unknown");
-        System.out.println("Game created in DB id=" + gameId + " code=" + code);
+        this.game = db.createGame(code, "unknown");
+        game.id().whenComplete((id, err) -> {
+            if (err != null) LOG.error("Could not create game " + code + " in DB: " + err.getMessage());
+            else LOG.info("Game created in DB id=" + id + " code=" + code);
+        });
+    }
+
+    /**
+     * Arms the idle timeout. Called once the session is published (the registry calls it after
+     * its insert), so the constructor never hands {@code this} to the timer thread.
+     */
+    public void start() {
+        mailbox.tell(() -> {
+            // empty until the first join lands; a join that never does must not pin the session
+            if (clients.isEmpty() && idle == null && state != State.CLOSED) {
+                idle = timers.schedule(() -> mailbox.tell(this::closeIfIdle), IDLE_SECONDS, TimeUnit.SECONDS);
+            }
+        });
     }
 
-    public void addClient(ClientHandler ch) throws IOException {
+    /**
+     * Returns false if the session was already closed as idle; the caller should make a new one.
+     * Waits for the session's loop, so it must not be called from there.
+     */
+    public boolean addClient(ClientHandler ch) throws IOException {
+        return mailbox.ask(() -> join(ch));
+    }
+
+    private boolean join(ClientHandler ch) throws IOException {
+        if (state == State.CLOSED) return false;
+        if (idle != null) { idle.cancel(); idle = null; }
+        if (state == State.DRAINING) state = State.LOBBY;
+        ch.playerId = nextPlayerId++;
+        scoreboard.add(ch.playerId, ch.username);
+        if (journal != null) journal.join(ch.playerId, ch.username);
+        if (ch.history != null) byResumeToken.put(ch.resumeToken, ch);
         clients.add(ch);
-        broadcast("INFO:" + ch.username + " joined the game.");
+        sendReplay(ch);
+        sendAll("INFO:" + ch.username + " joined the game.");
         updatePlayerList();
-        boolean wasFirst = clients.size() == 1;
-        if (wasFirst) {
+        if (clients.size() == 1) {
             drawer = ch;
             ch.send("ROLE:DRAWER");
-            try {
-                int pid = db.addPlayer(gameId, ch.username, true);
-                playerDbIds.put(ch, pid);
-            } catch (Exception ex) { ex.printStackTrace(); }
+            playerDbIds.put(ch, db.addPlayer(game, ch.username, true));
             ch.send("INFO:You are the drawer. Secret will be sent to you.");
             startRound();
         } else {
             ch.send("ROLE:GUESser");
-            try {
-                int pid = db.addPlayer(gameId, ch.username, false);
-                playerDbIds.put(ch, pid);
-            } catch (Exception ex) { ex.printStackTrace(); }
+            playerDbIds.put(ch, db.addPlayer(game, ch.username, false));
             ch.send("INFO:Wait for drawer to draw.");
+            // a late joiner counts down from the same deadline as everyone else
+            if (roundActive) ch.send(clockLine("DEADLINE"));
         }
+        return true;
     }
 
     public void removeClient(ClientHandler ch) {
-        clients.remove(ch);
-        broadcast("INFO:" + ch.username + " left.");
+        mailbox.tell(() -> leave(ch));
+    }
+
+    private void leave(ClientHandler ch) {
+        TimerWheel.Timeout grace = detached.remove(ch);
+        if (grace != null) grace.cancel();
+        if (!clients.remove(ch)) return;
+        if (journal != null) journal.leave(ch.playerId);
+        byResumeToken.remove(ch.resumeToken);
+        sendAll("INFO:" + ch.username + " left.");
         updatePlayerList();
         if (ch == drawer) {
-            broadcast("INFO:Drawer left. Ending round.");
+            sendAll("INFO:Drawer left. Ending round.");
             endRound();
             if (!clients.isEmpty()) {
                 drawer = clients.get(0);
                 try { drawer.send("ROLE:DRAWER"); } catch (IOException ignored) {}
             }
         }
+        // last player gone: the game is over, make its rows durable and check them
+        if (clients.isEmpty()) {
+            reconcile();
+            if (transition != null) { transition.cancel(); transition = null; }
+            cancelRoundTimers();
+            if (migrateTo != null) {
+                closeIfIdle();
+            } else if (state != State.CLOSED) {
+                state = State.DRAINING;
+                if (idle == null) idle = timers.schedule(() -> mailbox.tell(this::closeIfIdle), IDLE_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private void closeIfIdle() {
+        idle = null;
+        if (!clients.isEmpty() || state == State.CLOSED) return;
+        state = State.CLOSED;
+        roundActive = false;
+        cancelRoundTimers();
+        if (transition != null) { transition.cancel(); transition = null; }
+        // the registry may not be the last holder (a racing join's ClientHandler), so let go here too
+        strokeLog.clear();
+        playerDbIds.clear();
+        drawer = roundDrawer = null;
+        if (journal != null) journal.close();
+        LOG.info(migrateTo != null ? "Session " + code + " moved to " + migrateTo
+                : "Session " + code + " idle for " + IDLE_SECONDS + "s, closing");
+        onIdle.accept(this);
+    }
+
+    /**
+     * Moves the room to the node at {@code target}: once no round is running, every player is
+     * sent REDIRECT and disconnected, and the clients join the room again over there. Scores and
+     * the canvas stay behind; a round in progress is played out first.
+     */
+    void migrate(String target) {
+        mailbox.tell(() -> {
+            if (state == State.CLOSED) return;
+            migrateTo = target;
+            if (!roundActive) moveOut();
+        });
+    }
+
+    private void moveOut() {
+        if (transition != null) { transition.cancel(); transition = null; }
+        if (clients.isEmpty()) { closeIfIdle(); return; }
+        for (ClientHandler c : clients) c.redirect(migrateTo);
+    }
+
+    /** Returns once every command told before this call has run; for benchmarks. Not from the loop. */
+    void await() throws IOException { mailbox.ask(() -> null); }
+
+    String code() { return code; }
+
+    State state() { return state; }
+
+    int clientCount() { return clients.size(); }
+
+    /**
+     * Approximate heap this session keeps alive: fixed overhead, per-client handler and queue
+     * structures plus whatever is queued to them, the stroke log and the scoreboard. Socket
+     * buffers and the shared DB write queue are not counted.
+     */
+    long memoryEstimate() {
+        long bytes = SESSION_BYTES + strokeLog.bytes() + scoreboard.size() * 64L;
+        for (ClientHandler c : clients) {
+            bytes += CLIENT_BYTES + (long) c.queueDepth() * FRAME_BYTES;
+            if (c.history != null) bytes += (long) c.history.size() * FRAME_BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * The player's connection dropped without LEAVE: they keep their seat, and everything sent
+     * to them goes to their resume history, until they resume or the grace window ends.
+     * If the session can no longer hold them they are removed instead.
+     */
+    void detach(ClientHandler ch) {
+        mailbox.tell(() -> {
+            if (state == State.CLOSED || !clients.contains(ch)) { ch.remove(); return; }
+            detached.put(ch, timers.schedule(() -> mailbox.tell(() -> expire(ch)), RESUME_GRACE_SECONDS, TimeUnit.SECONDS));
+            ServerMetrics.DETACHED.increment();
+            LOG.info("Player " + ch.username + " in " + code + " dropped, holding their seat for " + RESUME_GRACE_SECONDS + "s");
+        });
+    }
+
+    private void expire(ClientHandler ch) {
+        if (detached.remove(ch) == null || !ch.isDetached()) return;
+        ServerMetrics.RESUME_EXPIRED.increment();
+        ch.remove();
+    }
+
+    /**
+     * Reattaches the player holding {@code token} to a new connection. Only the frames they
+     * missed are re-sent if the history still has them, otherwise the whole game state. Returns
+     * null if the token is unknown or the player already left. Waits for the session's loop.
+     */
+    ClientHandler resume(String token, long received, Transport t, boolean binary) throws IOException {
+        return mailbox.ask(() -> reattach(token, received, t, binary));
+    }
+
+    private ClientHandler reattach(String token, long received, Transport t, boolean binary) throws IOException {
+        ClientHandler ch = byResumeToken.get(token);
+        // frames in the history are encoded for the old wire format
+        if (ch == null || ch.binary != binary) return null;
+        if (state == State.CLOSED || !clients.contains(ch)) return null;
+        TimerWheel.Timeout grace = detached.remove(ch);
+        if (grace != null) grace.cancel();
+        if (ch.resume(t, received)) {
+            ServerMetrics.RESUMED_DELTA.increment();
+        } else {
+            ServerMetrics.RESUMED_FULL.increment();
+            sendState(ch);
+        }
+        return ch;
+    }
+
+    /** Everything a client needs to rebuild the game from scratch: canvas, players, role, round, scores. */
+    private void sendState(ClientHandler ch) throws IOException {
+        ch.send("CLEAR");
+        sendReplay(ch);
+        StringBuilder players = new StringBuilder("PLAYERS:");
+        for (ClientHandler c : clients) players.append(c.wireName).append(",");
+        ch.send(players.toString());
+        ch.send(scoreboard.appendTo(new StringBuilder("SCORES:")).toString());
+        ch.send(ch == drawer ? "ROLE:DRAWER" : "ROLE:GUESser");
+        if (roundActive && ch == drawer) ch.send("SECRET:" + secret);
+        if (roundActive) ch.send(clockLine("DEADLINE"));
+    }
+
+    /** Compares persisted totals with the scoreboard once every queued write has landed. */
+    private void reconcile() {
+        // completes on the writer thread; the scoreboard belongs to the loop
+        db.query(d -> d.getScoresForGame(game.now())).whenComplete((persisted, err) -> mailbox.tell(() -> {
+            if (err != null) { LOG.error("Score reconciliation for " + code + " skipped: " + err.getMessage()); return; }
+            List<String> diffs = scoreboard.reconcile(persisted);
+            if (diffs.isEmpty()) LOG.info("Scores for game " + code + " reconciled: " + persisted);
+            else LOG.error("Score mismatch for game " + code + ": " + diffs);
+        }));
+    }
+
+    /** Queues the current canvas, split so no replay exceeds a frame or text line. */
+    private void sendReplay(ClientHandler ch) throws IOException {
+        List<StrokeBatch> strokes = strokeLog.snapshot();
+        int from = 0, binary = 0, text = 0;
+        for (int i = 0; i < strokes.size(); i++) {
+            StrokeBatch s = strokes.get(i);
+            int b = StrokeCodec.encodedSize(s), t = 32 + s.size() * 18;
+            if (i > from && (binary + b > REPLAY_BUDGET || text + t > REPLAY_BUDGET)) {
+                sendReplay(ch, strokes.subList(from, i));
+                from = i; binary = 0; text = 0;
+            }
+            binary += b; text += t;
+        }
+        if (from < strokes.size()) sendReplay(ch, strokes.subList(from, strokes.size()));
+    }
+
+    private static void sendReplay(ClientHandler ch, List<StrokeBatch> chunk) throws IOException {
+        Fanout f = Fanout.replay(chunk);
+        try { ch.send(f); } finally { f.release(); }
+    }
+
+    /** Drawer wiped the canvas: the log starts over and everyone else clears too. */
+    public void clearCanvas(ClientHandler from) {
+        mailbox.tell(() -> {
+            if (from != drawer) return;
+            strokeLog.clear();
+            if (journal != null) journal.clear(from.playerId);
+            Fanout f = Fanout.text("CLEAR");
+            for (ClientHandler c : clients) {
+                if (c != from) {
+                    try { c.send(f); } catch (IOException ignored) {}
+                }
+            }
+            f.release();
+        });
     }
 
     private void updatePlayerList() {
         StringBuilder sb = new StringBuilder("PLAYERS:");
-        synchronized (clients) {
-            for (ClientHandler c : clients) sb.append(c.username).append(",");
-        }
-        broadcast(sb.toString());
+        for (ClientHandler c : clients) sb.append(c.wireName).append(",");
+        sendAll(sb.toString());
     }
 
     private void startRound() {
-        if (roundActive) return;
+        if (roundActive || state == State.CLOSED) return;
         roundActive = true;
-        secret = words.get(new Random().nextInt(words.size()));
-        timeLeft = 60;
-        broadcast("ROUND_START");
-        broadcast("TIME:" + timeLeft);
+        state = State.ACTIVE;
+        roundDrawer = drawer;
+        // clients clear their canvas on ROUND_START
+        strokeLog.clear();
+        secret = words.next();
+        matcher = new GuessMatcher(secret);
+        if (journal != null) journal.roundStart(drawer == null ? 0 : drawer.playerId, secret);
+        endsAtMillis = nowMillis() + ROUND_SECONDS * 1000L;
+        sendAll("ROUND_START");
+        sendAll(clockLine("DEADLINE"));
         // send secret only to drawer
         if (drawer != null) {
             try { drawer.send("SECRET:" + secret); } catch (IOException e) { e.printStackTrace(); }
         }
-        try {
-            db.setSecret(gameId, secret);
-        } catch (Exception ex) { ex.printStackTrace(); }
-        scheduler.scheduleAtFixedRate(() -> {
-            timeLeft--;
-            broadcast("TIME:" + timeLeft);
-            if (timeLeft <= 0) {
-                broadcast("ROUND_END:TimeUp:" + secret);
-                roundActive = false;
-                endRound();
+        db.setSecret(game, secret);
+        // one timeout for the round instead of a TIME broadcast every second
+        countdown = timers.schedule(() -> mailbox.tell(this::timeUp), ROUND_SECONDS, TimeUnit.SECONDS);
+        clockSync = timers.scheduleAtFixedRate(() -> mailbox.tell(this::syncClocks),
+                CLOCK_SYNC_SECONDS, CLOCK_SYNC_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /** The server alone ends the round; client countdowns only display it. */
+    private void timeUp() {
+        countdown = null;
+        if (!roundActive) return;
+        sendAll("ROUND_END:TimeUp:" + secret);
+        if (journal != null) journal.roundEnd(true);
+        roundActive = false;
+        endRound();
+    }
+
+    private void syncClocks() {
+        if (roundActive) sendAll(clockLine("CLOCK"));
+    }
+
+    /** DEADLINE/CLOCK:endsAtMillis:serverNowMillis; clients only use the difference, so clocks need not agree. */
+    private String clockLine(String op) {
+        return op + ":" + endsAtMillis + ":" + nowMillis();
+    }
+
+    private static long nowMillis() { return System.nanoTime() / 1_000_000; }
+
+    private int secondsLeft() {
+        return (int) Math.max(0, (endsAtMillis - nowMillis() + 999) / 1000);
+    }
+
+    private void cancelRoundTimers() {
+        if (countdown != null) { countdown.cancel(); countdown = null; }
+        if (clockSync != null) { clockSync.cancel(); clockSync = null; }
+    }
+
+    /** Hands the drawing to the next player and starts a fresh round, unless the room emptied. */
+    private void nextRound() {
+        transition = null;
+        if (clients.isEmpty() || roundActive) return;
+        // the drawer may already have been replaced because the previous one left
+        if (drawer == roundDrawer || !clients.contains(drawer)) {
+            ClientHandler prev = drawer;
+            int i = clients.indexOf(prev);
+            drawer = clients.get((i + 1) % clients.size());
+            if (prev != null && prev != drawer && clients.contains(prev)) {
+                try { prev.send("ROLE:GUESser"); } catch (IOException ignored) {}
             }
-        }, 1, 1, TimeUnit.SECONDS);
+            try { drawer.send("ROLE:DRAWER"); } catch (IOException ignored) {}
+        }
+        startRound();
     }
 
     private void endRound() {
         roundActive = false;
-        // print final scores and announce winner
-        try {
-            Map<String,Integer> scores = db.getScoresForGame(gameId);
-            broadcast("ROUND_END:Finished");
-            StringBuilder sb = new StringBuilder("SCORES:");
-            scores.forEach((u,s) -> sb.append(u).append(",").append(s).append(";;"));
-            broadcast(sb.toString());
-            // server console:
-            System.out.println("Final scores for game " + code + ": " + scores);
-        } catch (Exception ex) { ex.printStackTrace(); }
-        scheduler.shutdownNow();
+        if (state == State.ACTIVE) state = State.LOBBY;
+        sendAll("ROUND_END:Finished");
+        if (journal != null) journal.roundEnd(false);
+        // scores come from memory; the DB copy catches up behind the write queue
+        sendAll(scoreboard.appendTo(new StringBuilder("SCORES:")).toString());
+        // server console:
+        LOG.info("Final scores for game " + code + ": " + scoreboard.totals());
+        LOG.info("Stroke log for game " + code + ": " + strokeLog.stats());
+        // cancelled, not shut down: the shared wheel keeps running for the next round
+        cancelRoundTimers();
+        if (migrateTo != null) {
+            moveOut();
+        } else if (transition == null && !clients.isEmpty()) {
+            transition = timers.schedule(() -> mailbox.tell(this::nextRound), INTERMISSION_SECONDS, TimeUnit.SECONDS);
+        }
     }
 
     public void checkGuess(ClientHandler ch, String guess) {
+        mailbox.tell(() -> guess(ch, guess));
+    }
+
+    private void guess(ClientHandler ch, String guess) {
         // ignore drawer guesses
         if (ch == drawer) {
             try { ch.send("INFO:Drawer cannot guess."); } catch (IOException ignored) {}
             return;
         }
         if (!roundActive) return;
-        if (guess.trim().equalsIgnoreCase(secret.trim())) {
-            int points = Math.max(5, timeLeft / 2 + 5); // simple points formula
-            broadcast("CORRECT:" + ch.username + ":" + secret + ":" + points);
-            // update DB: award points and disable that player's guessing
-            try {
-                int pid = playerDbIds.getOrDefault(ch, -1);
-                if (pid != -1) {
+        GuessMatcher.Result result = matcher.match(ch.playerId, guess);
+        ServerMetrics.GUESSES[result.ordinal()].increment();
+        if (journal != null) journal.guess(ch.playerId, result, guess);
+        switch (result) {
+            case CORRECT -> {
+                int points = Math.max(5, secondsLeft() / 2 + 5); // simple points formula
+                scoreboard.award(ch.playerId, points);
+                if (journal != null) journal.correct(ch.playerId, points);
+                sendAll("CORRECT:" + ch.wireName + ":" + secret + ":" + points);
+                // persist behind: award points and disable that player's guessing
+                WriteBehindStore.Ref pid = playerDbIds.get(ch);
+                if (pid != null) {
                     db.addPoints(pid, points);
                     db.disableGuessing(pid);
                 }
-            } catch (Exception ex) { ex.printStackTrace(); }
-            // disable on clients
-            broadcast("DISABLE:" + ch.username);
-            // end round after correct guess
-            roundActive = false;
-            endRound();
-        } else {
-            broadcast("CHAT:" + ch.username + ":" + guess);
+                // disable on clients
+                sendAll("DISABLE:" + ch.wireName);
+                // end round after correct guess
+                roundActive = false;
+                endRound();
+            }
+            // only the guesser hears it: relayed, a near miss would give the word away
+            case CLOSE -> {
+                try { ch.send("INFO:'" + guess.trim() + "' is close!"); } catch (IOException ignored) {}
+            }
+            // the room already saw it
+            case REPEAT -> { }
+            case WRONG -> sendAll("CHAT:" + ch.wireName + ":" + guess);
         }
     }
 
-    public void handleDraw(ClientHandler from, String payload) {
+    /** {@code stroke} is handed over: the caller must not touch it afterwards. */
+    public void handleDraw(ClientHandler from, StrokeBatch stroke) {
+        mailbox.tell(() -> draw(from, stroke));
+    }
+
+    private void draw(ClientHandler from, StrokeBatch stroke) {
+        long start = System.nanoTime();
+        stroke.playerId = from.playerId;
+        // encoded once per wire format, then shared by every recipient's queue
+        Fanout f = Fanout.stroke(stroke, from.wireName);
+        strokeLog.append(stroke);
         // forward draw to all except origin (so others see)
-        synchronized (clients) {
-            for (ClientHandler c : clients) {
-                if (c != from) {
-                    try { c.send("DRAW:" + from.username + ":" + payload); } catch (IOException e) { e.printStackTrace(); }
-                }
+        for (ClientHandler c : clients) {
+            if (c != from) {
+                try { c.send(f); } catch (IOException ignored) {}
             }
         }
+        // after the fan-out, so the players never wait on it; the binary frame is copied as is
+        if (journal != null) journal.draw(f.frameFor(true).buf);
+        f.release();
+        ServerMetrics.fanout(ServerMetrics.DRAW_FANOUT, start);
     }
 
     public void broadcast(String msg) {
-        synchronized (clients) {
-            for (ClientHandler c : clients) {
-                try { c.send(msg); } catch (IOException e) { e.printStackTrace(); }
-            }
+        mailbox.tell(() -> sendAll(msg));
+    }
+
+    private void sendAll(String msg) {
+        long start = System.nanoTime();
+        Fanout f = Fanout.text(msg);
+        for (ClientHandler c : clients) {
+            try { c.send(f); } catch (IOException ignored) {}
         }
-        System.out.println("Broadcast [" + code + "]: " + msg);
+        f.release();
+        ServerMetrics.fanout(ServerMetrics.BROADCAST, start);
+        if (AsyncLog.sample(BROADCAST_LOG_SAMPLE)) LOG.info("Broadcast [" + code + "]: " + msg);
+    }
+
+    /** Current outbound queue depth of each client, for the queue-depth gauges. */
+    void queueDepths(IntConsumer out) {
+        for (ClientHandler c : clients) out.accept(c.queueDepth());
     }
 }
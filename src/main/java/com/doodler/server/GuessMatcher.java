@@ -0,0 +1,139 @@
+package com.doodler.server;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * One round's secret, folded once so that each guess is checked in a single pass with no
+ * allocation. Folding drops case, accents, spaces and punctuation ("Ice-Cream" is "icecream"),
+ * and the plural forms of the secret (s, es, y to ies) count as the secret itself. A wrong guess
+ * within a small edit distance of the secret is {@link Result#CLOSE}; one a player already made
+ * among their last {@link #WINDOW} wrong guesses is {@link Result#REPEAT}.
+ * <p>
+ * Not thread safe: a session only touches its matcher on its own loop.
+ */
+final class GuessMatcher {
+    enum Result { CORRECT, CLOSE, REPEAT, WRONG }
+
+    // wrong guesses remembered per player; a repeat of one of these is not relayed again
+    static final int WINDOW = 8;
+    // fold table for the Latin blocks: lower case, accents stripped, 0 for characters that are skipped
+    private static final char[] FOLD = new char[0x250];
+
+    static {
+        for (char c = 0; c < FOLD.length; c++) {
+            if (!Character.isLetterOrDigit(c)) continue;
+            String base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            FOLD[c] = Character.toLowerCase(base.charAt(0));
+        }
+    }
+
+    private final char[] secret;
+    private final char[][] forms;
+    private final int maxDistance;
+    // the guess being checked, folded; longer guesses cannot match and are only hashed
+    private final char[] folded;
+    private final int[] prev, row;
+    // recent[id * WINDOW + i]: hashes of a player's last wrong guesses, 0 for an empty slot
+    private long[] recent = new long[16 * WINDOW];
+    private int[] cursor = new int[16];
+
+    GuessMatcher(String secretWord) {
+        char[] buf = new char[secretWord.length()];
+        int n = fold(secretWord, buf);
+        secret = Arrays.copyOf(buf, n);
+        forms = plurals(secret);
+        // a one-letter slip on a short word is usually another word ("cat", "car")
+        maxDistance = n <= 3 ? 0 : n <= 7 ? 1 : 2;
+        folded = new char[n + Math.max(2, maxDistance)];
+        prev = new int[n + 1];
+        row = new int[n + 1];
+    }
+
+    /**
+     * Checks one guess from {@code playerId}. Empty guesses (nothing left after folding) are
+     * {@link Result#WRONG} and are not remembered.
+     */
+    Result match(int playerId, String guess) {
+        int n = 0;
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, len = guess.length(); i < len; i++) {
+            char c = fold(guess.charAt(i));
+            if (c == 0) continue;
+            if (n < folded.length) folded[n] = c;
+            n++;
+            h = (h ^ c) * 0x100000001b3L;
+        }
+        if (n <= folded.length) {
+            for (char[] form : forms) if (Arrays.equals(folded, 0, n, form, 0, form.length)) return Result.CORRECT;
+        }
+        if (n == 0) return Result.WRONG;
+        if (seen(playerId, h == 0 ? 1 : h)) return Result.REPEAT;
+        return n <= folded.length && within(n) ? Result.CLOSE : Result.WRONG;
+    }
+
+    /** True if this player made the guess recently; otherwise remembers it. */
+    private boolean seen(int playerId, long h) {
+        if (playerId >= cursor.length) {
+            int cap = Math.max(playerId + 1, cursor.length * 2);
+            cursor = Arrays.copyOf(cursor, cap);
+            recent = Arrays.copyOf(recent, cap * WINDOW);
+        }
+        int base = playerId * WINDOW;
+        for (int i = 0; i < WINDOW; i++) if (recent[base + i] == h) return true;
+        recent[base + cursor[playerId]] = h;
+        cursor[playerId] = (cursor[playerId] + 1) % WINDOW;
+        return false;
+    }
+
+    /** Levenshtein distance of {@code folded[0, n)} to the secret is at most maxDistance. */
+    private boolean within(int n) {
+        int m = secret.length, k = maxDistance;
+        if (k == 0 || Math.abs(n - m) > k) return false;
+        int[] p = prev, r = row;
+        for (int j = 0; j <= m; j++) p[j] = j;
+        for (int i = 1; i <= n; i++) {
+            r[0] = i;
+            int best = i;
+            char c = folded[i - 1];
+            for (int j = 1; j <= m; j++) {
+                int d = Math.min(p[j - 1] + (secret[j - 1] == c ? 0 : 1), Math.min(p[j], r[j - 1]) + 1);
+                r[j] = d;
+                if (d < best) best = d;
+            }
+            // every path through this row already costs more than allowed
+            if (best > k) return false;
+            int[] t = p; p = r; r = t;
+        }
+        return p[m] <= k;
+    }
+
+    private static char fold(char c) {
+        if (c < FOLD.length) return FOLD[c];
+        return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : 0;
+    }
+
+    private static int fold(String s, char[] out) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = fold(s.charAt(i));
+            if (c != 0) out[n++] = c;
+        }
+        return n;
+    }
+
+    private static char[][] plurals(char[] w) {
+        int n = w.length;
+        if (n == 0) return new char[][] {w};
+        char[] s = Arrays.copyOf(w, n + 1);
+        s[n] = 's';
+        char[] es = Arrays.copyOf(w, n + 2);
+        es[n] = 'e'; es[n + 1] = 's';
+        if (n > 1 && w[n - 1] == 'y') {
+            char[] ies = Arrays.copyOf(w, n + 2);
+            ies[n - 1] = 'i'; ies[n] = 'e'; ies[n + 1] = 's';
+            return new char[][] {w, s, es, ies};
+        }
+        return new char[][] {w, s, es};
+    }
+}
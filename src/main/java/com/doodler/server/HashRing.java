@@ -0,0 +1,64 @@
+package com.doodler.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Consistent hashing of room codes onto node ids. Each node sits at {@link #VNODES} points on
+ * a 64-bit ring, so adding or removing one node moves only about 1/n of the codes, and those
+ * spread over all the others. Immutable; rebuilt whenever the set of nodes changes.
+ */
+final class HashRing {
+    static final int VNODES = 128;
+    private final long[] points;
+    private final String[] owners;
+    private final Set<String> members;
+    private final int nodes;
+
+    HashRing(Collection<String> nodeIds) {
+        members = Set.copyOf(nodeIds);
+        List<String> ids = new ArrayList<>(new TreeSet<>(members));
+        nodes = ids.size();
+        long[][] all = new long[nodes * VNODES][];
+        int k = 0;
+        for (int n = 0; n < nodes; n++) {
+            for (int v = 0; v < VNODES; v++) all[k++] = new long[] {hash(ids.get(n) + "#" + v), n};
+        }
+        Arrays.sort(all, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[all.length];
+        owners = new String[all.length];
+        for (int i = 0; i < all.length; i++) {
+            points[i] = all[i][0];
+            owners[i] = ids.get((int) all[i][1]);
+        }
+    }
+
+    Set<String> members() { return members; }
+
+    /** Every node once, in ring order starting at {@code key}: the owner first, then its fallbacks. */
+    List<String> walk(String key) {
+        List<String> order = new ArrayList<>(nodes);
+        if (nodes == 0) return order;
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) i = -i - 1;
+        for (int j = 0; j < points.length && order.size() < nodes; j++) {
+            String owner = owners[(i + j) % points.length];
+            if (!order.contains(owner)) order.add(owner);
+        }
+        return order;
+    }
+
+    /** 64-bit FNV-1a, then a murmur3 finalizer so nearby names land far apart. */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
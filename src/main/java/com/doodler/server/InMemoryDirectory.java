@@ -0,0 +1,28 @@
+package com.doodler.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A directory shared by nodes in one JVM: for tests and for trying routing without a shared disk. */
+public final class InMemoryDirectory implements ClusterDirectory {
+    private final Map<String, NodeStatus> nodes = new ConcurrentHashMap<>();
+    private final long staleMillis;
+
+    public InMemoryDirectory(long staleMillis) { this.staleMillis = staleMillis; }
+
+    @Override
+    public void publish(NodeStatus self) { nodes.put(self.id(), self); }
+
+    @Override
+    public List<NodeStatus> nodes() {
+        long now = System.currentTimeMillis();
+        List<NodeStatus> live = new ArrayList<>();
+        for (NodeStatus n : nodes.values()) if (now - n.publishedAtMillis() <= staleMillis) live.add(n);
+        return live;
+    }
+
+    @Override
+    public void remove(String id) { nodes.remove(id); }
+}
@@ -0,0 +1,235 @@
+package com.doodler.server;
+
+import com.doodler.protocol.Message;
+import com.doodler.protocol.StrokeBatch;
+import com.doodler.protocol.StrokeCodec;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reads {@link GameJournal} files back:
+ * <pre>
+ * java com.doodler.server.JournalTool print  game.journal
+ * java com.doodler.server.JournalTool trace  game.journal drawing.trace [player]
+ * java com.doodler.server.JournalTool replay game.journal [--speed=4] [--port=55560]
+ * </pre>
+ * print lists the records and a summary (with the guess pace to give the load generator);
+ * trace writes the strokes as a {@link com.doodler.client.StrokeTrace} for
+ * {@code LoadGenerator --trace}; replay serves the game to every client that joins the port,
+ * as the text protocol lines a guesser saw, at the recorded pace times {@code speed}
+ * (0: as fast as the socket takes them).
+ */
+public final class JournalTool {
+    private JournalTool() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: JournalTool print <journal> | trace <journal> <out> [player]"
+                    + " | replay <journal> [--speed=1] [--port=55560]");
+            System.exit(2);
+        }
+        GameJournal.Recording rec = GameJournal.read(Path.of(args[1]));
+        switch (args[0]) {
+            case "print" -> print(rec, System.out);
+            case "trace" -> {
+                if (args.length < 3) throw new IllegalArgumentException("trace needs an output file");
+                int n = writeTrace(rec, args.length > 3 ? args[3] : null, Path.of(args[2]));
+                System.out.println("Wrote " + n + " points to " + args[2]);
+            }
+            case "replay" -> {
+                double speed = 1;
+                int port = 55560;
+                for (int i = 2; i < args.length; i++) {
+                    if (args[i].startsWith("--speed=")) speed = Double.parseDouble(args[i].substring(8));
+                    else if (args[i].startsWith("--port=")) port = Integer.parseInt(args[i].substring(7));
+                }
+                serve(rec, speed, port);
+            }
+            default -> throw new IllegalArgumentException("unknown command " + args[0]);
+        }
+    }
+
+    /**
+     * Sends {@code rec} to {@code out} as the lines a guesser in the room received, each when it
+     * is due at {@code speed} times the recorded pace ({@code speed <= 0}: no waiting).
+     */
+    public static void replay(GameJournal.Recording rec, double speed, Consumer<String> out) throws InterruptedException {
+        Map<Integer, String> names = new LinkedHashMap<>();
+        Map<String, Integer> scores = new LinkedHashMap<>();
+        String secret = "";
+        long t0 = System.nanoTime();
+        for (GameJournal.Entry e : rec.entries()) {
+            if (speed > 0) {
+                long due = t0 + (long) (TimeUnit.MILLISECONDS.toNanos(e.millis()) / speed);
+                long wait = due - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            String name = names.getOrDefault(e.playerId(), "player" + e.playerId());
+            switch (e.type()) {
+                case GameJournal.JOIN -> {
+                    String wire = Message.escape(e.text());
+                    names.put(e.playerId(), wire);
+                    scores.putIfAbsent(wire, 0);
+                    out.accept("INFO:" + e.text() + " joined the game.");
+                    out.accept(players(names));
+                }
+                case GameJournal.LEAVE -> {
+                    names.remove(e.playerId());
+                    out.accept("INFO:" + Message.unescape(name) + " left.");
+                    out.accept(players(names));
+                }
+                case GameJournal.ROUND_START -> {
+                    secret = e.text();
+                    long now = System.nanoTime() / 1_000_000;
+                    long length = speed > 0 ? (long) (GameSession.ROUND_SECONDS * 1000L / speed) : 0;
+                    out.accept("ROUND_START");
+                    out.accept("DEADLINE:" + (now + length) + ":" + now);
+                }
+                case GameJournal.DRAW -> {
+                    StrokeBatch s = e.stroke();
+                    out.accept(s.size() == 1 ? "DRAW:" + name + ":" + StrokeCodec.toTextPayload(s, 0)
+                            : "STROKE:" + name + ":" + StrokeCodec.toTextStroke(s));
+                }
+                case GameJournal.CLEAR -> out.accept("CLEAR");
+                // only misses were relayed; near misses went to the guesser alone
+                case GameJournal.GUESS -> {
+                    if (e.value() == GuessMatcher.Result.WRONG.ordinal()) out.accept("CHAT:" + name + ":" + e.text());
+                }
+                case GameJournal.CORRECT -> {
+                    scores.merge(name, e.value(), Integer::sum);
+                    out.accept("CORRECT:" + name + ":" + secret + ":" + e.value());
+                    out.accept("DISABLE:" + name);
+                }
+                case GameJournal.ROUND_END -> {
+                    if (e.value() == GameJournal.TIME_UP) {
+                        out.accept("ROUND_END:TimeUp:" + secret);
+                    } else {
+                        out.accept("ROUND_END:Finished");
+                        StringBuilder sb = new StringBuilder("SCORES:");
+                        scores.entrySet().stream().sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                                .forEach(s -> sb.append(s.getKey()).append(',').append(s.getValue()).append(";;"));
+                        out.accept(sb.toString());
+                    }
+                }
+                default -> { }
+            }
+        }
+    }
+
+    private static String players(Map<Integer, String> names) {
+        StringBuilder sb = new StringBuilder("PLAYERS:");
+        for (String n : names.values()) sb.append(n).append(',');
+        return sb.toString();
+    }
+
+    /** Replays to every client that connects, each on its own thread, until the process is stopped. */
+    private static void serve(GameJournal.Recording rec, double speed, int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Replaying " + rec.code() + " (" + rec.entries().size() + " records) at " + speed
+                    + "x on port " + port + "; join any room to watch");
+            while (true) {
+                Socket s = server.accept();
+                Thread.ofVirtual().name("replay-" + s.getRemoteSocketAddress()).start(() -> watch(rec, speed, s));
+            }
+        }
+    }
+
+    private static void watch(GameJournal.Recording rec, double speed, Socket s) {
+        try (s) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            Writer w = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+            // CAPS is not answered with PROTO, so the client stays on text lines
+            String line;
+            do line = in.readLine(); while (line != null && !line.startsWith("JOIN:"));
+            if (line == null) return;
+            w.write("INFO:Replay of " + rec.code() + " from " + Instant.ofEpochMilli(rec.startedAtMillis()) + "\n");
+            w.write("ROLE:GUESser\n");
+            w.flush();
+            replay(rec, speed, l -> {
+                try {
+                    w.write(l);
+                    w.write('\n');
+                    w.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            w.write("INFO:End of replay\n");
+            w.flush();
+        } catch (IOException | UncheckedIOException e) {
+            // the watcher went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the strokes of {@code player} (every player if null) as a stroke trace. A batch's
+     * points get the times they were most likely sampled at: 16 ms apart, ending when it was
+     * recorded. Returns the number of points written.
+     */
+    static int writeTrace(GameJournal.Recording rec, String player, Path out) throws IOException {
+        Map<Integer, String> names = new HashMap<>();
+        int points = 0;
+        long last = 0;
+        try (Writer w = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            w.write("# doodler stroke trace from journal of " + rec.code() + ": millis x y drag\n");
+            for (GameJournal.Entry e : rec.entries()) {
+                if (e.type() == GameJournal.JOIN) names.put(e.playerId(), e.text());
+                if (e.type() != GameJournal.DRAW || (player != null && !player.equals(names.get(e.playerId())))) continue;
+                StrokeBatch s = e.stroke();
+                for (int i = 0; i < s.size(); i++) {
+                    long at = Math.max(last, e.millis() - 16L * (s.size() - 1 - i));
+                    w.write(at + " " + s.x(i) + " " + s.y(i) + " " + (s.isDrag(i) ? 1 : 0) + "\n");
+                    last = at;
+                    points++;
+                }
+            }
+        }
+        return points;
+    }
+
+    /** One line per record, then counts and the pace a load test would need to match. */
+    static void print(GameJournal.Recording rec, PrintStream out) {
+        out.println("# " + rec.code() + " started " + Instant.ofEpochMilli(rec.startedAtMillis()));
+        Map<Integer, String> names = new HashMap<>();
+        int rounds = 0, strokes = 0, strokePoints = 0, guesses = 0, correct = 0;
+        Set<Integer> guessers = new HashSet<>();
+        for (GameJournal.Entry e : rec.entries()) {
+            String who = names.getOrDefault(e.playerId(), String.valueOf(e.playerId()));
+            String what = switch (e.type()) {
+                case GameJournal.JOIN -> { names.put(e.playerId(), e.text()); yield "JOIN " + e.playerId() + " " + e.text(); }
+                case GameJournal.LEAVE -> "LEAVE " + who;
+                case GameJournal.ROUND_START -> { rounds++; yield "ROUND_START drawer=" + who + " secret=" + e.text(); }
+                case GameJournal.DRAW -> { strokes++; strokePoints += e.stroke().size(); yield "DRAW " + who + " points=" + e.stroke().size(); }
+                case GameJournal.CLEAR -> "CLEAR " + who;
+                case GameJournal.GUESS -> {
+                    guesses++;
+                    guessers.add(e.playerId());
+                    yield "GUESS " + who + " " + GuessMatcher.Result.values()[e.value()] + " " + e.text();
+                }
+                case GameJournal.CORRECT -> { correct++; yield "CORRECT " + who + " points=" + e.value(); }
+                case GameJournal.ROUND_END -> "ROUND_END " + (e.value() == GameJournal.TIME_UP ? "time up" : "finished");
+                default -> "type " + e.type();
+            };
+            out.println(e.millis() + " " + what);
+        }
+        List<GameJournal.Entry> all = rec.entries();
+        long span = all.isEmpty() ? 0 : all.get(all.size() - 1).millis();
+        out.println("# " + all.size() + " records over " + span / 1000 + "s: " + names.size() + " players, " + rounds
+                + " rounds, " + strokes + " strokes (" + strokePoints + " points), " + guesses + " guesses, " + correct + " correct");
+        if (guesses > 0 && !guessers.isEmpty()) {
+            out.println("# load generator pace: --guess-every=" + span * guessers.size() / guesses
+                    + " --hit-rate=" + String.format(Locale.ROOT, "%.3f", (double) correct / guesses));
+        }
+    }
+}
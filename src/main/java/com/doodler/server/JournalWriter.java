@@ -0,0 +1,154 @@
+package com.doodler.server;
+
+import com.doodler.metrics.AsyncLog;
+import com.doodler.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Opens a {@link GameJournal} per session under journal.dir and, on one background thread,
+ * moves what the sessions have staged into their files every -Ddoodler.journal.flushMs. Files
+ * are mapped -Ddoodler.journal.chunkBytes at a time, so a flush is a memory copy; the kernel
+ * writes the pages back on its own schedule, and a closed journal is forced to disk and cut to
+ * its length.
+ */
+public final class JournalWriter implements AutoCloseable {
+    static final int CHUNK_BYTES = Integer.getInteger("doodler.journal.chunkBytes", 1 << 20);
+    // per session: past this much unflushed, records are dropped rather than buffered
+    static final int MAX_STAGED_BYTES = Integer.getInteger("doodler.journal.maxStagedBytes", 4 << 20);
+    static final long FLUSH_MILLIS = Long.getLong("doodler.journal.flushMs", 100);
+    private static final AsyncLog LOG = AsyncLog.get();
+
+    static final LongAdder RECORDS = ServerMetrics.REGISTRY.counter("doodler_journal_records_total",
+            "Records appended to game journals");
+    static final LongAdder BYTES = ServerMetrics.REGISTRY.counter("doodler_journal_bytes_total",
+            "Bytes copied into game journal files");
+    static final LongAdder DROPPED = ServerMetrics.REGISTRY.counter("doodler_journal_dropped_total",
+            "Journal records dropped because the writer was too far behind");
+    static final LongAdder FAILED = ServerMetrics.REGISTRY.counter("doodler_journal_failed_total",
+            "Journals abandoned after a file error");
+    static final LatencyHistogram FLUSH = ServerMetrics.REGISTRY.histogram("doodler_journal_flush_seconds",
+            "Time to copy every open journal's staged records into its file");
+
+    private final Path dir;
+    private final Set<GameJournal> open = ConcurrentHashMap.newKeySet();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public JournalWriter(Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        ServerMetrics.REGISTRY.gauge("doodler_journals_open", "Game journals being written", open::size);
+        writer = new Thread(this::run, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** A new journal for the session {@code code}; its file is created by the writer, not here. */
+    GameJournal open(String code) {
+        // codes are whatever players typed, so not file names
+        String name = code.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + System.currentTimeMillis() + ".journal";
+        GameJournal j = new GameJournal(code, dir.resolve(name), MAX_STAGED_BYTES);
+        open.add(j);
+        return j;
+    }
+
+    private void run() {
+        while (!closed) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS));
+            flushAll();
+        }
+    }
+
+    private void flushAll() {
+        long start = System.nanoTime();
+        for (GameJournal j : open) {
+            // close() interrupted the writer: leave the rest to its final flush
+            if (Thread.currentThread() == writer && writer.isInterrupted()) break;
+            // read before taking: whatever was appended before close() is in this take
+            boolean closing = j.isClosing();
+            try {
+                ByteBuffer b = j.takeStaged();
+                if (b != null) copy(j, b);
+                if (closing) {
+                    finish(j);
+                    open.remove(j);
+                }
+            } catch (IOException e) {
+                FAILED.increment();
+                LOG.error("Journal " + j.file + " abandoned: " + e.getMessage());
+                j.close();
+                open.remove(j);
+                try { if (j.channel != null) j.channel.close(); } catch (IOException ignored) { }
+            }
+        }
+        ServerMetrics.fanout(FLUSH, start);
+    }
+
+    private static void copy(GameJournal j, ByteBuffer b) throws IOException {
+        if (j.channel == null) {
+            j.channel = FileChannel.open(j.file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        BYTES.add(b.remaining());
+        while (b.hasRemaining()) {
+            if (j.window == null || !j.window.hasRemaining()) {
+                // mapping past the end grows the file; unwritten pages stay zero
+                j.windowStart = j.written;
+                j.window = j.channel.map(FileChannel.MapMode.READ_WRITE, j.windowStart, CHUNK_BYTES);
+            }
+            int n = Math.min(b.remaining(), j.window.remaining());
+            j.window.put(j.window.position(), b, b.position(), n);
+            j.window.position(j.window.position() + n);
+            b.position(b.position() + n);
+            j.written += n;
+        }
+    }
+
+    private static void finish(GameJournal j) throws IOException {
+        if (j.channel == null) return;
+        if (j.window != null) j.window.force();
+        j.window = null;
+        try {
+            j.channel.truncate(j.written);
+        } catch (IOException e) {
+            // some platforms refuse while the mapping lives; readers stop at the zero tail anyway
+        }
+        // the earlier windows were only written back when the kernel got to them
+        j.channel.force(true);
+        j.channel.close();
+    }
+
+    /**
+     * Flushes and closes every journal still open; sessions appending afterwards record nothing.
+     * The last flush runs here, so only once the writer thread has stopped: two flushes at once
+     * would copy into the same windows.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5_000);
+            if (writer.isAlive()) {
+                // stuck in a slow copy: that journal fails, and the writer stops before the next
+                writer.interrupt();
+                writer.join(5_000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            LOG.error("Journal writer did not stop; " + open.size() + " journals left unflushed");
+            return;
+        }
+        for (GameJournal j : open) j.close();
+        flushAll();
+    }
+}
@@ -0,0 +1,289 @@
+package com.doodler.server;
+
+import com.doodler.metrics.AsyncLog;
+import com.doodler.protocol.Frames;
+import com.doodler.protocol.StrokeBatch;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single selector thread for every socket. Complete lines are handed to a per-connection serial
+ * queue on a virtual-thread executor, so session code (which may still block on the DB) never
+ * stalls the selector. Each connection's {@link OutboundQueue} is drained by the selector when
+ * the socket is writable, by copying the shared frames into a pooled socket buffer.
+ */
+public class NioEngine implements ConnectionEngine {
+    static final int MAX_LINE = 64 * 1024;
+    static final int WRITE_BUF = 16 * 1024;
+    private static final AsyncLog LOG = AsyncLog.get();
+
+    private final ServerMain server;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Queue<Conn> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuf = ByteBuffer.allocateDirect(64 * 1024);
+    // what readBuf inflates to, on connections that negotiated deflate
+    private final ByteBuffer inflated = ByteBuffer.allocate(64 * 1024);
+    private volatile Selector selector;
+    private volatile boolean running = true;
+
+    public NioEngine(ServerMain server) { this.server = server; }
+
+    @Override
+    public void serve(int port) throws IOException {
+        selector = Selector.open();
+        try (ServerSocketChannel ss = ServerSocketChannel.open()) {
+            ss.bind(new InetSocketAddress(port), 1024);
+            ss.configureBlocking(false);
+            ss.register(selector, SelectionKey.OP_ACCEPT);
+            while (running) {
+                selector.select();
+                Conn c;
+                while ((c = pendingWrites.poll()) != null) c.flush();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept(ss);
+                    else {
+                        Conn conn = (Conn) key.attachment();
+                        if (key.isReadable()) conn.read();
+                        if (key.isValid() && key.isWritable()) conn.flush();
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey k : selector.keys()) {
+                if (k.attachment() instanceof Conn conn) conn.close();
+            }
+            Conn c;
+            while ((c = pendingWrites.poll()) != null) c.flush();
+            selector.close();
+            workers.shutdown();
+        }
+    }
+
+    private void accept(ServerSocketChannel ss) throws IOException {
+        SocketChannel ch;
+        while ((ch = ss.accept()) != null) {
+            ServerMetrics.ACCEPTED.increment();
+            ch.configureBlocking(false);
+            ch.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+            Conn conn = new Conn(ch);
+            conn.key = ch.register(selector, SelectionKey.OP_READ, conn);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (selector != null) selector.wakeup();
+    }
+
+    private final class Conn implements Transport {
+        final SocketChannel ch;
+        SelectionKey key;
+        private byte[] partial = new byte[0];
+        private int partialLen;
+        private final OutboundQueue outbound = new OutboundQueue(this::scheduleFlush, this::close);
+        // selector thread only: socket buffer, the part of it (or of a large frame) left to write
+        private SharedFrame wbuf, large;
+        private ByteBuffer pending;
+        private volatile boolean readFrames;
+        // set by the worker that handles JOIN, before the PROTO line is queued; used on the selector thread
+        private volatile StreamCompression.Out deflate;
+        private volatile StreamCompression.In inflate;
+        private Frames.Decoder decoder;
+        private String caps;
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // inbound lines run one at a time, in order, off the selector thread
+        private final Queue<Runnable> inbound = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private ClientHandler handler;
+
+        Conn(SocketChannel ch) { this.ch = ch; }
+
+        void read() {
+            if (closed.get()) return;
+            readBuf.clear();
+            int n;
+            try { n = ch.read(readBuf); } catch (IOException e) { n = -1; }
+            if (n < 0) { close(); return; }
+            readBuf.flip();
+            StreamCompression.In in = inflate;
+            if (in == null) { consume(readBuf); return; }
+            try {
+                in.inflate(readBuf, inflated, this::consume);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void consume(ByteBuffer buf) {
+            if (readFrames) { readFrames(buf); return; }
+            while (buf.hasRemaining()) {
+                byte b = buf.get();
+                if (b == '\n') {
+                    int len = partialLen > 0 && partial[partialLen - 1] == '\r' ? partialLen - 1 : partialLen;
+                    String line = new String(partial, 0, len, StandardCharsets.UTF_8);
+                    partialLen = 0;
+                    dispatch(() -> onLine(line));
+                } else {
+                    if (partialLen == MAX_LINE) { close(); return; }
+                    if (partialLen == partial.length) partial = Arrays.copyOf(partial, Math.max(128, partialLen * 2));
+                    partial[partialLen++] = b;
+                }
+            }
+            // idle connections keep no line buffer around
+            if (partialLen == 0 && partial.length > 128) partial = new byte[0];
+        }
+
+        private void readFrames(ByteBuffer buf) {
+            if (decoder == null) decoder = new Frames.Decoder();
+            try {
+                decoder.feed(buf, new Frames.Handler() {
+                    @Override public void onText(String line) { dispatch(() -> onLine(line)); }
+
+                    @Override public void onStroke(StrokeBatch s) {
+                        dispatch(() -> { if (!closed.get()) handler.onStroke(s); });
+                    }
+                });
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void onLine(String line) {
+            // lines read before the close still count: a final LEAVE means the seat is not held
+            if (closed.get() && handler == null) return;
+            if (handler == null) {
+                if (caps == null && line.startsWith(Frames.CAPS_PREFIX)) {
+                    caps = line.substring(Frames.CAPS_PREFIX.length());
+                    return;
+                }
+                // a rejected join has already closed the transport
+                handler = server.join(line, caps, this);
+            } else if (!handler.handleLine(line)) {
+                close();
+            }
+        }
+
+        private void dispatch(Runnable r) {
+            inbound.add(r);
+            if (draining.compareAndSet(false, true)) workers.execute(this::drainInbound);
+        }
+
+        private void drainInbound() {
+            do {
+                Runnable r;
+                while ((r = inbound.poll()) != null) {
+                    try { r.run(); } catch (RuntimeException e) { LOG.error("Connection " + remoteAddress() + " handler failed: " + e); }
+                }
+                draining.set(false);
+            } while (!inbound.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        @Override
+        public OutboundQueue outbound() { return outbound; }
+
+        @Override
+        public void switchToFrames() { readFrames = true; }
+
+        @Override
+        public void switchToDeflate(int level, int plainBytes) {
+            deflate = new StreamCompression.Out(level, plainBytes);
+            inflate = new StreamCompression.In();
+        }
+
+        private ByteBuffer deflated(ByteBuffer b) {
+            StreamCompression.Out d = deflate;
+            return d != null ? d.deflate(b) : b;
+        }
+
+        /** Called by the queue when it goes non-empty; the selector thread does the writing. */
+        private void scheduleFlush() {
+            if (writeScheduled.compareAndSet(false, true)) {
+                pendingWrites.add(this);
+                selector.wakeup();
+            }
+        }
+
+        /** Selector thread only. */
+        void flush() {
+            if (closed.get()) { releaseBuffers(); return; }
+            try {
+                do {
+                    while (true) {
+                        if (pending != null) {
+                            ch.write(pending);
+                            if (pending.hasRemaining()) {
+                                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                                return;
+                            }
+                            pending = null;
+                            if (large != null) { large.release(); large = null; }
+                        }
+                        if (wbuf == null) wbuf = BufferPool.acquire(WRITE_BUF, SharedFrame.TEXT);
+                        ByteBuffer b = wbuf.buf;
+                        b.clear();
+                        large = outbound.fill(b);
+                        if (large != null) { pending = deflated(large.buf.duplicate()); continue; }
+                        if (b.position() == 0) break;
+                        pending = deflated(b.flip());
+                    }
+                    // idle connections hand their socket buffer back to the pool
+                    wbuf.release();
+                    wbuf = null;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    writeScheduled.set(false);
+                } while (outbound.depth() > 0 && writeScheduled.compareAndSet(false, true));
+                if (outbound.isClosed()) close();
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        /**
+         * Selector thread only: the socket buffer, a half-written large frame and the codecs are
+         * only used there, so they are freed there too once the connection is closed.
+         */
+        private void releaseBuffers() {
+            pending = null;
+            if (wbuf != null) { wbuf.release(); wbuf = null; }
+            if (large != null) { large.release(); large = null; }
+            if (deflate != null) { deflate.end(); deflate = null; }
+            if (inflate != null) { inflate.end(); inflate = null; }
+        }
+
+        @Override
+        public void closeGracefully() {
+            outbound.finish();
+            scheduleFlush();
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            outbound.close();
+            if (key != null) key.cancel();
+            try { ch.close(); } catch (IOException ignored) {}
+            dispatch(() -> { if (handler != null) handler.disconnected(this); });
+            // a close mid-write may leave pooled buffers behind: the selector hands them back
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        @Override
+        public String remoteAddress() {
+            try { return String.valueOf(ch.getRemoteAddress()); } catch (IOException e) { return "?"; }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.doodler.server;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.*;
+
+/**
+ * Bounded per-client outbound queue of shared, already-encoded frames. Game code only ever
+ * offers to it and never blocks on a socket; the transport drains it on its own writer (a writer
+ * thread, or the NIO selector) by copying frames into its socket buffer with {@link #fill}.
+ * The queue owns one reference to every frame it holds and releases it once copied or dropped.
+ */
+public class OutboundQueue {
+    static final int CAPACITY = Integer.getInteger("doodler.outbound.capacity", 1024);
+    static final List<OverflowPolicy> POLICIES =
+            OverflowPolicy.parse(System.getProperty("doodler.outbound.policy", "coalesce-time,drop-draw,disconnect"));
+
+    // server-wide totals, across every client
+    static final LongAdder DROPPED = new LongAdder();
+    static final LongAdder COALESCED = new LongAdder();
+    static final LongAdder OVERFLOW_DISCONNECTS = new LongAdder();
+    static final LongAccumulator MAX_DEPTH = new LongAccumulator(Math::max, 0);
+
+    private final ArrayDeque<SharedFrame> q = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final int capacity;
+    private final List<OverflowPolicy> policies;
+    private final Runnable onReady;
+    private final Runnable onOverflow;
+    private boolean closed;
+    // when set, frames leaving the queue are kept for a resume instead of released
+    private ResumeBuffer history;
+    // frames queued before recordInto (PROTO): they leave the queue unnumbered
+    private int unrecorded;
+    private int maxDepth;
+    private long dropped, coalesced;
+
+    /**
+     * @param onReady    called (outside the lock) when the queue goes from empty to non-empty
+     * @param onOverflow called (outside the lock) when the DISCONNECT policy fires
+     */
+    public OutboundQueue(Runnable onReady, Runnable onOverflow) {
+        this(CAPACITY, POLICIES, onReady, onOverflow);
+    }
+
+    public OutboundQueue(int capacity, List<OverflowPolicy> policies, Runnable onReady, Runnable onOverflow) {
+        this.capacity = capacity; this.policies = policies; this.onReady = onReady; this.onOverflow = onOverflow;
+    }
+
+    /**
+     * Keeps every frame taken off this queue from now on, see {@link ResumeBuffer}. Frames
+     * already queued (the PROTO line, which the client reads before it starts counting) are
+     * still sent but take no sequence number.
+     */
+    void recordInto(ResumeBuffer history) {
+        lock.lock();
+        try { this.history = history; unrecorded = q.size(); } finally { lock.unlock(); }
+    }
+
+    /** Whether the frame leaving the head of the queue gets a sequence number. */
+    private boolean numbered() {
+        if (unrecorded == 0) return history != null;
+        unrecorded--;
+        return false;
+    }
+
+    /** A frame left the queue for the socket (or for a socket that just died). */
+    private void sent(SharedFrame f) {
+        if (numbered()) history.record(f); else f.release();
+    }
+
+    /** Policy dropped the queued frame at {@code index}. */
+    private void removed(int index) {
+        if (index < unrecorded) unrecorded--;
+    }
+
+    /**
+     * Takes over the caller's reference to {@code frame} if it returns true. Returns false if the
+     * frame was not queued (queue closed, or dropped by policy); the caller still owns it then.
+     */
+    boolean offer(SharedFrame frame) {
+        boolean wake, overflow = false, queued = false;
+        lock.lock();
+        try {
+            if (closed) return false;
+            if (q.size() >= capacity) {
+                for (OverflowPolicy p : policies) {
+                    if (p == OverflowPolicy.DISCONNECT) { overflow = true; break; }
+                    if (makeRoom(p, frame)) break;
+                }
+            }
+            wake = q.isEmpty();
+            if (!overflow && q.size() < capacity) {
+                q.add(frame);
+                queued = true;
+                if (q.size() > maxDepth) { maxDepth = q.size(); MAX_DEPTH.accumulate(maxDepth); }
+                notEmpty.signal();
+            } else if (!overflow) {
+                dropped++; DROPPED.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (overflow) { OVERFLOW_DISCONNECTS.increment(); onOverflow.run(); }
+        else if (queued && wake) onReady.run();
+        return queued;
+    }
+
+    private boolean makeRoom(OverflowPolicy p, SharedFrame incoming) {
+        int before = q.size();
+        if (p == OverflowPolicy.COALESCE_TIME) {
+            // the newest tick (queued or incoming) wins; every older one is stale
+            boolean keepLast = incoming.kind != SharedFrame.TIME;
+            Iterator<SharedFrame> it = q.descendingIterator();
+            for (int i = q.size() - 1; it.hasNext(); i--) {
+                SharedFrame f = it.next();
+                if (f.kind == SharedFrame.TIME) {
+                    if (keepLast) keepLast = false; else { it.remove(); f.release(); removed(i); }
+                }
+            }
+            coalesced += before - q.size(); COALESCED.add(before - q.size());
+        } else if (p == OverflowPolicy.DROP_DRAW) {
+            Iterator<SharedFrame> it = q.iterator();
+            // drop the oldest quarter of the queued points rather than one per offer
+            int budget = Math.max(1, capacity / 4);
+            for (int i = 0; it.hasNext() && budget > 0; i++) {
+                SharedFrame f = it.next();
+                if (f.kind == SharedFrame.DRAW) { it.remove(); f.release(); removed(i--); budget--; }
+            }
+            dropped += before - q.size(); DROPPED.add(before - q.size());
+        }
+        return q.size() < before;
+    }
+
+    /**
+     * Copies queued frames into {@code dst} while they fit, releasing each one. If the head
+     * frame is larger than an empty {@code dst} it is dequeued and returned instead; the caller
+     * then writes it directly and releases it. Returns null otherwise.
+     */
+    SharedFrame fill(ByteBuffer dst) {
+        lock.lock();
+        try {
+            SharedFrame f;
+            while ((f = q.peek()) != null) {
+                int len = f.length();
+                if (len > dst.remaining()) {
+                    if (dst.position() == 0) {
+                        if (numbered()) history.record(f.retain());
+                        return q.poll();
+                    }
+                    break;
+                }
+                // absolute bulk copy: the shared buffer's position is never touched
+                dst.put(dst.position(), f.buf, 0, len);
+                dst.position(dst.position() + len);
+                q.poll();
+                sent(f);
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Blocks until something is queued; returns false once the queue is closed and empty. */
+    boolean await() throws InterruptedException {
+        lock.lock();
+        try {
+            while (q.isEmpty() && !closed) notEmpty.await(30, TimeUnit.SECONDS);
+            return !q.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops anything still queued and wakes the writer so it can exit. With a resume buffer the
+     * queued frames count as sent-and-lost, so a resumed connection gets them again.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            SharedFrame f;
+            while ((f = q.poll()) != null) sent(f);
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Refuses new messages but lets the writer finish what is already queued. */
+    public void finish() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try { return closed; } finally { lock.unlock(); }
+    }
+
+    public int depth() {
+        lock.lock();
+        try { return q.size(); } finally { lock.unlock(); }
+    }
+
+    public int maxDepth() {
+        lock.lock();
+        try { return maxDepth; } finally { lock.unlock(); }
+    }
+
+    public String stats() {
+        lock.lock();
+        try {
+            return "depth=" + q.size() + " max=" + maxDepth + " dropped=" + dropped + " coalesced=" + coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Server-wide totals across every client's queue. */
+    public static String globalStats() {
+        return "maxDepth=" + MAX_DEPTH.get() + " dropped=" + DROPPED.sum() + " coalesced=" + COALESCED.sum()
+                + " overflowDisconnects=" + OVERFLOW_DISCONNECTS.sum();
+    }
+}
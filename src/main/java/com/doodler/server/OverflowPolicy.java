@@ -0,0 +1,25 @@
+package com.doodler.server;
+
+import java.util.*;
+
+/**
+ * What an {@link OutboundQueue} does when a message arrives and the queue is full. Policies are
+ * tried in the configured order until one of them makes room.
+ */
+public enum OverflowPolicy {
+    /** Keep only the newest queued clock message (DEADLINE/CLOCK): each one carries the whole deadline. */
+    COALESCE_TIME,
+    /** Drop the oldest queued DRAW points; the receiver just sees a coarser line. */
+    DROP_DRAW,
+    /** Give up on the client and close its connection. */
+    DISCONNECT;
+
+    /** Parses e.g. "coalesce-time,drop-draw,disconnect". */
+    public static List<OverflowPolicy> parse(String spec) {
+        List<OverflowPolicy> out = new ArrayList<>();
+        for (String s : spec.split(",")) {
+            if (!s.isBlank()) out.add(valueOf(s.trim().replace('-', '_').toUpperCase()));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,64 @@
+package com.doodler.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last frames handed to one player's socket, so that a reconnect can pick up where the old
+ * connection stopped. Frames are numbered implicitly: the n-th frame taken off the player's
+ * outbound queue is sequence n, and the client counts the frames it reads, so nothing is added
+ * to the wire. Holds references to the already-shared encoded frames, not copies.
+ */
+final class ResumeBuffer {
+    static final int FRAMES = Integer.getInteger("doodler.resume.frames", 256);
+
+    private final SharedFrame[] ring;
+    // sequence number of the newest recorded frame; frame n lives at ring[(n - 1) % length]
+    private long seq;
+
+    ResumeBuffer(int frames) { ring = new SharedFrame[frames]; }
+
+    /** Takes over the caller's reference to {@code f} as the next frame in sequence. */
+    synchronized void record(SharedFrame f) {
+        int i = (int) (seq++ % ring.length);
+        if (ring[i] != null) ring[i].release();
+        ring[i] = f;
+    }
+
+    synchronized long seq() { return seq; }
+
+    /**
+     * Rewinds to {@code received} and returns the frames after it, each with a reference the
+     * caller now owns; re-queued, they are recorded again under the same numbers. Returns null
+     * (and rewinds nothing) if some of them have already been overwritten.
+     */
+    synchronized List<SharedFrame> rewind(long received) {
+        if (received > seq || seq - received > ring.length) return null;
+        List<SharedFrame> missed = new ArrayList<>((int) (seq - received));
+        for (long n = received + 1; n <= seq; n++) {
+            int i = (int) ((n - 1) % ring.length);
+            missed.add(ring[i]);
+            ring[i] = null;
+        }
+        seq = received;
+        return missed;
+    }
+
+    /** Starts a fresh numbering (after a full resync the client counts from zero again). */
+    synchronized void reset() {
+        releaseAll();
+        seq = 0;
+    }
+
+    synchronized int size() {
+        int n = 0;
+        for (SharedFrame f : ring) if (f != null) n++;
+        return n;
+    }
+
+    synchronized void releaseAll() {
+        for (int i = 0; i < ring.length; i++) {
+            if (ring[i] != null) { ring[i].release(); ring[i] = null; }
+        }
+    }
+}
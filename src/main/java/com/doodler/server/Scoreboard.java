@@ -0,0 +1,83 @@
+package com.doodler.server;
+
+import com.doodler.protocol.Message;
+
+import java.util.*;
+
+/**
+ * Authoritative per-session scores, keyed by the session-local player id. Entries are kept in
+ * descending score order (ties by join order) and moved up by insertion on each award, so SCORES
+ * never needs a sort or a DB read. The DB copy is written behind and only checked by
+ * {@link #reconcile}.
+ */
+final class Scoreboard {
+    // rank order: ids[r], scores[r], names[r]; rank[id] is the inverse
+    private int[] ids = new int[8];
+    private int[] scores = new int[8];
+    private String[] names = new String[8];
+    private int[] rank = new int[16];
+    private int size;
+
+    synchronized void add(int playerId, String username) {
+        if (playerId >= rank.length) rank = Arrays.copyOf(rank, Math.max(playerId + 1, rank.length * 2));
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+        // new players start at 0, which is never above anyone already on the board
+        ids[size] = playerId;
+        scores[size] = 0;
+        names[size] = username;
+        rank[playerId] = size++;
+    }
+
+    /** Adds points and moves the player up past everyone they now outscore. */
+    synchronized int award(int playerId, int points) {
+        int r = rank[playerId];
+        int score = scores[r] + points;
+        String name = names[r];
+        while (r > 0 && scores[r - 1] < score) {
+            ids[r] = ids[r - 1];
+            scores[r] = scores[r - 1];
+            names[r] = names[r - 1];
+            rank[ids[r]] = r;
+            r--;
+        }
+        ids[r] = playerId;
+        scores[r] = score;
+        names[r] = name;
+        rank[playerId] = r;
+        return score;
+    }
+
+    synchronized int score(int playerId) { return scores[rank[playerId]]; }
+
+    synchronized int size() { return size; }
+
+    /** Appends {@code name,score;;} per player, highest first: the SCORES wire format. */
+    synchronized StringBuilder appendTo(StringBuilder sb) {
+        for (int r = 0; r < size; r++) sb.append(Message.escape(names[r])).append(',').append(scores[r]).append(";;");
+        return sb;
+    }
+
+    /** Totals per username, summed like the DB view would be if two players share a name. */
+    synchronized Map<String, Integer> totals() {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (int r = 0; r < size; r++) out.merge(names[r], scores[r], Integer::sum);
+        return out;
+    }
+
+    /** Describes every username whose persisted total differs from memory; empty when they agree. */
+    List<String> reconcile(Map<String, Integer> persisted) {
+        Map<String, Integer> mine = totals();
+        List<String> diffs = new ArrayList<>();
+        Set<String> all = new LinkedHashSet<>(mine.keySet());
+        all.addAll(persisted.keySet());
+        for (String u : all) {
+            int a = mine.getOrDefault(u, 0), b = persisted.getOrDefault(u, 0);
+            if (a != b) diffs.add(u + " memory=" + a + " db=" + b);
+        }
+        return diffs;
+    }
+}
@@ -0,0 +1,48 @@
+package com.doodler.server;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Properties;
+
+/**
+ * Server settings by dotted key, e.g. {@code db.url}. Lookup order: system property
+ * {@code doodler.db.url}, environment variable {@code DOODLER_DB_URL}, then the properties file
+ * named by {@code -Ddoodler.config} / {@code DOODLER_CONFIG} (default ./doodler.properties).
+ */
+public final class ServerConfig {
+    private final Properties file = new Properties();
+
+    private ServerConfig() {}
+
+    public static ServerConfig load() throws IOException {
+        ServerConfig c = new ServerConfig();
+        String path = System.getProperty("doodler.config", System.getenv().getOrDefault("DOODLER_CONFIG", "doodler.properties"));
+        Path p = Paths.get(path);
+        if (Files.isReadable(p)) {
+            try (Reader r = Files.newBufferedReader(p)) { c.file.load(r); }
+            System.out.println("Loaded config from " + p.toAbsolutePath());
+        }
+        return c;
+    }
+
+    public String get(String key, String def) {
+        String v = System.getProperty("doodler." + key);
+        if (v == null) v = System.getenv("DOODLER_" + key.toUpperCase().replace('.', '_'));
+        if (v == null) v = file.getProperty(key);
+        return v != null ? v : def;
+    }
+
+    public int getInt(String key, int def) { return Integer.parseInt(get(key, String.valueOf(def))); }
+
+    public long getLong(String key, long def) { return Long.parseLong(get(key, String.valueOf(def))); }
+
+    /** A required setting; fails startup with a message naming every place it can come from. */
+    public String require(String key) {
+        String v = get(key, null);
+        if (v == null) {
+            throw new IllegalStateException("Missing setting " + key + " (-Ddoodler." + key + ", DOODLER_"
+                    + key.toUpperCase().replace('.', '_') + " or " + key + "= in the config file)");
+        }
+        return v;
+    }
+}
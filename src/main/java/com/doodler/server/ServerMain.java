@@ -1,58 +1,286 @@
 package com.doodler.server;
 
+import com.doodler.metrics.AsyncLog;
+import com.doodler.metrics.MetricsHttpServer;
+import com.doodler.metrics.MetricsJmx;
+import com.doodler.protocol.Compression;
+import com.doodler.protocol.Frames;
+import com.doodler.protocol.Message;
+import com.doodler.protocol.Op;
+
 import java.io.*;
-import java.net.*;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 
 public class ServerMain {
     public static final int PORT = 55555;
-    private final Map<String, GameSession> sessions = new ConcurrentHashMap<>();
-    private final DBManager db;
+    private final WriteBehindStore db;
+    // one wheel drives every session's countdown, round transitions and idle timeout
+    private final TimerWheel timers = new TimerWheel("timer-wheel", 10, TimeUnit.MILLISECONDS, 1024,
+            Executors.newVirtualThreadPerTaskExecutor());
+
+    // every session's state is owned by one of these threads
+    private final SessionLoops loops = new SessionLoops(SessionLoops.LOOPS);
+
+    // bounded; sessions remove themselves once closed as idle
+    private final SessionRegistry sessions;
+    // deflate level for clients that offer it (compression=deflate), -1 = never
+    int deflateLevel = -1;
+    int port = PORT;
+    // null when this server runs alone
+    private volatile Cluster cluster;
+    // null unless journal.dir is set
+    private volatile JournalWriter journals;
 
-    public ServerMain(DBManager db) { this.db = db; }
+    public ServerMain(DBManager db) { this(db, WordBank.builtIn(), "en"); }
+
+    /** Every room draws its secrets from {@code wordList} of {@code words}, e.g. "en" or "en/animals". */
+    public ServerMain(DBManager db, WordBank words, String wordList) {
+        words.cursor(wordList); // an unknown list fails here, not at the first round
+        this.db = new WriteBehindStore(db);
+        this.sessions = new SessionRegistry(SessionRegistry.MAX_SESSIONS,
+                (code, onClose) -> new GameSession(code, this.db, timers, loops, words.cursor(wordList), journal(code), onClose));
+        registerGauges();
+        ServerMetrics.REGISTRY.gauge("doodler_words", "Words in the loaded word bank", words::size);
+        ServerMetrics.REGISTRY.gauge("doodler_words_bytes", "Heap held by the packed word bank", words::bytes);
+    }
 
     public static void main(String[] args) throws Exception {
-        // DB config - change if needed
-        String url = "jdbc:mysql://localhost:3306/doodlerdb?serverTimezone=UTC";
-        DBManager db = new DBManager(url, "root", "Harshithaa@mysql08");
-        ServerMain m = new ServerMain(db);
-        m.start();
-    }
-
-    public void start() throws IOException {
-        ServerSocket ss = new ServerSocket(PORT);
-        System.out.println("Server listening on port " + PORT);
-        while (true) {
-            Socket s = ss.accept();
-            new Thread(() -> handleClient(s)).start();
+        // db.url / db.user / db.password / db.pool.* from doodler.properties or DOODLER_DB_* env vars
+        ServerConfig cfg = ServerConfig.load();
+        DBManager db = new DBManager(ConnectionPool.fromConfig(cfg).warmUp());
+        // words.dir replaces the built-in lists with <dir>/<language>/<category>.txt
+        String wordsDir = cfg.get("words.dir", null);
+        long t0 = System.nanoTime();
+        WordBank words = wordsDir == null ? WordBank.builtIn() : WordBank.load(Paths.get(wordsDir));
+        System.out.println("Word bank: " + words.size() + " words in " + words.lists().size() + " lists, "
+                + words.bytes() / 1024 + " KB, loaded in " + (System.nanoTime() - t0) / 1_000_000 + " ms");
+        ServerMain m = new ServerMain(db, words, cfg.get("words.list", "en"));
+        m.port = cfg.getInt("port", PORT);
+        // off by default: it trades CPU and per-connection memory for bandwidth
+        if (Compression.DEFLATE.equals(cfg.get("compression", "off"))) {
+            m.deflateLevel = cfg.getInt("compression.level", 6);
+        }
+        // pending score/player writes reach MySQL before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            m.db.close();
+            System.out.println("DB write-behind closed: " + m.db.stats());
+        }, "db-flush"));
+        // one journal file per session, for JournalTool replay/trace
+        String journalDir = cfg.get("journal.dir", null);
+        if (journalDir != null) m.journalTo(Paths.get(journalDir));
+        // several nodes sharing cluster.dir route each room to one of them
+        String clusterDir = cfg.get("cluster.dir", null);
+        if (clusterDir != null) {
+            long heartbeat = cfg.getLong("cluster.heartbeatMs", 1000);
+            m.joinCluster(new FileDirectory(Paths.get(clusterDir), heartbeat * 3),
+                    cfg.get("cluster.address", "localhost:" + m.port), heartbeat);
         }
+        // Prometheus text on http://127.0.0.1:9100/metrics unless metrics.port=0; the same values over JMX
+        int metricsPort = cfg.getInt("metrics.port", 9100);
+        if (metricsPort > 0) {
+            MetricsHttpServer http = MetricsHttpServer.start(ServerMetrics.REGISTRY,
+                    new InetSocketAddress(cfg.get("metrics.bind", "127.0.0.1"), metricsPort));
+            http.addText("/sessions", () -> m.sessions.describe(100));
+            if (m.cluster != null) {
+                http.addText("/cluster", m.cluster::describe);
+                // POST only: moves every room here to the other nodes
+                http.addAction("/drain", m::drain);
+            }
+            System.out.println("Metrics on http://" + http.address().getHostString() + ":" + metricsPort + "/metrics");
+        }
+        MetricsJmx.register(ServerMetrics.REGISTRY, "com.doodler:type=Metrics");
+        // --engine=nio|virtual|platform (default: virtual threads)
+        String engine = System.getProperty("doodler.engine", "virtual");
+        for (String a : args) if (a.startsWith("--engine=")) engine = a.substring(9);
+        m.start(engine);
+    }
+
+    /**
+     * Makes this server one node of a cluster: it publishes its status to {@code directory}
+     * every {@code heartbeatMillis} and redirects JOINs for rooms that belong elsewhere.
+     * {@code address} is the host:port clients are sent to when the room belongs here.
+     */
+    public void joinCluster(ClusterDirectory directory, String address, long heartbeatMillis) {
+        Cluster c = new Cluster(directory, address, sessions);
+        c.refresh();
+        timers.scheduleAtFixedRate(c::refresh, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(c::close, "cluster-leave"));
+        cluster = c;
+    }
+
+    /** Records every session created from now on to its own journal file under {@code dir}. */
+    public void journalTo(Path dir) throws IOException {
+        JournalWriter w = new JournalWriter(dir);
+        Runtime.getRuntime().addShutdownHook(new Thread(w::close, "journal-flush"));
+        journals = w;
+    }
+
+    private GameJournal journal(String code) {
+        JournalWriter w = journals;
+        return w == null ? null : w.open(code);
+    }
+
+    /** Stops taking new rooms and moves the ones here to other nodes; see {@link Cluster#drain}. */
+    public String drain() {
+        Cluster c = cluster;
+        return c == null ? "not in a cluster\n" : c.drain();
+    }
+
+    /** Scrape-time views of this server's state; a later ServerMain (benchmarks) takes them over. */
+    private void registerGauges() {
+        var r = ServerMetrics.REGISTRY;
+        r.gauge("doodler_sessions", "Sessions in the registry", sessions::size);
+        for (GameSession.State st : GameSession.State.values()) {
+            r.gauge("doodler_sessions_by_state", "Sessions per lifecycle state", () -> sessions.count(st), "state", st.name());
+        }
+        r.counter("doodler_sessions_created_total", "Sessions created", sessions.created::sum);
+        r.counter("doodler_sessions_evicted_total", "Sessions closed as idle and dropped", sessions.evicted::sum);
+        r.counter("doodler_sessions_rejected_total", "JOINs refused because the registry was full", sessions.rejected::sum);
+        r.gauge("doodler_session_memory_bytes", "Estimated heap held by all sessions", sessions::memoryEstimate);
+        r.gauge("doodler_client_queue_depth_max", "Deepest outbound queue among joined clients", () -> {
+            int[] max = {0};
+            for (GameSession s : sessions.sessions()) s.queueDepths(d -> max[0] = Math.max(max[0], d));
+            return max[0];
+        });
+        r.gauge("doodler_client_queue_depth_sum", "Frames waiting in all outbound queues", () -> {
+            long[] sum = {0};
+            for (GameSession s : sessions.sessions()) s.queueDepths(d -> sum[0] += d);
+            return sum[0];
+        });
+        r.gauge("doodler_db_queue_depth", "Writes waiting for the write-behind thread", db::queued);
+        r.counter("doodler_db_writes_total", "Writes applied by the write-behind thread", db.written::sum);
+        r.counter("doodler_db_writes_dropped_total", "Writes dropped on a full or closed queue", db.dropped::sum);
+        r.counter("doodler_db_writes_failed_total", "Writes the database refused after retries", db.failed::sum);
+        r.counter("doodler_log_dropped_total", "Console lines dropped on a full log queue", AsyncLog.get()::dropped);
+    }
+
+    public void start(String engineMode) throws IOException { start(engineMode, port); }
+
+    public void start(String engineMode, int port) throws IOException {
+        this.port = port;
+        ConnectionEngine engine = ConnectionEngine.create(engineMode, this);
+        System.out.println("Server listening on port " + port + " (" + engineMode + " engine)");
+        engine.serve(port);
     }
 
-    private void handleClient(Socket sock) {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
-             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(sock.getOutputStream()))) {
+    /**
+     * Handles the JOIN (or RESUME) line of a connection, plus the optional CAPS line sent before
+     * it. Returns the joined client, or null after rejecting (and closing) the connection.
+     */
+    ClientHandler join(String line, String caps, Transport t) {
+        try {
+            Message m = line == null ? null : new Message().parse(line);
+            if (m != null && m.op() == Op.RESUME) return resume(m, caps, t);
+            if (m == null || m.op() != Op.JOIN || m.fields() < 3) {
+                reject(t, "ERROR:Bad join"); return null;
+            }
+            String code = m.str(1);
+            // the rest of the line, so an unescaped ':' from an older client stays in the name
+            String username = Message.unescape(m.rest(2));
+
+            // another node holds or owns the room; before PROTO, so every client reads it as a line
+            String elsewhere = route(code);
+            if (elsewhere != null) {
+                ServerMetrics.REDIRECT_JOIN.increment();
+                reject(t, "REDIRECT:" + elsewhere); return null;
+            }
 
-            String line = in.readLine();
-            if (line == null || !line.startsWith("JOIN:")) {
-                out.write("ERROR:Bad join\n"); out.flush(); sock.close(); return;
+            // refused before PROTO, so the client still reads the error as a plain line
+            GameSession session = sessions.acquire(code);
+            if (session == null) {
+                reject(t, "ERROR:Server full, try again later"); return null;
             }
-            String[] parts = line.split(":", 3);
-            String code = parts[1];
-            String username = parts[2];
-
-            GameSession session = sessions.computeIfAbsent(code, c -> {
-                try {
-                    System.out.println("Creating session " + c);
-                    return new GameSession(c, db);
-                } catch (Exception ex) { throw new RuntimeException(ex); }
-            });
-
-            ClientHandler ch = new ClientHandler(sock, in, out, username, session);
-            session.addClient(ch);
-            ch.listen();
+
+            // first player of a new room: tell the other nodes before anyone else asks them
+            Cluster c = cluster;
+            if (c != null && session.clientCount() == 0) c.opened();
+
+            boolean binary = negotiate(caps, t);
+
+            ClientHandler ch;
+            while (true) {
+                ch = new ClientHandler(t, username, session, binary);
+                if (session.addClient(ch)) break;
+                // closed as idle between lookup and join; it has already left the registry
+                sessions.remove(session);
+                session = sessions.acquire(code);
+                if (session == null) {
+                    // PROTO may be out already, so no error line: just the close
+                    t.close(); return null;
+                }
+            }
+            ServerMetrics.CONNECTED.increment();
+            ch.send("INFO:Welcome " + username);
+            // lets the client come back as this player if the connection drops
+            if (ch.history != null) ch.send("TOKEN:" + ch.resumeToken);
+            return ch;
         } catch (Exception e) {
             e.printStackTrace();
+            t.close();
+            return null;
         }
     }
+
+    /** RESUME:code:token:received, sent instead of JOIN by a client whose connection dropped. */
+    private ClientHandler resume(Message m, String caps, Transport t) throws IOException {
+        GameSession session = m.fields() < 4 ? null : sessions.find(m.str(1));
+        long received = m.fields() < 4 ? -1 : m.longField(3);
+        if (session == null || received < 0) {
+            // the room moved while the player was away: they can still join it there
+            String elsewhere = m.fields() < 4 ? null : route(m.str(1));
+            if (elsewhere != null) {
+                ServerMetrics.REDIRECT_JOIN.increment();
+                reject(t, "REDIRECT:" + elsewhere); return null;
+            }
+            reject(t, "ERROR:Resume failed"); return null;
+        }
+        boolean binary = negotiate(caps, t);
+        ClientHandler ch = session.resume(m.str(2), received, t, binary);
+        if (ch == null) {
+            // after PROTO a binary client reads frames, so it only sees the close
+            if (binary) t.close(); else reject(t, "ERROR:Resume failed");
+            return null;
+        }
+        return ch;
+    }
+
+    private String route(String code) {
+        Cluster c = cluster;
+        return c == null ? null : c.route(code);
+    }
+
+    /**
+     * Answers the client's CAPS with PROTO if it offered binary frames, plus deflate if it offered
+     * that too and this deployment allows it. Returns whether the connection uses frames.
+     */
+    private boolean negotiate(String caps, Transport t) {
+        if (!Frames.hasCap(caps, Frames.BINARY_V1)) return false;
+        boolean deflate = deflateLevel >= 0 && Frames.hasCap(caps, Compression.DEFLATE);
+        // reads switch before the client can see PROTO and start sending frames
+        t.switchToFrames();
+        Fanout f = Fanout.text(Frames.PROTO_PREFIX + Frames.BINARY_V1 + (deflate ? "," + Compression.DEFLATE : ""));
+        SharedFrame proto = f.frameFor(false).retain();
+        // and writes before PROTO is queued, so the writer knows where the plain prefix ends
+        if (deflate) t.switchToDeflate(deflateLevel, proto.length());
+        if (!t.outbound().offer(proto)) proto.release();
+        f.release();
+        return true;
+    }
+
+    private static void reject(Transport t, String msg) {
+        sendLine(t, msg);
+        t.closeGracefully();
+    }
+
+    /** Queues a plain text line on a transport that has no ClientHandler (yet). */
+    private static void sendLine(Transport t, String msg) {
+        Fanout f = Fanout.text(msg);
+        SharedFrame line = f.frameFor(false).retain();
+        if (!t.outbound().offer(line)) line.release();
+        f.release();
+    }
 }
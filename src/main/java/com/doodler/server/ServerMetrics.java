@@ -0,0 +1,72 @@
+package com.doodler.server;
+
+import com.doodler.metrics.LatencyHistogram;
+import com.doodler.metrics.MetricsRegistry;
+import com.doodler.protocol.Op;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The server's instruments in one registry, exposed over JMX and /metrics by {@link ServerMain}.
+ * Hot paths hold the instruments directly; per-type counters are registered the first time a
+ * type is seen, so only types that actually flow appear in the output.
+ */
+final class ServerMetrics {
+    static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    private static final LongAdder[] IN = new LongAdder[Op.values().length];
+    private static final LongAdder[] OUT = new LongAdder[Op.values().length];
+
+    static final LatencyHistogram BROADCAST = REGISTRY.histogram("doodler_fanout_seconds",
+            "Time to queue one message for every client in a room", "kind", "text");
+    static final LatencyHistogram DRAW_FANOUT = REGISTRY.histogram("doodler_fanout_seconds",
+            "Time to queue one message for every client in a room", "kind", "stroke");
+    static final LongAdder ACCEPTED = REGISTRY.counter("doodler_connections_accepted_total",
+            "Sockets accepted, joined or not");
+    static final LongAdder CONNECTED = new LongAdder();
+    static final LongAdder DETACHED = REGISTRY.counter("doodler_resume_detached_total",
+            "Connections that dropped without LEAVE, seat held for a resume");
+    static final LongAdder RESUMED_DELTA = REGISTRY.counter("doodler_resume_total",
+            "Players back on a new connection", "replay", "delta");
+    static final LongAdder RESUMED_FULL = REGISTRY.counter("doodler_resume_total",
+            "Players back on a new connection", "replay", "full");
+    static final LongAdder REDIRECT_JOIN = REGISTRY.counter("doodler_cluster_redirects_total",
+            "Clients sent to another node", "reason", "join");
+    static final LongAdder REDIRECT_MIGRATE = REGISTRY.counter("doodler_cluster_redirects_total",
+            "Clients sent to another node", "reason", "drain");
+    static final LongAdder RESUME_EXPIRED = REGISTRY.counter("doodler_resume_expired_total",
+            "Held seats given up after the grace window");
+    static final LongAdder[] GUESSES = new LongAdder[GuessMatcher.Result.values().length];
+
+    static {
+        REGISTRY.gauge("doodler_connections", "Clients currently joined to a session", CONNECTED::sum);
+        REGISTRY.counter("doodler_outbound_dropped_total", "Frames dropped by overflow policies", OutboundQueue.DROPPED::sum);
+        REGISTRY.counter("doodler_outbound_coalesced_total", "Frames merged by overflow policies", OutboundQueue.COALESCED::sum);
+        REGISTRY.counter("doodler_outbound_overflow_disconnects_total", "Clients dropped for a full queue",
+                OutboundQueue.OVERFLOW_DISCONNECTS::sum);
+        for (GuessMatcher.Result r : GuessMatcher.Result.values()) {
+            GUESSES[r.ordinal()] = REGISTRY.counter("doodler_guesses_total", "Guesses from players, by outcome",
+                    "result", r.name().toLowerCase(java.util.Locale.ROOT));
+        }
+    }
+
+    private ServerMetrics() {}
+
+    static void in(Op op) { counter(IN, op, "doodler_messages_in_total", "Messages received from clients, by type").increment(); }
+
+    static void out(Op op) { counter(OUT, op, "doodler_messages_out_total", "Messages queued to clients, by type").increment(); }
+
+    private static LongAdder counter(LongAdder[] byOp, Op op, String name, String help) {
+        LongAdder c = byOp[op.ordinal()];
+        // racing first uses get the same adder back from the registry
+        if (c == null) byOp[op.ordinal()] = c = REGISTRY.counter(name, help, "type", op.name());
+        return c;
+    }
+
+    /** Latency of one DBManager method, in microseconds. */
+    static LatencyHistogram dbCall(String method) {
+        return REGISTRY.histogram("doodler_db_call_seconds", "JDBC call time per DBManager method", "method", method);
+    }
+
+    static void fanout(LatencyHistogram h, long startNanos) { h.record((System.nanoTime() - startNanos) / 1_000); }
+}
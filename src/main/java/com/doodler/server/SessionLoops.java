@@ -0,0 +1,158 @@
+package com.doodler.server;
+
+import com.doodler.metrics.AsyncLog;
+import com.doodler.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed set of event-loop threads that own the sessions' state. Each session gets a
+ * {@link Mailbox}, pinned to one loop by its code; whatever changes the session (a draw, a
+ * guess, a join, a timer) is a command told to that mailbox, and the loop runs a session's
+ * commands one at a time in the order they arrived. Session state therefore needs no locks,
+ * and a busy room only delays the rooms that share its loop, by at most one batch.
+ * <p>
+ * With no loop threads ({@code doodler.session.loops=0}) a mailbox is drained by whichever
+ * thread tells it something while it is idle, still one command at a time.
+ */
+public final class SessionLoops implements AutoCloseable {
+    public static final int LOOPS = Integer.getInteger("doodler.session.loops", Runtime.getRuntime().availableProcessors());
+    // commands one mailbox may run before the loop moves on to the next ready one
+    static final int BATCH = Integer.getInteger("doodler.session.batch", 64);
+    private static final AsyncLog LOG = AsyncLog.get();
+
+    static final LongAdder COMMANDS = ServerMetrics.REGISTRY.counter("doodler_session_commands_total",
+            "Commands run by session event loops");
+    static final LongAdder PENDING = new LongAdder();
+    // commands / drains is the mean batch size
+    static final LongAdder DRAINS = ServerMetrics.REGISTRY.counter("doodler_session_drains_total",
+            "Batches of commands run by session event loops");
+    static final LatencyHistogram DRAIN_TIME = ServerMetrics.REGISTRY.histogram("doodler_session_drain_seconds",
+            "Time to run one batch of a session's commands");
+
+    static {
+        ServerMetrics.REGISTRY.gauge("doodler_session_commands_pending", "Commands waiting in session mailboxes", PENDING::sum);
+    }
+
+    private final Loop[] loops;
+
+    public SessionLoops(int threads) {
+        loops = new Loop[threads];
+        for (int i = 0; i < threads; i++) loops[i] = new Loop("session-loop-" + i);
+    }
+
+    /** A new mailbox on the loop that {@code code} hashes to. */
+    public Mailbox mailbox(String code) {
+        return new Mailbox(loops.length == 0 ? null : loops[Math.floorMod(code.hashCode(), loops.length)]);
+    }
+
+    @Override
+    public void close() {
+        for (Loop l : loops) l.close();
+    }
+
+    /** One thread, and the mailboxes that have commands waiting for it. */
+    private static final class Loop implements Runnable {
+        private final Queue<Mailbox> ready = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private volatile boolean sleeping, closed;
+
+        Loop(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void schedule(Mailbox m) {
+            ready.add(m);
+            if (sleeping) LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                Mailbox m = ready.poll();
+                if (m != null) { m.drain(); continue; }
+                sleeping = true;
+                // re-checked after announcing the sleep, so a schedule() in between is not missed
+                if (ready.isEmpty() && !closed) LockSupport.park(this);
+                sleeping = false;
+            }
+        }
+
+        void close() {
+            closed = true;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * The command queue of one session. Any thread may tell it; only one thread at a time runs
+     * its commands. Commands must not block: they queue frames and schedule timers, nothing more.
+     */
+    public static final class Mailbox {
+        private final Loop loop;
+        private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+        // set while the mailbox is on its loop's ready queue or being drained
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Mailbox(Loop loop) { this.loop = loop; }
+
+        /** Queues {@code command} behind everything told before it; returns at once. */
+        public void tell(Runnable command) {
+            commands.add(command);
+            PENDING.increment();
+            if (scheduled.compareAndSet(false, true)) {
+                if (loop != null) loop.schedule(this);
+                else drain();
+            }
+        }
+
+        /**
+         * Runs {@code command} in turn and waits for its result. Never call it from a command:
+         * the loop would wait for itself.
+         */
+        public <T> T ask(Callable<T> command) throws IOException {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            tell(() -> {
+                try { result.complete(command.call()); } catch (Throwable e) { result.completeExceptionally(e); }
+            });
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException io) throw io;
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
+        }
+
+        private void drain() {
+            do {
+                long start = System.nanoTime();
+                int n = 0;
+                Runnable c;
+                while (n < BATCH && (c = commands.poll()) != null) {
+                    n++;
+                    PENDING.decrement();
+                    try {
+                        c.run();
+                    } catch (Throwable e) {
+                        LOG.error("Session command failed: " + e);
+                    }
+                }
+                COMMANDS.add(n);
+                DRAINS.increment();
+                ServerMetrics.fanout(DRAIN_TIME, start);
+                scheduled.set(false);
+                // more arrived, or the batch ran out: go again, behind the other ready mailboxes
+                if (commands.isEmpty() || !scheduled.compareAndSet(false, true)) return;
+                if (loop != null) { loop.schedule(this); return; }
+            } while (true);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.doodler.server;
+
+import com.doodler.metrics.AsyncLog;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Every live session by room code. Bounded: once {@code doodler.sessions.max} rooms exist, JOINs
+ * for new codes are refused while joins to existing rooms still go through. A session leaves
+ * the registry when it closes (idle eviction in {@link GameSession}), which drops the last
+ * reference to its clients, stroke log and DB refs.
+ */
+final class SessionRegistry {
+    static final int MAX_SESSIONS = Integer.getInteger("doodler.sessions.max", 10_000);
+
+    private final Map<String, GameSession> sessions = new ConcurrentHashMap<>();
+    // reserved inside computeIfAbsent so concurrent creates cannot overshoot the cap
+    private final AtomicInteger count = new AtomicInteger();
+    private final int max;
+    private final BiFunction<String, Consumer<GameSession>, GameSession> factory;
+
+    final LongAdder created = new LongAdder();
+    final LongAdder evicted = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+
+    /** {@code factory} makes a session for a code, given the callback it must run once it has closed. */
+    SessionRegistry(int max, BiFunction<String, Consumer<GameSession>, GameSession> factory) {
+        this.max = max; this.factory = factory;
+    }
+
+    /** The session for {@code code}, created if needed; null if that would exceed the cap. */
+    GameSession acquire(String code) {
+        GameSession[] made = new GameSession[1];
+        GameSession s = sessions.computeIfAbsent(code, c -> {
+            if (count.incrementAndGet() > max) {
+                count.decrementAndGet();
+                return null;
+            }
+            created.increment();
+            AsyncLog.get().info("Creating session " + c);
+            return made[0] = factory.apply(c, this::remove);
+        });
+        // outside the map's lock: starting schedules timers that call back into the session
+        if (made[0] != null) made[0].start();
+        if (s == null) rejected.increment();
+        return s;
+    }
+
+    /** The session for {@code code} if there is one; never creates it. */
+    GameSession find(String code) { return sessions.get(code); }
+
+    /** Forgets a closed session; a no-op if it was already replaced or removed. */
+    void remove(GameSession s) {
+        if (sessions.remove(s.code(), s)) {
+            count.decrementAndGet();
+            evicted.increment();
+        }
+    }
+
+    int size() { return count.get(); }
+
+    Collection<GameSession> sessions() { return sessions.values(); }
+
+    int count(GameSession.State state) {
+        int n = 0;
+        for (GameSession s : sessions.values()) if (s.state() == state) n++;
+        return n;
+    }
+
+    /** Rough heap held by all sessions, see {@link GameSession#memoryEstimate()}. */
+    long memoryEstimate() {
+        long bytes = 0;
+        for (GameSession s : sessions.values()) bytes += s.memoryEstimate();
+        return bytes;
+    }
+
+    /** A session as {@link #describe} saw it; live sessions keep changing while they are sorted. */
+    private record Snapshot(String code, GameSession.State state, int clients, long bytes) {}
+
+    /** One line per session, largest first, at most {@code limit}; for the /sessions page. */
+    String describe(int limit) {
+        List<Snapshot> all = new ArrayList<>(sessions.size());
+        long total = 0;
+        int[] byState = new int[GameSession.State.values().length];
+        for (GameSession s : sessions.values()) {
+            Snapshot snap = new Snapshot(s.code(), s.state(), s.clientCount(), s.memoryEstimate());
+            all.add(snap);
+            total += snap.bytes();
+            byState[snap.state().ordinal()]++;
+        }
+        all.sort(Comparator.comparingLong(Snapshot::bytes).reversed());
+        StringBuilder sb = new StringBuilder();
+        sb.append("sessions=").append(size()).append('/').append(max).append(" created=").append(created.sum())
+                .append(" evicted=").append(evicted.sum()).append(" rejected=").append(rejected.sum())
+                .append(" memoryEstimate=").append(total).append("B\n");
+        for (GameSession.State st : GameSession.State.values()) sb.append(st).append('=').append(byState[st.ordinal()]).append(' ');
+        sb.append('\n');
+        for (Snapshot s : all.subList(0, Math.min(limit, all.size()))) {
+            sb.append(s.code()).append(' ').append(s.state()).append(" clients=").append(s.clients())
+                    .append(" bytes=").append(s.bytes()).append('\n');
+        }
+        return sb.toString();
+    }
+}
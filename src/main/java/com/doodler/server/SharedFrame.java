@@ -0,0 +1,42 @@
+package com.doodler.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An encoded message, written once and then shared read-only by every recipient's outbound
+ * queue. Each queue holds one reference; the last {@link #release()} returns the buffer to the
+ * {@link BufferPool}. Readers must use absolute gets or {@code duplicate()} and never move the
+ * buffer's position.
+ */
+final class SharedFrame {
+    static final byte TEXT = 0, TIME = 1, DRAW = 2;
+
+    final ByteBuffer buf;
+    final int sizeClass;
+    byte kind;
+    private final AtomicInteger refs = new AtomicInteger();
+
+    SharedFrame(ByteBuffer buf, int sizeClass) { this.buf = buf; this.sizeClass = sizeClass; }
+
+    /** Bytes of the encoded message ([0, limit) of {@link #buf}). */
+    int length() { return buf.limit(); }
+
+    SharedFrame retain() {
+        refs.incrementAndGet();
+        return this;
+    }
+
+    void release() {
+        int r = refs.decrementAndGet();
+        if (r == 0) BufferPool.recycle(this);
+        else if (r < 0) throw new IllegalStateException("SharedFrame released too often");
+    }
+
+    /** Called by the pool when handing the frame out again. */
+    void reset(byte kind) {
+        this.kind = kind;
+        buf.clear();
+        refs.set(1);
+    }
+}
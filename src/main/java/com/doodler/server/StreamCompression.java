@@ -0,0 +1,162 @@
+package com.doodler.server;
+
+import com.doodler.protocol.Compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Server side of the deflate stream negotiated at JOIN (see {@link Compression}), shared by both
+ * engines. Off unless the deployment sets compression=deflate, since every connection then
+ * holds a deflater (~256 KB native) and an inflater (~40 KB) for as long as it is open.
+ */
+final class StreamCompression {
+    static final LongAdder CONNECTIONS = ServerMetrics.REGISTRY.counter("doodler_deflate_connections_total",
+            "Connections that negotiated deflate");
+    // bytes before and after compression, and time spent in the codec, per direction
+    static final LongAdder OUT_PLAIN = ServerMetrics.REGISTRY.counter("doodler_deflate_plain_bytes_total",
+            "Bytes before deflate / after inflate", "direction", "out");
+    static final LongAdder OUT_WIRE = ServerMetrics.REGISTRY.counter("doodler_deflate_wire_bytes_total",
+            "Compressed bytes on the wire", "direction", "out");
+    static final LongAdder OUT_NANOS = ServerMetrics.REGISTRY.counter("doodler_deflate_nanos_total",
+            "Nanoseconds spent compressing / decompressing", "direction", "out");
+    static final LongAdder IN_PLAIN = ServerMetrics.REGISTRY.counter("doodler_deflate_plain_bytes_total",
+            "Bytes before deflate / after inflate", "direction", "in");
+    static final LongAdder IN_WIRE = ServerMetrics.REGISTRY.counter("doodler_deflate_wire_bytes_total",
+            "Compressed bytes on the wire", "direction", "in");
+    static final LongAdder IN_NANOS = ServerMetrics.REGISTRY.counter("doodler_deflate_nanos_total",
+            "Nanoseconds spent compressing / decompressing", "direction", "in");
+
+    private StreamCompression() {}
+
+    /**
+     * Compresses what a transport's writer takes off the outbound queue. The first
+     * {@code plainBytes} bytes of the connection (the PROTO line) go out as they are.
+     * Writer thread only.
+     */
+    static final class Out {
+        private final Deflater deflater;
+        private long plainLeft;
+        private byte[] out = new byte[4096];
+
+        Out(int level, int plainBytes) {
+            deflater = Compression.deflater(level);
+            plainLeft = plainBytes;
+            CONNECTIONS.increment();
+        }
+
+        /**
+         * Returns the bytes to write for {@code plain}: compressed and sync-flushed, so the
+         * client can decode every frame in it. Valid until the next call.
+         */
+        ByteBuffer deflate(ByteBuffer plain) {
+            int n = 0;
+            if (plainLeft > 0) {
+                n = (int) Math.min(plainLeft, plain.remaining());
+                plainLeft -= n;
+                ensure(n);
+                plain.get(out, 0, n);
+                if (!plain.hasRemaining()) return ByteBuffer.wrap(out, 0, n);
+            }
+            long start = System.nanoTime();
+            int in = plain.remaining();
+            deflater.setInput(plain);
+            // SYNC_FLUSH output is complete once it leaves room in the buffer
+            while (true) {
+                ensure(n + 64);
+                n += deflater.deflate(out, n, out.length - n, Deflater.SYNC_FLUSH);
+                if (n < out.length) break;
+            }
+            OUT_NANOS.add(System.nanoTime() - start);
+            OUT_PLAIN.add(in);
+            OUT_WIRE.add(n);
+            return ByteBuffer.wrap(out, 0, n);
+        }
+
+        private void ensure(int len) {
+            if (out.length < len) out = Arrays.copyOf(out, Math.max(len, out.length * 2));
+        }
+
+        void end() { deflater.end(); }
+    }
+
+    /** Decompresses what a transport reads after the JOIN line. Reader thread only. */
+    static final class In {
+        private final Inflater inflater = Compression.inflater();
+
+        /**
+         * Inflates all of {@code wire} (which it consumes) and passes the plain bytes to
+         * {@code sink} in chunks of at most {@code plain}'s capacity.
+         */
+        void inflate(ByteBuffer wire, ByteBuffer plain, Sink sink) throws IOException {
+            IN_WIRE.add(wire.remaining());
+            inflater.setInput(wire);
+            try {
+                while (true) {
+                    plain.clear();
+                    long start = System.nanoTime();
+                    int n = inflater.inflate(plain);
+                    IN_NANOS.add(System.nanoTime() - start);
+                    plain.flip();
+                    IN_PLAIN.add(n);
+                    if (n > 0) sink.accept(plain);
+                    else if (inflater.needsInput() || inflater.finished()) break;
+                    else if (inflater.needsDictionary()) throw new IOException("Unexpected deflate dictionary");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Bad deflate stream: " + e.getMessage());
+            }
+        }
+
+        /** A blocking stream of the plain bytes, for a reader thread that reads {@code wire}. */
+        InputStream stream(InputStream wire) {
+            return new InputStream() {
+                private final byte[] raw = new byte[4096];
+                private final byte[] one = new byte[1];
+
+                @Override
+                public int read() throws IOException {
+                    return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) return 0;
+                    try {
+                        while (true) {
+                            long start = System.nanoTime();
+                            int n = inflater.inflate(b, off, len);
+                            IN_NANOS.add(System.nanoTime() - start);
+                            if (n > 0) { IN_PLAIN.add(n); return n; }
+                            if (inflater.finished()) return -1;
+                            if (inflater.needsDictionary()) throw new IOException("Unexpected deflate dictionary");
+                            int r = wire.read(raw);
+                            // between frames a closed socket is a clean end, as in the plain stream
+                            if (r < 0) {
+                                if (inflater.getRemaining() > 0) throw new EOFException();
+                                return -1;
+                            }
+                            IN_WIRE.add(r);
+                            inflater.setInput(raw, 0, r);
+                        }
+                    } catch (DataFormatException e) {
+                        throw new IOException("Bad deflate stream: " + e.getMessage());
+                    }
+                }
+            };
+        }
+
+        void end() { inflater.end(); }
+    }
+
+    interface Sink {
+        void accept(ByteBuffer plain) throws IOException;
+    }
+}
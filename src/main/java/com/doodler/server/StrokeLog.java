@@ -0,0 +1,97 @@
+package com.doodler.server;
+
+import com.doodler.protocol.StrokeBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything drawn in the current round, so late joiners can be sent the canvas. Strokes are
+ * stored as quantized ints in one ring: {@code playerId | rgb | flags | count | x y ...}. The
+ * ring grows on demand up to {@value #MAX_POINTS_DEFAULT} points (-Ddoodler.strokeLog.maxPoints);
+ * past that the oldest strokes are overwritten. A clear drops everything and gives the memory
+ * back, since a cleared canvas never needs its old strokes again.
+ */
+final class StrokeLog {
+    static final int MAX_POINTS_DEFAULT = 50_000;
+    static final int MAX_POINTS = Integer.getInteger("doodler.strokeLog.maxPoints", MAX_POINTS_DEFAULT);
+    private static final int HEADER = 4, CONTINUES = 1, ERASER = 2;
+
+    private final int maxInts;
+    private int[] ring = new int[0];
+    private int head, used, strokes;
+    private long dropped;
+
+    StrokeLog() { this(MAX_POINTS); }
+
+    StrokeLog(int maxPoints) {
+        // room for the points plus a header per 8-point stroke, the client batcher's usual minimum
+        this.maxInts = maxPoints * 2 + maxPoints / 8 * HEADER;
+    }
+
+    synchronized void append(StrokeBatch s) {
+        int need = HEADER + s.size() * 2;
+        if (s.isEmpty() || need > maxInts) { dropped += s.size(); return; }
+        if (used + need > ring.length) grow(need);
+        while (used + need > ring.length) dropOldest();
+        put(s.playerId); put(s.rgb);
+        put((s.continues ? CONTINUES : 0) | (s.eraser ? ERASER : 0));
+        put(s.size());
+        for (int i = 0; i < s.size(); i++) { put(s.qx(i)); put(s.qy(i)); }
+        strokes++;
+    }
+
+    private void put(int v) {
+        ring[(head + used) % ring.length] = v;
+        used++;
+    }
+
+    private int at(int offset) { return ring[(head + offset) % ring.length]; }
+
+    /** Unwraps into a larger array, at most the cap. */
+    private void grow(int need) {
+        if (ring.length == maxInts) return;
+        int[] next = new int[Math.min(maxInts, Math.max(used + need, Math.max(1024, ring.length * 2)))];
+        for (int i = 0; i < used; i++) next[i] = at(i);
+        ring = next;
+        head = 0;
+    }
+
+    private void dropOldest() {
+        int n = at(3);
+        int len = HEADER + n * 2;
+        head = (head + len) % ring.length;
+        used -= len;
+        strokes--;
+        dropped += n;
+    }
+
+    synchronized void clear() {
+        ring = new int[0];
+        head = used = strokes = 0;
+    }
+
+    /** The logged strokes, oldest first, as fresh batches. */
+    synchronized List<StrokeBatch> snapshot() {
+        List<StrokeBatch> out = new ArrayList<>(strokes);
+        int off = 0;
+        while (off < used) {
+            int flags = at(off + 2), n = at(off + 3);
+            StrokeBatch b = StrokeBatch.of(at(off + 1), (flags & ERASER) != 0, (flags & CONTINUES) != 0);
+            b.playerId = at(off);
+            for (int i = 0; i < n; i++) b.addQuantized(at(off + HEADER + i * 2), at(off + HEADER + i * 2 + 1));
+            out.add(b);
+            off += HEADER + n * 2;
+        }
+        return out;
+    }
+
+    synchronized int points() { return (used - strokes * HEADER) / 2; }
+
+    synchronized long bytes() { return ring.length * 4L; }
+
+    synchronized String stats() {
+        return "strokes=" + strokes + " points=" + points() + " bytes=" + bytes() + " capBytes=" + maxInts * 4L
+                + " droppedPoints=" + dropped;
+    }
+}
@@ -0,0 +1,193 @@
+package com.doodler.server;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel shared by every session: one thread advances the wheel, expired tasks run
+ * on the supplied executor. Scheduling and cancelling are lock-free hand-offs to that thread;
+ * a timeout further out than one revolution just waits out its remaining rounds in its bucket.
+ */
+public final class TimerWheel implements AutoCloseable {
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor executor;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final long origin = System.nanoTime();
+    private final Thread worker;
+    private volatile boolean closed;
+    private long tick; // worker thread only
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder fired = new LongAdder();
+    private final LongAccumulator maxLateNanos = new LongAccumulator(Math::max, 0);
+
+    /** @param slots rounded up to a power of two; tick * slots is one revolution */
+    public TimerWheel(String name, long tick, TimeUnit unit, int slots, Executor executor) {
+        this.tickNanos = unit.toNanos(tick);
+        int n = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.wheel = new Bucket[n];
+        for (int i = 0; i < n; i++) wheel[i] = new Bucket();
+        this.mask = n - 1;
+        this.executor = executor;
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Timeout(task, now() + unit.toNanos(delay), 0));
+    }
+
+    /** Runs every {@code period} from the first deadline; slow runs do not push later ones back. */
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return add(new Timeout(task, now() + unit.toNanos(initialDelay), unit.toNanos(period)));
+    }
+
+    private Timeout add(Timeout t) {
+        if (closed) throw new RejectedExecutionException("Timer wheel closed");
+        active.incrementAndGet();
+        added.add(t);
+        return t;
+    }
+
+    private long now() { return System.nanoTime() - origin; }
+
+    private void run() {
+        while (!closed) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = deadline - now()) > 0) {
+                LockSupport.parkNanos(sleep);
+                if (closed) return;
+            }
+            dropCancelled();
+            transferAdded();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        // bounded per tick so a burst of schedules cannot stall expiry
+        for (int i = 0; i < 100_000; i++) {
+            Timeout t = added.poll();
+            if (t == null) return;
+            if (t.state.get() != Timeout.PENDING) continue;
+            long due = t.deadline / tickNanos;
+            t.rounds = Math.max(0, (due - tick) / wheel.length);
+            wheel[(int) (Math.max(due, tick) & mask)].add(t);
+        }
+    }
+
+    private void dropCancelled() {
+        Timeout t;
+        while ((t = cancelled.poll()) != null) {
+            if (t.bucket != null) t.bucket.remove(t);
+        }
+    }
+
+    private void expire(Bucket b) {
+        Timeout t = b.head;
+        while (t != null) {
+            Timeout next = t.next;
+            if (t.rounds > 0) {
+                t.rounds--;
+            } else {
+                b.remove(t);
+                fire(t);
+            }
+            t = next;
+        }
+    }
+
+    private void fire(Timeout t) {
+        if (t.period > 0) {
+            t.deadline += t.period;
+            if (t.state.get() == Timeout.PENDING) added.add(t);
+        } else if (!t.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+            return;
+        } else {
+            active.decrementAndGet();
+        }
+        fired.increment();
+        maxLateNanos.accumulate(now() - (t.period > 0 ? t.deadline - t.period : t.deadline));
+        try {
+            executor.execute(t::runTask);
+        } catch (RejectedExecutionException e) {
+            t.cancel();
+        }
+    }
+
+    public String stats() {
+        return "active=" + active.get() + " fired=" + fired.sum() + " maxLateMs=" + maxLateNanos.get() / 1_000_000;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(worker);
+    }
+
+    /** Handle for a scheduled task; cancel before a new round reschedules. */
+    public final class Timeout {
+        static final int PENDING = 0, CANCELLED = 1, EXPIRED = 2;
+        private final Runnable task;
+        private final long period;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // owned by the worker thread
+        private long deadline;
+        private long rounds;
+        private Bucket bucket;
+        private Timeout prev, next;
+
+        private Timeout(Runnable task, long deadline, long period) {
+            this.task = task; this.deadline = deadline; this.period = period;
+        }
+
+        /** Returns false if the task already ran (one-shot) or was cancelled before. */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) return false;
+            active.decrementAndGet();
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() { return state.get() == CANCELLED; }
+
+        private void runTask() {
+            if (state.get() == CANCELLED) return;
+            try {
+                task.run();
+            } catch (Throwable e) {
+                System.err.println("Timer task failed: " + e);
+            }
+        }
+    }
+
+    /** Intrusive doubly-linked list; only the worker thread touches it. */
+    private static final class Bucket {
+        Timeout head, tail;
+
+        void add(Timeout t) {
+            t.bucket = this;
+            t.prev = tail; t.next = null;
+            if (tail == null) head = t; else tail.next = t;
+            tail = t;
+        }
+
+        void remove(Timeout t) {
+            if (t.bucket != this) return;
+            if (t.prev == null) head = t.next; else t.prev.next = t.next;
+            if (t.next == null) tail = t.prev; else t.next.prev = t.prev;
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.doodler.server;
+
+/**
+ * The wire side of one connected client, independent of the engine that owns the socket.
+ * Everything sent to the client goes through {@link #outbound()}; the transport drains that
+ * queue on its own writer.
+ */
+public interface Transport {
+    OutboundQueue outbound();
+
+    /**
+     * Switches reads to binary frames. Writes need no switch: every queued frame is already
+     * encoded for the client's wire format.
+     */
+    void switchToFrames();
+
+    /**
+     * Deflates everything written after the first {@code plainBytes} bytes (the PROTO line, which
+     * must not be queued yet) and inflates everything read after the JOIN line.
+     */
+    void switchToDeflate(int level, int plainBytes);
+
+    /** Closes the connection once everything already queued has been written. */
+    void closeGracefully();
+
+    void close();
+
+    String remoteAddress();
+}
@@ -0,0 +1,211 @@
+package com.doodler.server;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Every word a round can be drawn from, loaded once and shared by all sessions. Words are kept
+ * as UTF-8 back to back in one byte array with an int offset each, so 100k words cost about the
+ * text plus 4 bytes rather than a String and its array apiece. Lists are named
+ * {@code <language>/<category>} ("en/animals"); a language name alone ("en") covers all its
+ * categories, which are packed next to each other for that. A word listed in two categories of a
+ * language is kept in the one loaded first.
+ * <p>
+ * Sources are one word per line, blank lines and {@code #} comments skipped, and a word with a
+ * ':' dropped since it could not be sent in a protocol line. The built-in lists are resources
+ * under {@code words/} named in {@code words/index.txt}; {@link #load(Path)} reads
+ * {@code <dir>/<language>/<category>.txt} instead.
+ */
+public final class WordBank {
+    private final byte[] text;
+    // word i is text[offsets[i], offsets[i + 1])
+    private final int[] offsets;
+    // list name -> {first, end} word index
+    private final Map<String, int[]> lists;
+
+    private WordBank(byte[] text, int[] offsets, Map<String, int[]> lists) {
+        this.text = text; this.offsets = offsets; this.lists = lists;
+    }
+
+    private static final class BuiltIn {
+        static final WordBank BANK;
+        static {
+            Builder b = new Builder();
+            try (InputStream index = WordBank.class.getResourceAsStream("words/index.txt")) {
+                if (index == null) throw new IllegalStateException("words/index.txt missing from the classpath");
+                for (String name : lines(index)) {
+                    try (InputStream in = WordBank.class.getResourceAsStream("words/" + name + ".txt")) {
+                        if (in == null) throw new IllegalStateException("word list " + name + " missing from the classpath");
+                        b.add(name, in);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            BANK = b.build();
+        }
+    }
+
+    /** The lists shipped with the server, loaded on first use. */
+    public static WordBank builtIn() { return BuiltIn.BANK; }
+
+    /** Every {@code <language>/<category>.txt} under {@code dir}. */
+    public static WordBank load(Path dir) throws IOException {
+        Builder b = new Builder();
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(dir, 2)) {
+            files = s.filter(p -> dir.relativize(p).getNameCount() == 2 && p.toString().endsWith(".txt")).sorted().toList();
+        }
+        for (Path f : files) {
+            String name = dir.relativize(f).toString().replace(File.separatorChar, '/');
+            try (InputStream in = Files.newInputStream(f)) { b.add(name.substring(0, name.length() - 4), in); }
+        }
+        if (b.isEmpty()) throw new IOException("no word lists under " + dir);
+        return b.build();
+    }
+
+    public int size() { return offsets.length - 1; }
+
+    /** Heap held by the packed words, for the startup log and the metrics. */
+    public long bytes() { return text.length + 4L * offsets.length; }
+
+    /** Every list name, categories and whole languages. */
+    public Set<String> lists() { return Collections.unmodifiableSet(lists.keySet()); }
+
+    String word(int i) {
+        return new String(text, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+    }
+
+    /** A fresh sequence over {@code list}; throws IllegalArgumentException for an unknown list. */
+    Cursor cursor(String list) {
+        int[] range = lists.get(list);
+        if (range == null) throw new IllegalArgumentException("unknown word list " + list + ", have " + new TreeSet<>(lists.keySet()));
+        return new Cursor(range[0], range[1] - range[0]);
+    }
+
+    /**
+     * One room's walk through a list: word {@code first + p(i)} for i = 0, 1, ..., where p is a
+     * keyed permutation of [0, n), so no word comes back until all n have been drawn. p is a
+     * four-round Feistel network over the smallest even number of bits that holds n, walked
+     * again from any value that lands past n (at most 4n values, so under four steps on
+     * average). That takes a key and a few ints per room instead of a shuffled copy of the list,
+     * and unlike a stride the order does not give itself away after two words. A new key is
+     * drawn for every pass. Not thread safe: a session only calls it on its own loop.
+     */
+    final class Cursor {
+        private static final int ROUNDS = 4;
+        private final int first, n;
+        // the permuted domain is [0, 4^half): two halves of this many bits each
+        private final int half, mask;
+        private long key;
+        private int i, last = -1;
+
+        Cursor(int first, int n) {
+            this.first = first; this.n = n;
+            int bits = 32 - Integer.numberOfLeadingZeros(Math.max(0, n - 1));
+            half = (bits + 1) / 2;
+            mask = (1 << half) - 1;
+            reseed();
+        }
+
+        String next() {
+            if (i == n) reseed();
+            int w = permute(i++);
+            // the new pass may start where the old one ended
+            if (w == last && n > 1) {
+                if (i == n) reseed();
+                w = permute(i++);
+            }
+            last = w;
+            return word(first + w);
+        }
+
+        /** p(x) for x in [0, n): cycle-walks the Feistel permutation until it lands in range. */
+        int permute(int x) {
+            do x = feistel(x); while (x >= n);
+            return x;
+        }
+
+        private int feistel(int x) {
+            int l = x >>> half, r = x & mask;
+            for (int round = 0; round < ROUNDS; round++) {
+                int t = l ^ mix(r, round);
+                l = r;
+                r = t;
+            }
+            return l << half | r;
+        }
+
+        /** The round function: any function of (r, key, round) keeps the network a permutation. */
+        private int mix(int r, int round) {
+            long h = key + r + round * 0x9E3779B97F4A7C15L;
+            h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+            h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+            return (int) (h ^ (h >>> 31)) & mask;
+        }
+
+        private void reseed() {
+            i = 0;
+            key = KEYS.nextLong();
+        }
+    }
+
+    // players see the order words come up in, so the keys are not from a guessable generator
+    private static final SecureRandom KEYS = new SecureRandom();
+
+    private static List<String> lines(InputStream in) throws IOException {
+        List<String> out = new ArrayList<>();
+        BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        for (String line; (line = r.readLine()) != null; ) {
+            line = line.strip();
+            if (!line.isEmpty() && line.charAt(0) != '#') out.add(line);
+        }
+        return out;
+    }
+
+    /** Collects lists, then packs them with each language's categories side by side. */
+    private static final class Builder {
+        // language -> category -> words in file order, duplicates within the language dropped
+        private final Map<String, Map<String, LinkedHashSet<String>>> langs = new TreeMap<>();
+        private final Map<String, Set<String>> seen = new HashMap<>();
+
+        void add(String name, InputStream in) throws IOException {
+            int slash = name.indexOf('/');
+            if (slash <= 0 || slash != name.lastIndexOf('/')) throw new IOException("word list " + name + " is not <language>/<category>");
+            String lang = name.substring(0, slash);
+            Set<String> words = langs.computeIfAbsent(lang, l -> new TreeMap<>())
+                    .computeIfAbsent(name.substring(slash + 1), c -> new LinkedHashSet<>());
+            // a word in two categories would come up twice in a pass over the whole language
+            Set<String> inLanguage = seen.computeIfAbsent(lang, l -> new HashSet<>());
+            for (String w : lines(in)) if (w.indexOf(':') < 0 && inLanguage.add(w)) words.add(w);
+        }
+
+        boolean isEmpty() { return langs.isEmpty(); }
+
+        WordBank build() {
+            int count = 0;
+            for (Map<String, LinkedHashSet<String>> cats : langs.values()) for (Set<String> ws : cats.values()) count += ws.size();
+            ByteArrayOutputStream text = new ByteArrayOutputStream(count * 8);
+            int[] offsets = new int[count + 1];
+            Map<String, int[]> lists = new HashMap<>();
+            int n = 0;
+            for (Map.Entry<String, Map<String, LinkedHashSet<String>>> lang : langs.entrySet()) {
+                int langFirst = n;
+                for (Map.Entry<String, LinkedHashSet<String>> cat : lang.getValue().entrySet()) {
+                    int first = n;
+                    for (String w : cat.getValue()) {
+                        text.writeBytes(w.getBytes(StandardCharsets.UTF_8));
+                        offsets[++n] = text.size();
+                    }
+                    if (n > first) lists.put(lang.getKey() + "/" + cat.getKey(), new int[] {first, n});
+                }
+                if (n > langFirst) lists.put(lang.getKey(), new int[] {langFirst, n});
+            }
+            return new WordBank(text.toByteArray(), offsets, Map.copyOf(lists));
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.doodler.server;
+
+import com.doodler.metrics.AsyncLog;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind front for {@link DBManager}. Game threads only enqueue; one dedicated writer
+ * thread drains the queue, coalesces what it finds (points summed per player, last secret per
+ * game) and writes it as JDBC batches. Inserts return a {@link Ref} whose id is filled in once
+ * the row exists; later operations on the same ref are ordered after the insert.
+ */
+public class WriteBehindStore implements AutoCloseable {
+    static final int CAPACITY = Integer.getInteger("doodler.db.queue", 10_000);
+    static final int MAX_BATCH = 1_000;
+    static final int MAX_ATTEMPTS = 5;
+    private static final AsyncLog LOG = AsyncLog.get();
+
+    /** A row that may not have been inserted yet. */
+    public static final class Ref {
+        private final CompletableFuture<Integer> id = new CompletableFuture<>();
+
+        /** Completes with the row id, or exceptionally if the insert failed for good. */
+        public CompletableFuture<Integer> id() { return id; }
+
+        /** The row id, or -1 while it is still pending (or failed). */
+        int now() { return id.isDone() && !id.isCompletedExceptionally() ? id.join() : -1; }
+    }
+
+    /** A read that must see every write enqueued before it. */
+    public interface SqlCall<T> {
+        T call(DBManager db) throws SQLException;
+    }
+
+    private sealed interface Op permits CreateGame, AddPlayer, AddPoints, DisableGuessing, SetSecret, Barrier {}
+    private record CreateGame(Ref ref, String code, String host) implements Op {}
+    private record AddPlayer(Ref ref, Ref game, String username, boolean drawer) implements Op {}
+    private record AddPoints(Ref player, int pts) implements Op {}
+    private record DisableGuessing(Ref player) implements Op {}
+    private record SetSecret(Ref game, String secret) implements Op {}
+    private record Barrier(Runnable action, CompletableFuture<?> done) implements Op {}
+
+    private final DBManager db;
+    private final BlockingQueue<Op> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread writer;
+    private volatile boolean closed;
+
+    final LongAdder written = new LongAdder();
+    final LongAdder batches = new LongAdder();
+    final LongAdder retries = new LongAdder();
+    final LongAdder dropped = new LongAdder();
+    // ops that reached the writer but not the database
+    final LongAdder failed = new LongAdder();
+
+    public WriteBehindStore(DBManager db) {
+        this.db = db;
+        writer = new Thread(this::run, "db-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public Ref createGame(String code, String host) {
+        Ref r = new Ref();
+        enqueue(new CreateGame(r, code, host));
+        return r;
+    }
+
+    public Ref addPlayer(Ref game, String username, boolean isDrawer) {
+        Ref r = new Ref();
+        enqueue(new AddPlayer(r, game, username, isDrawer));
+        return r;
+    }
+
+    public void addPoints(Ref player, int pts) { enqueue(new AddPoints(player, pts)); }
+
+    public void disableGuessing(Ref player) { enqueue(new DisableGuessing(player)); }
+
+    public void setSecret(Ref game, String secret) { enqueue(new SetSecret(game, secret)); }
+
+    /** Completes once everything enqueued so far is in the database. */
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        enqueue(new Barrier(() -> f.complete(null), f));
+        return f;
+    }
+
+    /** Runs {@code call} on the writer thread after every write enqueued before it. */
+    public <T> CompletableFuture<T> query(SqlCall<T> call) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        enqueue(new Barrier(() -> {
+            try { f.complete(withRetry(call)); } catch (SQLException e) { f.completeExceptionally(e); }
+        }, f));
+        return f;
+    }
+
+    /**
+     * Never waits: callers are session loops, which must not stall behind the database. A full
+     * or closed queue sheds the op; a dropped insert, flush or query fails its future rather
+     * than leave it pending or run its action on the caller's thread.
+     */
+    private void enqueue(Op op) {
+        if (!closed && queue.offer(op)) return;
+        dropped.increment();
+        String why = "DB write queue " + (closed ? "closed" : "full");
+        switch (op) {
+            case CreateGame g -> g.ref().id.completeExceptionally(new SQLTransientException(why));
+            case AddPlayer p -> p.ref().id.completeExceptionally(new SQLTransientException(why));
+            case Barrier b -> b.done.completeExceptionally(new SQLTransientException(why));
+            default -> { }
+        }
+        // a full queue sheds thousands of ops a second; one line per op would swamp the log
+        if (AsyncLog.sample(1000)) LOG.error(why + ", dropped " + op + " (" + dropped.sum() + " dropped so far)");
+    }
+
+    private void run() {
+        List<Op> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Op first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                int from = 0;
+                // barriers split the batch so a read never overtakes an earlier write
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.get(i) instanceof Barrier b) {
+                        write(batch.subList(from, i));
+                        b.action.run();
+                        from = i + 1;
+                    }
+                }
+                write(batch.subList(from, batch.size()));
+            } catch (InterruptedException e) {
+                if (closed) continue;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Op> ops) {
+        if (ops.isEmpty()) return;
+        List<AddPlayer> players = new ArrayList<>();
+        List<SetSecret> secrets = new ArrayList<>();
+        List<AddPoints> points = new ArrayList<>();
+        List<DisableGuessing> disabled = new ArrayList<>();
+        for (Op op : ops) {
+            switch (op) {
+                case CreateGame g -> createGame(g);
+                case AddPlayer p -> players.add(p);
+                case SetSecret s -> secrets.add(s);
+                case AddPoints p -> points.add(p);
+                case DisableGuessing d -> disabled.add(d);
+                case Barrier b -> b.action.run();
+            }
+        }
+        batches.increment();
+        insertPlayers(players);
+        // one statement per kind, each on its own: a failed secret update does not lose the points
+        Map<Integer, String> lastSecret = new LinkedHashMap<>();
+        int ready = 0;
+        for (SetSecret s : secrets) {
+            if (s.game().now() < 0) continue;
+            lastSecret.put(s.game().now(), s.secret());
+            ready++;
+        }
+        int[] gameIds = lastSecret.keySet().stream().mapToInt(Integer::intValue).toArray();
+        String[] words = lastSecret.values().toArray(new String[0]);
+        apply("setSecrets", secrets.size(), ready, d -> { d.setSecrets(gameIds, words); return null; });
+
+        Map<Integer, Integer> sums = new LinkedHashMap<>();
+        ready = 0;
+        for (AddPoints p : points) {
+            if (p.player().now() < 0) continue;
+            sums.merge(p.player().now(), p.pts(), Integer::sum);
+            ready++;
+        }
+        int[] playerIds = sums.keySet().stream().mapToInt(Integer::intValue).toArray();
+        int[] playerPts = sums.values().stream().mapToInt(Integer::intValue).toArray();
+        apply("addPoints", points.size(), ready, d -> { d.addPoints(playerIds, playerPts); return null; });
+
+        int[] disabledIds = disabled.stream().mapToInt(d -> d.player().now()).filter(id -> id >= 0).distinct().toArray();
+        ready = (int) disabled.stream().filter(d -> d.player().now() >= 0).count();
+        apply("disableGuessing", disabled.size(), ready, d -> { d.disableGuessing(disabledIds); return null; });
+    }
+
+    /**
+     * Runs one coalesced statement for {@code ready} of {@code total} ops; the rest refer to a row
+     * whose insert failed and count as failed without being tried.
+     */
+    private void apply(String what, int total, int ready, SqlCall<Void> call) {
+        failed.add(total - ready);
+        if (ready == 0) return;
+        try {
+            withRetry(call);
+            written.add(ready);
+        } catch (SQLException e) {
+            failed.add(ready);
+            System.err.println("DB write-behind " + what + " failed for " + ready + " ops: " + e.getMessage());
+        }
+    }
+
+    private void createGame(CreateGame g) {
+        try {
+            g.ref().id.complete(withRetry(d -> d.createGame(g.code(), g.host())));
+            written.increment();
+        } catch (SQLException e) {
+            failed.increment();
+            g.ref().id.completeExceptionally(e);
+        }
+    }
+
+    private void insertPlayers(List<AddPlayer> players) {
+        players.removeIf(p -> {
+            if (p.game().now() >= 0) return false;
+            failed.increment();
+            p.ref().id.completeExceptionally(new SQLException("Game row missing for " + p.username()));
+            return true;
+        });
+        if (players.isEmpty()) return;
+        int[] gameIds = new int[players.size()];
+        String[] names = new String[players.size()];
+        boolean[] drawer = new boolean[players.size()];
+        for (int i = 0; i < players.size(); i++) {
+            AddPlayer p = players.get(i);
+            gameIds[i] = p.game().now(); names[i] = p.username(); drawer[i] = p.drawer();
+        }
+        try {
+            int[] ids = withRetry(d -> d.addPlayers(gameIds, names, drawer));
+            for (int i = 0; i < ids.length; i++) players.get(i).ref().id.complete(ids[i]);
+            written.add(players.size());
+        } catch (SQLException e) {
+            failed.add(players.size());
+            for (AddPlayer p : players) p.ref().id.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Retries transient failures. Safe because every call here is one statement or one
+     * transaction (see DBManager): a failed attempt has left nothing behind to apply twice.
+     */
+    private <T> T withRetry(SqlCall<T> call) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call(db);
+            } catch (SQLException e) {
+                if (attempt >= MAX_ATTEMPTS || !isTransient(e)) throw e;
+                retries.increment();
+                try { Thread.sleep(50L << attempt); } catch (InterruptedException ie) { throw e; }
+            }
+        }
+    }
+
+    static boolean isTransient(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientException || e instanceof SQLRecoverableException
+                || (state != null && (state.startsWith("08") || state.startsWith("40")));
+    }
+
+    int queued() { return queue.size(); }
+
+    public String stats() {
+        return "queued=" + queue.size() + " written=" + written.sum() + " batches=" + batches.sum()
+                + " retries=" + retries.sum() + " dropped=" + dropped.sum() + " failed=" + failed.sum() + " " + db.stats();
+    }
+
+    /** Flushes everything still queued, stops the writer, then closes the pool. */
+    @Override
+    public void close() {
+        closed = true;
+        try { writer.join(TimeUnit.SECONDS.toMillis(30)); } catch (InterruptedException ignored) {}
+        try { db.close(); } catch (SQLException e) { System.err.println("DB close failed: " + e.getMessage()); }
+    }
+}
@@ -0,0 +1,36 @@
+package com.doodler.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+    private static String scrape(MetricsRegistry r) {
+        StringBuilder sb = new StringBuilder();
+        r.writePrometheus(sb);
+        return sb.toString();
+    }
+
+    @Test
+    void countsKeptElsewhereAreExportedAsCounters() {
+        MetricsRegistry r = new MetricsRegistry();
+        LongAdder drops = new LongAdder();
+        r.counter("x_dropped_total", "Dropped", drops::sum);
+        r.gauge("x_depth", "Depth", () -> 7);
+        drops.add(3);
+
+        String text = scrape(r);
+        assertTrue(text.contains("# TYPE x_dropped_total counter\nx_dropped_total 3\n"), text);
+        assertTrue(text.contains("# TYPE x_depth gauge\nx_depth 7\n"), text);
+        assertEquals(3L, r.snapshot().get("x_dropped_total"));
+    }
+
+    @Test
+    void oneNameIsOneType() {
+        MetricsRegistry r = new MetricsRegistry();
+        r.gauge("x_total", "Total", () -> 1);
+        assertThrows(IllegalArgumentException.class, () -> r.counter("x_total", "Total", () -> 1));
+    }
+}
@@ -0,0 +1,55 @@
+package com.doodler.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageTest {
+    @Test
+    void escapesEveryFieldSeparator() {
+        assertEquals("a%3Ab%25c%2Cd%3Be%7Cf", Message.escape("a:b%c,d;e|f"));
+        assertEquals("a:b%c,d;e|f", Message.unescape(Message.escape("a:b%c,d;e|f")));
+    }
+
+    @Test
+    void plainNamesAreNotCopied() {
+        String name = "Ünïcode player 7";
+        assertSame(name, Message.escape(name));
+        assertEquals(name, Message.unescape(name));
+    }
+
+    @Test
+    void malformedEscapesArePassedThrough() {
+        assertEquals("100%", Message.unescape("100%"));
+        assertEquals("%zz%4", Message.unescape("%zz%4"));
+        assertEquals("x:", Message.unescape("x%3a"));
+    }
+
+    @Test
+    void escapedNameStaysOneField() {
+        Message m = new Message().parse("CORRECT:" + Message.escape("a:b") + ":apple:50");
+        assertEquals(Op.CORRECT, m.op());
+        assertEquals(4, m.fields());
+        assertEquals("a:b", m.str(1));
+        assertTrue(m.is(2, "apple"));
+        assertEquals(50, m.intField(3));
+    }
+
+    @Test
+    void restKeepsSeparatorsInFreeText() {
+        Message m = new Message().parse("CHAT:bob:is it 3:15?");
+        assertEquals(Op.CHAT, m.op());
+        assertEquals("is it 3:15?", m.rest(2));
+        assertEquals("", m.rest(9));
+        assertThrows(IllegalArgumentException.class, () -> m.str(9));
+    }
+
+    @Test
+    void parseReusesTheInstance() {
+        Message m = new Message();
+        m.parse("GUESS:cat");
+        assertSame(m, m.parse("NOPE:1:2"));
+        assertEquals(Op.UNKNOWN, m.op());
+        assertEquals(3, m.fields());
+    }
+}
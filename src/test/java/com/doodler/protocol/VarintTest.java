@@ -0,0 +1,52 @@
+package com.doodler.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VarintTest {
+    private static final int[] VALUES = {0, 1, 0x7F, 0x80, 0x3FFF, 0x4000, 0x1FFFFF, 0x200000, 0xFFFFFFF, 0x10000000,
+            Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+
+    @Test
+    void roundTripsAndSizeMatchesWrite() {
+        ByteBuffer b = ByteBuffer.allocate(Varint.MAX_BYTES);
+        for (int v : VALUES) {
+            b.clear();
+            Varint.write(b, v);
+            assertEquals(Varint.size(v), b.position(), "size of " + v);
+            b.flip();
+            assertEquals(v, Varint.read(b));
+            assertFalse(b.hasRemaining());
+        }
+    }
+
+    @Test
+    void sizeStepsEverySevenBits() {
+        assertEquals(1, Varint.size(0x7F));
+        assertEquals(2, Varint.size(0x80));
+        assertEquals(3, Varint.size(0x4000));
+        assertEquals(5, Varint.size(-1));
+    }
+
+    @Test
+    void zigzagKeepsSmallDeltasSmall() {
+        assertEquals(0, Varint.zigzag(0));
+        assertEquals(1, Varint.zigzag(-1));
+        assertEquals(2, Varint.zigzag(1));
+        assertEquals(3, Varint.zigzag(-2));
+        assertEquals(-1, Varint.zigzag(Integer.MIN_VALUE));
+        for (int v : new int[] {0, 1, -1, 63, -64, 1000, -1000, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            assertEquals(v, Varint.unzigzag(Varint.zigzag(v)));
+        }
+        assertEquals(1, Varint.size(Varint.zigzag(-64)));
+    }
+
+    @Test
+    void rejectsOverlongEncoding() {
+        ByteBuffer b = ByteBuffer.wrap(new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0});
+        assertThrows(IllegalArgumentException.class, () -> Varint.read(b));
+    }
+}
@@ -0,0 +1,171 @@
+package com.doodler.server;
+
+import com.doodler.protocol.Frames;
+import com.doodler.protocol.StrokeBatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameJournalTest {
+    @TempDir
+    Path dir;
+
+    private static StrokeBatch stroke(int playerId, int points) {
+        StrokeBatch s = StrokeBatch.of(0x123456, false, true);
+        s.playerId = playerId;
+        for (int i = 0; i < points; i++) s.add(i * 1.25, 300 - i * 0.5);
+        return s;
+    }
+
+    @Test
+    void everyRecordTypeRoundTrips() throws IOException {
+        GameJournal j;
+        try (JournalWriter w = new JournalWriter(dir)) {
+            j = w.open("room:1/ü");
+            j.join(1, "Zoë");
+            j.join(2, "bob:the%builder");
+            j.roundStart(1, "butterfly");
+            // over 127 bytes, so the frame's length prefix is two bytes
+            j.draw(Frames.stroke(stroke(1, 60)));
+            j.guess(2, GuessMatcher.Result.CLOSE, "buterfly");
+            j.guess(2, GuessMatcher.Result.WRONG, "moth");
+            j.correct(2, 85);
+            j.clear(1);
+            j.roundEnd(false);
+            j.roundEnd(true);
+            j.leave(2);
+        }
+        assertTrue(j.file.getFileName().toString().startsWith("room_1__-"), "code not sanitized: " + j.file);
+        assertEquals(j.written, Files.size(j.file), "closed journal is cut to its length");
+
+        GameJournal.Recording rec = GameJournal.read(j.file);
+        assertEquals("room:1/ü", rec.code());
+        assertTrue(Math.abs(System.currentTimeMillis() - rec.startedAtMillis()) < 60_000);
+        List<GameJournal.Entry> e = rec.entries();
+        assertEquals(11, e.size());
+        assertEntry(e.get(0), GameJournal.JOIN, 1, 0, "Zoë");
+        assertEntry(e.get(1), GameJournal.JOIN, 2, 0, "bob:the%builder");
+        assertEntry(e.get(2), GameJournal.ROUND_START, 1, 0, "butterfly");
+        assertEquals(GameJournal.DRAW, e.get(3).type());
+        StrokeBatch s = e.get(3).stroke(), expected = stroke(1, 60);
+        assertEquals(1, e.get(3).playerId());
+        assertEquals(expected.size(), s.size());
+        assertEquals(0x123456, s.rgb);
+        assertTrue(s.continues);
+        for (int i = 0; i < s.size(); i++) {
+            assertEquals(expected.qx(i), s.qx(i));
+            assertEquals(expected.qy(i), s.qy(i));
+        }
+        assertEntry(e.get(4), GameJournal.GUESS, 2, GuessMatcher.Result.CLOSE.ordinal(), "buterfly");
+        assertEntry(e.get(5), GameJournal.GUESS, 2, GuessMatcher.Result.WRONG.ordinal(), "moth");
+        assertEntry(e.get(6), GameJournal.CORRECT, 2, 85, null);
+        assertEntry(e.get(7), GameJournal.CLEAR, 1, 0, null);
+        assertEntry(e.get(8), GameJournal.ROUND_END, 0, GameJournal.FINISHED, null);
+        assertEntry(e.get(9), GameJournal.ROUND_END, 0, GameJournal.TIME_UP, null);
+        assertEntry(e.get(10), GameJournal.LEAVE, 2, 0, null);
+        for (int i = 1; i < e.size(); i++) assertTrue(e.get(i).millis() >= e.get(i - 1).millis(), "time went back");
+    }
+
+    private static void assertEntry(GameJournal.Entry e, byte type, int playerId, int value, String text) {
+        assertEquals(type, e.type());
+        assertEquals(playerId, e.playerId());
+        assertEquals(value, e.value());
+        assertEquals(text, e.text());
+    }
+
+    @Test
+    void recordsSpanMappedChunks() throws IOException {
+        GameJournal j;
+        ByteBuffer frame = Frames.stroke(stroke(3, 50));
+        // each record is at least as long as the frame
+        int draws = 2 * JournalWriter.CHUNK_BYTES / frame.remaining() + 10;
+        try (JournalWriter w = new JournalWriter(dir)) {
+            j = w.open("big");
+            // in batches the writer can keep up with, so nothing is dropped
+            for (int i = 0; i < draws; i++) {
+                j.draw(frame);
+                if (i % 10_000 == 9_999) sleepPastFlush();
+            }
+        }
+        assertTrue(j.written > 2L * JournalWriter.CHUNK_BYTES, "wrote only " + j.written);
+        GameJournal.Recording rec = GameJournal.read(j.file);
+        assertEquals(draws, rec.entries().size());
+        for (GameJournal.Entry e : rec.entries()) assertEquals(50, e.stroke().size());
+    }
+
+    @Test
+    void unclosedJournalReadsUpToItsLastFlush() throws Exception {
+        try (JournalWriter w = new JournalWriter(dir)) {
+            GameJournal j = w.open("live");
+            j.join(1, "ann");
+            j.roundStart(1, "kite");
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (!Files.exists(j.file) || GameJournal.read(j.file).entries().size() < 2) {
+                assertTrue(System.nanoTime() < deadline, "writer never flushed");
+                sleepPastFlush();
+            }
+            // the mapped tail past the last record is zeros
+            assertTrue(Files.size(j.file) >= JournalWriter.CHUNK_BYTES);
+            assertEquals("kite", GameJournal.read(j.file).entries().get(1).text());
+        }
+    }
+
+    @Test
+    void appendsPastTheStagingLimitAreDroppedWhole() throws IOException {
+        GameJournal j = new GameJournal("small", dir.resolve("small.journal"), 16 * 1024);
+        long dropped = JournalWriter.DROPPED.sum();
+        for (int i = 0; i < 1000; i++) j.join(i, "player number " + i);
+        assertTrue(JournalWriter.DROPPED.sum() > dropped);
+        ByteBuffer staged = j.takeStaged();
+        byte[] bytes = new byte[staged.remaining()];
+        staged.get(bytes);
+        Files.write(j.file, bytes);
+        List<GameJournal.Entry> e = GameJournal.read(j.file).entries();
+        assertTrue(e.size() > 0 && e.size() < 1000);
+        for (int i = 0; i < e.size(); i++) assertEntry(e.get(i), GameJournal.JOIN, i, 0, "player number " + i);
+        // with room again, appends go through
+        j.leave(7);
+        assertEquals(1, countRecords(j.takeStaged()));
+    }
+
+    @Test
+    void closedJournalRecordsNothing() {
+        GameJournal j = new GameJournal("gone", dir.resolve("gone.journal"), 1 << 20);
+        j.takeStaged();
+        j.close();
+        j.join(1, "late");
+        assertNull(j.takeStaged());
+        assertTrue(j.isClosing());
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path f = dir.resolve("not.journal");
+        Files.writeString(f, "definitely not a journal file");
+        assertThrows(IOException.class, () -> GameJournal.read(f));
+    }
+
+    private static int countRecords(ByteBuffer b) {
+        int n = 0;
+        while (b.hasRemaining()) {
+            b.position(b.position() + 4 + b.getInt(b.position()));
+            n++;
+        }
+        return n;
+    }
+
+    private static void sleepPastFlush() {
+        try {
+            Thread.sleep(2 * JournalWriter.FLUSH_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.doodler.server;
+
+import org.junit.jupiter.api.Test;
+
+import static com.doodler.server.GuessMatcher.Result.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuessMatcherTest {
+    @Test
+    void foldsCaseAccentsSpacesAndPunctuation() {
+        GuessMatcher m = new GuessMatcher("Ice-Cream");
+        assertEquals(CORRECT, m.match(1, "ice cream"));
+        assertEquals(CORRECT, m.match(1, "ICECREAM"));
+        assertEquals(CORRECT, m.match(1, "  Ïce-Créam! "));
+        assertEquals(CORRECT, new GuessMatcher("café").match(1, "CAFE"));
+    }
+
+    @Test
+    void pluralFormsCount() {
+        GuessMatcher apple = new GuessMatcher("apple");
+        assertEquals(CORRECT, apple.match(1, "apples"));
+        assertEquals(CORRECT, new GuessMatcher("box").match(1, "boxes"));
+        GuessMatcher cherry = new GuessMatcher("cherry");
+        assertEquals(CORRECT, cherry.match(1, "cherries"));
+        assertEquals(CORRECT, cherry.match(1, "cherrys"));
+        assertNotEquals(CORRECT, apple.match(1, "appless"));
+    }
+
+    @Test
+    void closeIsBoundedByWordLength() {
+        // three letters or fewer: a slip is usually another word
+        assertEquals(WRONG, new GuessMatcher("cat").match(1, "car"));
+        // up to seven letters: one edit
+        GuessMatcher apple = new GuessMatcher("apple");
+        assertEquals(CLOSE, apple.match(1, "applw"));
+        assertEquals(WRONG, apple.match(1, "appel"), "a swap is two edits");
+        assertEquals(CLOSE, apple.match(1, "aple"));
+        assertEquals(WRONG, apple.match(1, "apxlx"));
+        // eight or more: two edits
+        GuessMatcher butterfly = new GuessMatcher("butterfly");
+        assertEquals(CLOSE, butterfly.match(1, "buterfli"));
+        assertEquals(WRONG, butterfly.match(1, "bttrfli"));
+        assertEquals(WRONG, butterfly.match(1, "butterflyyyy"));
+    }
+
+    @Test
+    void repeatedMissesAreRememberedPerPlayer() {
+        GuessMatcher m = new GuessMatcher("giraffe");
+        assertEquals(WRONG, m.match(1, "zebra"));
+        assertEquals(REPEAT, m.match(1, "Zebra!"));
+        assertEquals(WRONG, m.match(2, "zebra"), "another player's miss is not a repeat");
+        assertEquals(CLOSE, m.match(3, "girafe"));
+        assertEquals(REPEAT, m.match(3, "girafe"));
+        // a correct guess is never a repeat
+        assertEquals(CORRECT, m.match(1, "giraffe"));
+        assertEquals(CORRECT, m.match(1, "giraffe"));
+    }
+
+    @Test
+    void onlyTheLastWindowOfMissesIsRemembered() {
+        GuessMatcher m = new GuessMatcher("elephant");
+        assertEquals(WRONG, m.match(1, "miss0"));
+        for (int i = 1; i < GuessMatcher.WINDOW; i++) assertEquals(WRONG, m.match(1, "miss" + i));
+        assertEquals(REPEAT, m.match(1, "miss0"));
+        assertEquals(WRONG, m.match(1, "one more"));
+        assertEquals(WRONG, m.match(1, "miss0"), "pushed out of the window");
+    }
+
+    @Test
+    void growsForLargePlayerIds() {
+        GuessMatcher m = new GuessMatcher("house");
+        assertEquals(WRONG, m.match(5000, "tent"));
+        assertEquals(REPEAT, m.match(5000, "tent"));
+    }
+
+    @Test
+    void emptyGuessesAreWrongAndNotRemembered() {
+        GuessMatcher m = new GuessMatcher("house");
+        assertEquals(WRONG, m.match(1, ""));
+        assertEquals(WRONG, m.match(1, " -!? "));
+        assertEquals(WRONG, m.match(1, " -!? "));
+    }
+}
@@ -0,0 +1,67 @@
+package com.doodler.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+    private static final List<String> CODES = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < 10_000; i++) CODES.add("room" + i);
+    }
+
+    @Test
+    void walkVisitsEveryNodeOnceOwnerFirst() {
+        HashRing ring = new HashRing(List.of("a", "b", "c"));
+        for (String code : CODES.subList(0, 100)) {
+            List<String> order = ring.walk(code);
+            assertEquals(Set.of("a", "b", "c"), new HashSet<>(order));
+            assertEquals(3, order.size());
+        }
+        assertTrue(new HashRing(List.of()).walk("room1").isEmpty());
+    }
+
+    @Test
+    void ownerDoesNotDependOnNodeOrder() {
+        HashRing one = new HashRing(List.of("a", "b", "c")), other = new HashRing(List.of("c", "a", "b", "a"));
+        for (String code : CODES) assertEquals(one.walk(code), other.walk(code));
+        assertEquals(Set.of("a", "b", "c"), other.members());
+    }
+
+    @Test
+    void spreadsCodesRoughlyEvenly() {
+        HashRing ring = new HashRing(List.of("a", "b", "c", "d"));
+        Map<String, Integer> owned = new HashMap<>();
+        for (String code : CODES) owned.merge(ring.walk(code).get(0), 1, Integer::sum);
+        // 2500 each if perfectly even; 128 points per node keep every share well within 25%
+        for (int n : owned.values()) assertTrue(n > 1875 && n < 3125, "uneven split " + owned);
+    }
+
+    @Test
+    void addingANodeMovesOnlyItsShare() {
+        HashRing before = new HashRing(List.of("a", "b", "c", "d")), after = new HashRing(List.of("a", "b", "c", "d", "e"));
+        int moved = 0;
+        for (String code : CODES) {
+            String was = before.walk(code).get(0), now = after.walk(code).get(0);
+            if (!was.equals(now)) {
+                moved++;
+                assertEquals("e", now, code + " moved between old nodes");
+            }
+        }
+        // about a fifth of the codes should move to the new node
+        assertTrue(moved > 1500 && moved < 2500, moved + " codes moved");
+    }
+
+    @Test
+    void removingANodeHandsItsCodesToTheirFallback() {
+        HashRing full = new HashRing(List.of("a", "b", "c")), without = new HashRing(List.of("a", "c"));
+        for (String code : CODES) {
+            List<String> order = full.walk(code);
+            order.remove("b");
+            assertEquals(order.get(0), without.walk(code).get(0), code);
+        }
+    }
+}
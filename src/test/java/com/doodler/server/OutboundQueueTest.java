@@ -0,0 +1,113 @@
+package com.doodler.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+    /** A frame of {@code kind} carrying {@code n}, with the one reference offer() takes over; never pooled. */
+    private static SharedFrame frame(byte kind, int n) {
+        SharedFrame f = new SharedFrame(ByteBuffer.allocate(4), -1);
+        f.reset(kind);
+        f.buf.putInt(0, n);
+        return f;
+    }
+
+    /** Everything a socket writer would take off {@code q} now, by number. */
+    private static int[] drain(OutboundQueue q) {
+        ByteBuffer out = ByteBuffer.allocate(4 * 64);
+        assertNull(q.fill(out));
+        out.flip();
+        int[] read = new int[out.remaining() / 4];
+        for (int i = 0; i < read.length; i++) read[i] = out.getInt();
+        return read;
+    }
+
+    private static void assertReleased(SharedFrame f) {
+        assertThrows(IllegalStateException.class, f::release, "the queue gave its reference back");
+    }
+
+    @Test
+    void coalesceTimeKeepsOnlyTheNewestTick() {
+        OutboundQueue q = new OutboundQueue(4, List.of(OverflowPolicy.COALESCE_TIME), () -> {}, () -> fail("no disconnect"));
+        SharedFrame t1 = frame(SharedFrame.TIME, 1), t3 = frame(SharedFrame.TIME, 3);
+        assertTrue(q.offer(t1));
+        assertTrue(q.offer(frame(SharedFrame.DRAW, 2)));
+        assertTrue(q.offer(t3));
+        assertTrue(q.offer(frame(SharedFrame.TEXT, 4)));
+        assertEquals(4, q.depth());
+
+        // a new tick supersedes both queued ones
+        assertTrue(q.offer(frame(SharedFrame.TIME, 5)));
+        assertEquals(3, q.depth());
+        assertReleased(t1);
+        assertReleased(t3);
+
+        // full again with one tick left: the newest tick stays, so there is no room for text
+        assertTrue(q.offer(frame(SharedFrame.TEXT, 6)));
+        SharedFrame t7 = frame(SharedFrame.TEXT, 7);
+        assertFalse(q.offer(t7));
+        t7.release(); // still the caller's
+
+        assertEquals(4, q.depth());
+        assertEquals(4, q.maxDepth());
+        assertEquals("depth=4 max=4 dropped=1 coalesced=2", q.stats());
+        assertArrayEquals(new int[] {2, 4, 5, 6}, drain(q));
+        assertEquals(0, q.depth());
+    }
+
+    @Test
+    void dropDrawDropsTheOldestQuarterOfPoints() {
+        OutboundQueue q = new OutboundQueue(8, List.of(OverflowPolicy.DROP_DRAW), () -> {}, () -> fail("no disconnect"));
+        SharedFrame d1 = frame(SharedFrame.DRAW, 1), d3 = frame(SharedFrame.DRAW, 3);
+        assertTrue(q.offer(d1));
+        assertTrue(q.offer(frame(SharedFrame.TEXT, 2)));
+        assertTrue(q.offer(d3));
+        assertTrue(q.offer(frame(SharedFrame.DRAW, 4)));
+        assertTrue(q.offer(frame(SharedFrame.TIME, 5)));
+        assertTrue(q.offer(frame(SharedFrame.DRAW, 6)));
+        assertTrue(q.offer(frame(SharedFrame.TEXT, 7)));
+        assertTrue(q.offer(frame(SharedFrame.DRAW, 8)));
+        assertEquals(8, q.depth());
+
+        // capacity 8: two points go, the oldest ones, and the text still gets in
+        assertTrue(q.offer(frame(SharedFrame.TEXT, 9)));
+        assertEquals(7, q.depth());
+        assertReleased(d1);
+        assertReleased(d3);
+        assertEquals("depth=7 max=8 dropped=2 coalesced=0", q.stats());
+        assertArrayEquals(new int[] {2, 4, 5, 6, 7, 8, 9}, drain(q));
+    }
+
+    @Test
+    void disconnectFiresWhenNothingCanBeDropped() {
+        AtomicInteger ready = new AtomicInteger(), overflows = new AtomicInteger();
+        OutboundQueue q = new OutboundQueue(2, OverflowPolicy.parse("coalesce-time,drop-draw,disconnect"),
+                ready::incrementAndGet, overflows::incrementAndGet);
+        SharedFrame a = frame(SharedFrame.TEXT, 1), b = frame(SharedFrame.TEXT, 2);
+        assertTrue(q.offer(a));
+        assertTrue(q.offer(b));
+        assertEquals(1, ready.get(), "woken once, when the queue went non-empty");
+
+        SharedFrame c = frame(SharedFrame.TEXT, 3);
+        assertFalse(q.offer(c));
+        assertEquals(1, overflows.get());
+        assertEquals(2, q.depth());
+        assertEquals("depth=2 max=2 dropped=0 coalesced=0", q.stats());
+        c.release(); // refused, so still the caller's
+
+        // the transport closes on overflow; without a resume buffer the queued frames go back
+        q.close();
+        assertEquals(0, q.depth());
+        assertReleased(a);
+        assertReleased(b);
+        SharedFrame d = frame(SharedFrame.TEXT, 4);
+        assertFalse(q.offer(d));
+        assertEquals(1, overflows.get(), "a closed queue refuses without another disconnect");
+        d.release();
+    }
+}
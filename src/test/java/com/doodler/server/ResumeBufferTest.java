@@ -0,0 +1,122 @@
+package com.doodler.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResumeBufferTest {
+    /** A frame carrying {@code n}, with the one reference record() takes over; never pooled. */
+    private static SharedFrame frame(int n) {
+        SharedFrame f = new SharedFrame(ByteBuffer.allocate(4), -1);
+        f.reset(SharedFrame.TEXT);
+        f.buf.putInt(0, n);
+        return f;
+    }
+
+    private static int[] numbers(List<SharedFrame> frames) {
+        return frames.stream().mapToInt(f -> f.buf.getInt(0)).toArray();
+    }
+
+    private static OutboundQueue queue() {
+        return new OutboundQueue(16, OverflowPolicy.parse("disconnect"), () -> {}, () -> {});
+    }
+
+    /** What a socket writer takes off {@code q} when it has room for {@code frames} frames. */
+    private static int[] write(OutboundQueue q, int frames) {
+        ByteBuffer out = ByteBuffer.allocate(4 * frames);
+        assertNull(q.fill(out));
+        out.flip();
+        int[] read = new int[out.remaining() / 4];
+        for (int i = 0; i < read.length; i++) read[i] = out.getInt();
+        return read;
+    }
+
+    @Test
+    void numbersFramesFromOne() {
+        ResumeBuffer b = new ResumeBuffer(4);
+        assertEquals(0, b.seq());
+        for (int n = 1; n <= 3; n++) b.record(frame(n));
+        assertEquals(3, b.seq());
+        assertEquals(3, b.size());
+    }
+
+    @Test
+    void rewindReturnsWhatTheClientMissed() {
+        ResumeBuffer b = new ResumeBuffer(4);
+        for (int n = 1; n <= 6; n++) b.record(frame(n));
+        assertArrayEquals(new int[] {4, 5, 6}, numbers(b.rewind(3)));
+        assertEquals(3, b.seq());
+        // re-queued, they are recorded again under the same numbers
+        for (int n = 4; n <= 6; n++) b.record(frame(n));
+        assertEquals(6, b.seq());
+        assertArrayEquals(new int[] {5, 6}, numbers(b.rewind(4)));
+    }
+
+    @Test
+    void rewindToTheNewestFrameIsEmpty() {
+        ResumeBuffer b = new ResumeBuffer(4);
+        b.record(frame(1));
+        assertTrue(b.rewind(1).isEmpty());
+        assertEquals(1, b.seq());
+    }
+
+    @Test
+    void overwrittenOrUnknownFramesCannotBeResumed() {
+        ResumeBuffer b = new ResumeBuffer(4);
+        for (int n = 1; n <= 10; n++) b.record(frame(n));
+        assertNull(b.rewind(5), "frame 6 was overwritten");
+        assertNull(b.rewind(11), "the client cannot have read past the newest frame");
+        assertEquals(10, b.seq(), "a failed rewind rewinds nothing");
+        assertArrayEquals(new int[] {7, 8, 9, 10}, numbers(b.rewind(6)));
+    }
+
+    @Test
+    void releasesFramesItDropsAndResetsNumbering() {
+        ResumeBuffer b = new ResumeBuffer(2);
+        SharedFrame first = frame(1);
+        b.record(first);
+        b.record(frame(2));
+        b.record(frame(3));
+        // its one reference went back when frame 3 took the slot
+        assertThrows(IllegalStateException.class, first::release);
+        b.reset();
+        assertEquals(0, b.seq());
+        assertEquals(0, b.size());
+        b.record(frame(1));
+        assertEquals(1, b.seq());
+    }
+
+    @Test
+    void protoIsNotNumberedAcrossJoinDropAndResume() {
+        final int proto = 0, resumed = -1;
+        ResumeBuffer history = new ResumeBuffer(8);
+        // JOIN: negotiate queues PROTO, then the new handler starts recording
+        OutboundQueue joined = queue();
+        assertTrue(joined.offer(frame(proto)));
+        joined.recordInto(history);
+        for (int n = 1; n <= 3; n++) assertTrue(joined.offer(frame(n)));
+        // the client reads PROTO without counting it, then frames 1 and 2; the socket drops
+        assertArrayEquals(new int[] {proto, 1, 2}, write(joined, 3));
+        joined.close();
+        assertEquals(3, history.seq(), "frame 3 counts as sent and lost");
+
+        // RESUME with received=2: PROTO again, then RESUMED and the missed frame
+        OutboundQueue resumedOn = queue();
+        assertTrue(resumedOn.offer(frame(proto)));
+        List<SharedFrame> missed = history.rewind(2);
+        assertArrayEquals(new int[] {3}, numbers(missed));
+        resumedOn.recordInto(history);
+        assertTrue(resumedOn.offer(frame(resumed)));
+        for (SharedFrame f : missed) assertTrue(resumedOn.offer(f));
+        assertArrayEquals(new int[] {proto, resumed, 3}, write(resumedOn, 8));
+
+        // the client counted RESUMED as 3 and the missed frame as 4, and so did the server
+        long received = 2 + 1 + 1;
+        assertEquals(received, history.seq());
+        assertTrue(history.rewind(received).isEmpty());
+        assertArrayEquals(new int[] {3}, numbers(history.rewind(received - 1)));
+    }
+}
@@ -0,0 +1,82 @@
+package com.doodler.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+    // 8 slots of 1 ms: most delays here are several revolutions out
+    private final TimerWheel wheel = new TimerWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 8, Runnable::run);
+
+    @AfterEach
+    void close() { wheel.close(); }
+
+    @Test
+    void firesNoEarlierThanItsDelay() throws InterruptedException {
+        for (long delay : new long[] {0, 3, 8, 25, 60}) {
+            CountDownLatch done = new CountDownLatch(1);
+            AtomicLong firedAt = new AtomicLong();
+            long start = System.nanoTime();
+            wheel.schedule(() -> { firedAt.set(System.nanoTime()); done.countDown(); }, delay, TimeUnit.MILLISECONDS);
+            assertTrue(done.await(2, TimeUnit.SECONDS), "timeout of " + delay + " ms never fired");
+            assertTrue(firedAt.get() - start >= TimeUnit.MILLISECONDS.toNanos(delay), "fired early: " + delay + " ms");
+        }
+    }
+
+    @Test
+    void slotsRoundUpToAPowerOfTwo() throws InterruptedException {
+        try (TimerWheel odd = new TimerWheel("odd-wheel", 1, TimeUnit.MILLISECONDS, 5, Runnable::run)) {
+            CountDownLatch done = new CountDownLatch(1);
+            odd.schedule(done::countDown, 20, TimeUnit.MILLISECONDS);
+            assertTrue(done.await(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void cancelledTimeoutNeverRuns() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        TimerWheel.Timeout t = wheel.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        assertTrue(t.cancel());
+        assertTrue(t.isCancelled());
+        assertFalse(t.cancel());
+        CountDownLatch later = new CountDownLatch(1);
+        wheel.schedule(later::countDown, 60, TimeUnit.MILLISECONDS);
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void oneShotCannotBeCancelledAfterItRan() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        TimerWheel.Timeout t = wheel.schedule(done::countDown, 2, TimeUnit.MILLISECONDS);
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertFalse(t.cancel());
+    }
+
+    @Test
+    void fixedRateRepeatsUntilCancelled() throws InterruptedException {
+        CountDownLatch three = new CountDownLatch(3);
+        AtomicInteger runs = new AtomicInteger();
+        TimerWheel.Timeout t = wheel.scheduleAtFixedRate(() -> { runs.incrementAndGet(); three.countDown(); },
+                5, 10, TimeUnit.MILLISECONDS);
+        assertTrue(three.await(2, TimeUnit.SECONDS));
+        t.cancel();
+        int after = runs.get();
+        Thread.sleep(50);
+        // at most one run already handed to the executor when it was cancelled
+        assertTrue(runs.get() <= after + 1, "kept running after cancel: " + after + " -> " + runs.get());
+    }
+
+    @Test
+    void closedWheelRejectsNewTimeouts() {
+        wheel.close();
+        assertThrows(RejectedExecutionException.class, () -> wheel.schedule(() -> { }, 1, TimeUnit.MILLISECONDS));
+    }
+}
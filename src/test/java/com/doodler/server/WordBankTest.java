@@ -0,0 +1,109 @@
+package com.doodler.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WordBankTest {
+    @TempDir
+    Path dir;
+
+    private WordBank bank(int words) throws IOException {
+        Files.createDirectories(dir.resolve("en"));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) sb.append("word").append(i).append('\n');
+        Files.writeString(dir.resolve("en/all.txt"), sb);
+        return WordBank.load(dir);
+    }
+
+    @Test
+    void permutesEveryListSize() throws IOException {
+        WordBank b = bank(1000);
+        for (int n : new int[] {1, 2, 3, 4, 5, 7, 8, 9, 15, 16, 17, 63, 64, 65, 255, 256, 257, 999, 1000}) {
+            // a cursor over the first n words, as a category of that size would get
+            WordBank.Cursor c = b.new Cursor(0, n);
+            boolean[] hit = new boolean[n];
+            for (int x = 0; x < n; x++) {
+                int p = c.permute(x);
+                assertTrue(p >= 0 && p < n, "p(" + x + ") = " + p + " outside [0, " + n + ")");
+                assertFalse(hit[p], "p is not one-to-one for n = " + n);
+                hit[p] = true;
+            }
+        }
+    }
+
+    @Test
+    void laterPassesStayEvenAndNeverRepeatBackToBack() throws IOException {
+        WordBank b = bank(37);
+        WordBank.Cursor c = b.cursor("en/all");
+        Map<String, Integer> counts = new HashMap<>();
+        String previous = null;
+        // ten passes or a little more: a pass is 37 words, or 36 when it skips the one that would repeat
+        for (int i = 0; i < 370; i++) {
+            String w = c.next();
+            assertNotEquals(previous, w, "same word twice in a row");
+            counts.merge(w, 1, Integer::sum);
+            previous = w;
+        }
+        assertEquals(37, counts.size());
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            assertTrue(e.getValue() >= 8 && e.getValue() <= 11, e.getKey() + " came up " + e.getValue() + " times");
+        }
+    }
+
+    @Test
+    void firstPassHasNoRepeats() throws IOException {
+        WordBank b = bank(500);
+        WordBank.Cursor c = b.cursor("en");
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 500; i++) seen.add(c.next());
+        assertEquals(500, seen.size());
+    }
+
+    @Test
+    void roomsGetDifferentOrders() throws IOException {
+        WordBank b = bank(200);
+        List<String> one = new ArrayList<>(), other = new ArrayList<>();
+        WordBank.Cursor c1 = b.cursor("en"), c2 = b.cursor("en");
+        for (int i = 0; i < 20; i++) { one.add(c1.next()); other.add(c2.next()); }
+        assertNotEquals(one, other);
+    }
+
+    @Test
+    void singleWordListKeepsReturningIt() throws IOException {
+        WordBank.Cursor c = bank(1).cursor("en/all");
+        for (int i = 0; i < 3; i++) assertEquals("word0", c.next());
+    }
+
+    @Test
+    void loadsCategoriesAndLanguages() throws IOException {
+        Files.createDirectories(dir.resolve("en"));
+        Files.createDirectories(dir.resolve("de"));
+        Files.writeString(dir.resolve("en/animals.txt"), "# comment\ncat\n\ndog\nbad:word\ncat\n");
+        Files.writeString(dir.resolve("en/food.txt"), "apple\ndog\n");
+        Files.writeString(dir.resolve("de/tiere.txt"), "Hund\n");
+        WordBank b = WordBank.load(dir);
+        assertEquals(Set.of("en", "en/animals", "en/food", "de", "de/tiere"), b.lists());
+        // the ':' word is dropped, and dog is kept once per language
+        assertEquals(4, b.size());
+        Set<String> en = new HashSet<>();
+        WordBank.Cursor c = b.cursor("en");
+        for (int i = 0; i < 3; i++) en.add(c.next());
+        assertEquals(Set.of("cat", "dog", "apple"), en);
+        assertThrows(IllegalArgumentException.class, () -> b.cursor("fr"));
+    }
+
+    @Test
+    void builtInListsLoad() {
+        WordBank b = WordBank.builtIn();
+        assertTrue(b.lists().contains("en"));
+        assertTrue(b.size() > 0);
+        assertFalse(b.cursor("en").next().isEmpty());
+    }
+}
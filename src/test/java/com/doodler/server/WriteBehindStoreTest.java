@@ -0,0 +1,189 @@
+package com.doodler.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindStoreTest {
+    /**
+     * Just enough of a JDBC database for DBManager: games and player scores live in maps, and
+     * writes made with auto-commit off only land on commit. One connection at a time.
+     */
+    static final class FakeDb implements Driver {
+        final String url = "jdbc:fakedb:" + System.identityHashCode(this);
+        final Map<Integer, String> games = new HashMap<>();
+        final Map<Integer, Integer> scores = new HashMap<>();
+        private final AtomicInteger nextId = new AtomicInteger(1);
+        private final List<Runnable> uncommitted = new ArrayList<>();
+        private boolean autoCommit = true;
+        // the next batch of the statement starting with failSql fails after failAfter rows
+        private volatile String failSql;
+        private volatile int failAfter;
+
+        void failOn(String sqlPrefix, int afterRows) { failAfter = afterRows; failSql = sqlPrefix; }
+
+        private void apply(Runnable write) {
+            if (autoCommit) write.run(); else uncommitted.add(write);
+        }
+
+        private void execute(String sql, Object[] row, List<Integer> keys) {
+            if (sql.startsWith("INSERT INTO games")) {
+                int id = nextId.getAndIncrement();
+                keys.add(id);
+                apply(() -> games.put(id, (String) row[1]));
+            } else if (sql.startsWith("INSERT INTO players")) {
+                int id = nextId.getAndIncrement();
+                keys.add(id);
+                apply(() -> scores.put(id, 0));
+            } else if (sql.startsWith("UPDATE players SET score")) {
+                int pts = (Integer) row[1], id = (Integer) row[2];
+                apply(() -> scores.merge(id, pts, Integer::sum));
+            }
+        }
+
+        private Connection connection() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class},
+                    (proxy, m, args) -> switch (m.getName()) {
+                        case "prepareStatement" -> statement((String) args[0]);
+                        case "setAutoCommit" -> { autoCommit = (Boolean) args[0]; yield null; }
+                        case "getAutoCommit" -> autoCommit;
+                        case "commit" -> { uncommitted.forEach(Runnable::run); uncommitted.clear(); yield null; }
+                        case "rollback" -> { uncommitted.clear(); yield null; }
+                        case "isValid" -> true;
+                        case "isClosed" -> false;
+                        case "close" -> null;
+                        default -> throw new UnsupportedOperationException(m.getName());
+                    });
+        }
+
+        private PreparedStatement statement(String sql) {
+            Object[] params = new Object[5];
+            List<Object[]> batch = new ArrayList<>();
+            List<Integer> keys = new ArrayList<>();
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {PreparedStatement.class},
+                    (proxy, m, args) -> switch (m.getName()) {
+                        case "setInt", "setString", "setBoolean" -> { params[(Integer) args[0]] = args[1]; yield null; }
+                        case "clearParameters" -> { Arrays.fill(params, null); yield null; }
+                        case "addBatch" -> { batch.add(params.clone()); yield null; }
+                        case "clearBatch" -> { batch.clear(); yield null; }
+                        case "executeUpdate" -> { keys.clear(); execute(sql, params, keys); yield 1; }
+                        case "executeBatch" -> {
+                            keys.clear();
+                            for (int i = 0; i < batch.size(); i++) {
+                                if (i == failAfter && failSql != null && sql.startsWith(failSql)) {
+                                    failSql = null;
+                                    throw new SQLTransactionRollbackException("Deadlock found", "40001");
+                                }
+                                execute(sql, batch.get(i), keys);
+                            }
+                            int[] counts = new int[batch.size()];
+                            Arrays.fill(counts, 1);
+                            yield counts;
+                        }
+                        case "getGeneratedKeys" -> keys(new ArrayList<>(keys));
+                        case "setQueryTimeout", "close" -> null;
+                        case "isClosed" -> false;
+                        default -> throw new UnsupportedOperationException(m.getName());
+                    });
+        }
+
+        private ResultSet keys(List<Integer> keys) {
+            int[] row = {-1};
+            return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {ResultSet.class},
+                    (proxy, m, args) -> switch (m.getName()) {
+                        case "next" -> ++row[0] < keys.size();
+                        case "getInt" -> keys.get(row[0]);
+                        case "close" -> null;
+                        default -> throw new UnsupportedOperationException(m.getName());
+                    });
+        }
+
+        @Override public Connection connect(String url, Properties info) { return acceptsURL(url) ? connection() : null; }
+
+        @Override public boolean acceptsURL(String url) { return this.url.equals(url); }
+
+        @Override public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) { return new DriverPropertyInfo[0]; }
+
+        @Override public int getMajorVersion() { return 1; }
+
+        @Override public int getMinorVersion() { return 0; }
+
+        @Override public boolean jdbcCompliant() { return false; }
+
+        @Override public Logger getParentLogger() throws SQLFeatureNotSupportedException { throw new SQLFeatureNotSupportedException(); }
+    }
+
+    private FakeDb db;
+    private WriteBehindStore store;
+
+    @BeforeEach
+    void open() throws SQLException {
+        db = new FakeDb();
+        DriverManager.registerDriver(db);
+        store = new WriteBehindStore(new DBManager(new ConnectionPool(db.url, "", "", 1, 1_000, 0, 16)));
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        store.close();
+        DriverManager.deregisterDriver(db);
+    }
+
+    @Test
+    void pointsBatchFailingPartwayIsNotCountedTwice() {
+        WriteBehindStore.Ref game = store.createGame("ROOM", "alice");
+        WriteBehindStore.Ref alice = store.addPlayer(game, "alice", true);
+        WriteBehindStore.Ref bob = store.addPlayer(game, "bob", false);
+        store.flush().join();
+
+        // alice's row goes through, then bob's deadlocks: the retry must not add alice's again
+        db.failOn("UPDATE players SET score", 1);
+        store.addPoints(alice, 10);
+        store.addPoints(bob, 7);
+        store.addPoints(alice, 5);
+        store.flush().join();
+
+        assertEquals(15, db.scores.get(alice.id().join()));
+        assertEquals(7, db.scores.get(bob.id().join()));
+        assertEquals(1, store.retries.sum());
+        assertEquals(0, store.failed.sum());
+    }
+
+    @Test
+    void playersBatchFailingPartwayInsertsEachPlayerOnce() {
+        WriteBehindStore.Ref game = store.createGame("ROOM", "alice");
+        store.flush().join();
+
+        db.failOn("INSERT INTO players", 2);
+        List<WriteBehindStore.Ref> players = new ArrayList<>();
+        for (String name : List.of("alice", "bob", "carol")) players.add(store.addPlayer(game, name, false));
+        store.flush().join();
+
+        Set<Integer> ids = new HashSet<>();
+        for (WriteBehindStore.Ref p : players) ids.add(p.id().join());
+        assertEquals(3, ids.size());
+        assertEquals(ids, db.scores.keySet(), "one row per player, none left from the failed attempt");
+        assertEquals(1, store.retries.sum());
+    }
+
+    @Test
+    void droppedInsertsFailTheirRefs() {
+        WriteBehindStore.Ref game = store.createGame("ROOM", "alice");
+        store.flush().join();
+        store.close();
+
+        WriteBehindStore.Ref late = store.createGame("LATE", "bob");
+        WriteBehindStore.Ref player = store.addPlayer(game, "bob", false);
+        assertTrue(late.id().isCompletedExceptionally());
+        assertTrue(player.id().isCompletedExceptionally());
+        assertEquals(2, store.dropped.sum());
+    }
+}